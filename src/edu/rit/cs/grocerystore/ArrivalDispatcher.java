@@ -0,0 +1,142 @@
+package edu.rit.cs.grocerystore;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One thread that runs tasks at given instants, such as customers
+ * arriving at the checkout line, instead of one sleeping thread per
+ * task. Tasks are scheduled from any thread into a lock-free inbox; the
+ * dispatcher thread files them in a {@link TimingWheel} of
+ * {@value #TICK_NANOS} nsec. ticks, parks until the next tick that has
+ * anything due, and runs what is due in order.
+ * <p>
+ * A task never runs before its instant, and normally runs less than a
+ * tick plus one park's overshoot after it. Tasks run on the dispatcher
+ * thread, so they must not block, or every later task is held up.
+ *
+ * @author RIT CS
+ */
+class ArrivalDispatcher {
+
+    /** Nanoseconds per tick of the wheel */
+    static final long TICK_NANOS = 50_000;
+
+    /**
+     * A task handed to the dispatcher and not yet filed in the wheel.
+     *
+     * @param atNanos the System.nanoTime() value at which to run it
+     * @param task what to run
+     */
+    private record Scheduled( long atNanos, Runnable task ) {}
+
+    /** The System.nanoTime() value of tick 0 */
+    private final long epoch;
+    /** Tasks scheduled since the dispatcher last looked */
+    private final ConcurrentLinkedQueue< Scheduled > inbox;
+    /** The tasks filed by tick; only the dispatcher thread touches it */
+    private final TimingWheel wheel;
+    /** The thread that runs the tasks */
+    private final Thread thread;
+    /** When the dispatcher thread will next wake up by itself */
+    private volatile long wakeAt;
+    /** Set once no more tasks will be scheduled */
+    private volatile boolean finishing;
+    /** Set once the tasks still waiting are not to be run */
+    private volatile boolean stopping;
+
+    /**
+     * Create a dispatcher whose thread has not started yet.
+     *
+     * @param epoch the System.nanoTime() value from which ticks count
+     */
+    ArrivalDispatcher( long epoch ) {
+        this.epoch = epoch;
+        this.inbox = new ConcurrentLinkedQueue<>();
+        this.wheel = new TimingWheel();
+        this.thread = new Thread( this::dispatch, "ArrivalDispatcher" );
+        this.wakeAt = Long.MAX_VALUE;
+    }
+
+    /**
+     * Start the dispatcher thread.
+     */
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Run a task at the given instant, or as soon as possible if it has
+     * gone by. The dispatcher thread is woken only if it would otherwise
+     * sleep past the instant.
+     *
+     * @param atNanos the System.nanoTime() value at which to run the task
+     * @param task what to run
+     */
+    void schedule( long atNanos, Runnable task ) {
+        inbox.add( new Scheduled( atNanos, task ) );
+        if ( atNanos < wakeAt ) {
+            LockSupport.unpark( thread );
+        }
+    }
+
+    /**
+     * Wait for every scheduled task to have run, then stop the
+     * dispatcher thread. Call this after the last schedule().
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void finish() throws InterruptedException {
+        finishing = true;
+        LockSupport.unpark( thread );
+        thread.join();
+    }
+
+    /**
+     * Stop the dispatcher thread at once, without running the tasks still
+     * waiting, and wait for it to end.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void stop() throws InterruptedException {
+        stopping = true;
+        LockSupport.unpark( thread );
+        thread.join();
+    }
+
+    /**
+     * The dispatcher thread's loop: file new tasks, run what is due, and
+     * park until the next tick with something due or until woken.
+     */
+    private void dispatch() {
+        while ( !stopping ) {
+            boolean finished = finishing;
+            Scheduled scheduled;
+            while ( ( scheduled = inbox.poll() ) != null ) {
+                // Round up, so that no task runs before its instant.
+                long tick = Math.max( 0, Math.floorDiv(
+                        scheduled.atNanos() - epoch + TICK_NANOS - 1, TICK_NANOS ) );
+                wheel.schedule( tick, scheduled.task() );
+            }
+            wheel.advance( Math.floorDiv( System.nanoTime() - epoch, TICK_NANOS ) );
+            if ( finished && wheel.isEmpty() && inbox.isEmpty() ) {
+                return;
+            }
+            long next = wheel.nextTick();
+            wakeAt = next == Long.MAX_VALUE ? Long.MAX_VALUE : epoch + next * TICK_NANOS;
+            // A task scheduled before wakeAt was set may not have woken us.
+            if ( !inbox.isEmpty() || finishing != finished || stopping ) {
+                continue;
+            }
+            if ( wakeAt == Long.MAX_VALUE ) {
+                LockSupport.park( this );
+            }
+            else {
+                long delay = wakeAt - System.nanoTime();
+                if ( delay > 0 ) {
+                    LockSupport.parkNanos( this, delay );
+                }
+            }
+        }
+    }
+}
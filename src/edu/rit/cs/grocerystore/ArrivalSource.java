@@ -0,0 +1,47 @@
+package edu.rit.cs.grocerystore;
+
+/**
+ * Where the customers of a simulation come from: for each customer in
+ * turn, when it arrives at the checkout line and how many groceries are
+ * in its cart. A source is read like a cursor, one customer at a time,
+ * so that no objects need to be made for customers not yet arrived.
+ *
+ * @author RIT CS
+ */
+public interface ArrivalSource extends AutoCloseable {
+
+    /**
+     * How many customers will this source give?
+     *
+     * @return the number of times {@link #next()} will return true
+     */
+    long getCount();
+
+    /**
+     * Move on to the next customer.
+     *
+     * @return true if there is one, false if all have been given
+     */
+    boolean next();
+
+    /**
+     * When does the current customer arrive?
+     *
+     * @return msec. from the start of the simulation; never less than the
+     * previous customer's
+     */
+    double getArrivalTime();
+
+    /**
+     * How many groceries does the current customer have?
+     *
+     * @return the number of groceries in the customer's cart
+     */
+    int getCartSize();
+
+    /**
+     * Let go of any files the source uses.
+     */
+    @Override
+    default void close() {}
+}
@@ -0,0 +1,261 @@
+package edu.rit.cs.grocerystore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary trace files of customer arrivals, so that a run can be repeated
+ * exactly, or a real day's customers can be played through the store.
+ * <p>
+ * A trace is a 16-byte header (the magic number {@value #MAGIC}, a
+ * version number and the number of customers) followed by one 12-byte
+ * record per customer: the arrival time in msec. as a double, and the
+ * cart size as an int, all big-endian.
+ * <p>
+ * Traces are read through memory-mapped windows of the file, so a trace
+ * of millions of customers is streamed from the page cache rather than
+ * read into objects.
+ *
+ * @author RIT CS
+ */
+public final class ArrivalTrace {
+
+    /** First four bytes of every trace: "GLTR" */
+    public static final int MAGIC = 0x474C5452;
+
+    /** The version of the format written */
+    private static final int VERSION = 1;
+
+    /** Bytes before the first record */
+    private static final int HEADER_BYTES = 16;
+
+    /** Bytes in each record */
+    private static final int RECORD_BYTES = 12;
+
+    /** Records mapped into memory at a time (48 MB) */
+    private static final long WINDOW_RECORDS = 1 << 22;
+
+    /** Records written to the file at a time */
+    private static final int BUFFER_RECORDS = 4096;
+
+    /** There are only static methods */
+    private ArrivalTrace() {}
+
+    /**
+     * Open a trace for replay.
+     *
+     * @param file the trace
+     * @return the trace's customers
+     * @throws UncheckedIOException if the file cannot be read, or is not
+     * a complete trace
+     */
+    public static ArrivalSource replay( Path file ) {
+        try {
+            return new Reader( file );
+        }
+        catch( IOException e ) {
+            throw new UncheckedIOException( file.toString(), e );
+        }
+    }
+
+    /**
+     * Pass on the customers of another source, writing each one to a
+     * trace as it goes by. The trace is complete once the returned source
+     * is closed.
+     *
+     * @param source where the customers come from
+     * @param file the trace to write; it is replaced if it exists
+     * @return the same customers as source
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    public static ArrivalSource record( ArrivalSource source, Path file ) {
+        try {
+            return new Recorder( source, file );
+        }
+        catch( IOException e ) {
+            throw new UncheckedIOException( file.toString(), e );
+        }
+    }
+
+    /**
+     * Replays a trace through memory-mapped windows.
+     */
+    private static final class Reader implements ArrivalSource {
+        /** The open trace */
+        private final FileChannel channel;
+        /** The number of records in the trace */
+        private final long count;
+        /** The index of the first record in the current window */
+        private long windowStart;
+        /** The current window, positioned after the current record */
+        private MappedByteBuffer window;
+        /** The number of records read so far */
+        private long read;
+        /** The current customer's arrival time */
+        private double arrivalTime;
+        /** The current customer's number of groceries */
+        private int cartSize;
+
+        Reader( Path file ) throws IOException {
+            this.channel = FileChannel.open( file, StandardOpenOption.READ );
+            ByteBuffer header = ByteBuffer.allocate( HEADER_BYTES );
+            while ( header.hasRemaining() && channel.read( header ) >= 0 ) {
+                // Keep reading until the header is complete or the file ends.
+            }
+            header.flip();
+            if ( header.remaining() < HEADER_BYTES || header.getInt() != MAGIC ) {
+                channel.close();
+                throw new IOException( "not an arrival trace" );
+            }
+            int version = header.getInt();
+            this.count = header.getLong();
+            if ( version != VERSION ||
+                 channel.size() < HEADER_BYTES + count * RECORD_BYTES ) {
+                channel.close();
+                throw new IOException( "unsupported or incomplete arrival trace" );
+            }
+            this.windowStart = 0;
+            this.window = map( 0 );
+        }
+
+        @Override
+        public long getCount() { return count; }
+
+        @Override
+        public boolean next() {
+            if ( read == count ) {
+                return false;
+            }
+            if ( read == windowStart + WINDOW_RECORDS ) {
+                windowStart = read;
+                window = map( windowStart );
+            }
+            arrivalTime = window.getDouble();
+            cartSize = window.getInt();
+            ++read;
+            return true;
+        }
+
+        @Override
+        public double getArrivalTime() { return arrivalTime; }
+
+        @Override
+        public int getCartSize() { return cartSize; }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            }
+            catch( IOException e ) {
+                throw new UncheckedIOException( e );
+            }
+        }
+
+        /**
+         * Map the window of records starting at the given one.
+         *
+         * @param first the index of the first record in the window
+         * @return the window, positioned at that record
+         */
+        private MappedByteBuffer map( long first ) {
+            long records = Math.min( WINDOW_RECORDS, count - first );
+            try {
+                return channel.map( FileChannel.MapMode.READ_ONLY,
+                                    HEADER_BYTES + first * RECORD_BYTES,
+                                    records * RECORD_BYTES );
+            }
+            catch( IOException e ) {
+                throw new UncheckedIOException( e );
+            }
+        }
+    }
+
+    /**
+     * Writes the customers of another source to a trace as they go by.
+     */
+    private static final class Recorder implements ArrivalSource {
+        /** Where the customers come from */
+        private final ArrivalSource source;
+        /** The trace being written */
+        private final FileChannel channel;
+        /** Records not yet written */
+        private final ByteBuffer buffer;
+        /** The number of records so far */
+        private long count;
+
+        Recorder( ArrivalSource source, Path file ) throws IOException {
+            this.source = source;
+            this.channel = FileChannel.open(
+                    file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING );
+            this.buffer = ByteBuffer.allocateDirect( BUFFER_RECORDS * RECORD_BYTES );
+            ByteBuffer header = ByteBuffer.allocate( HEADER_BYTES );
+            header.putInt( MAGIC ).putInt( VERSION ).putLong( 0 ).flip();
+            channel.write( header );
+        }
+
+        @Override
+        public long getCount() { return source.getCount(); }
+
+        @Override
+        public boolean next() {
+            if ( !source.next() ) {
+                return false;
+            }
+            if ( !buffer.hasRemaining() ) {
+                flush();
+            }
+            buffer.putDouble( source.getArrivalTime() ).putInt( source.getCartSize() );
+            ++count;
+            return true;
+        }
+
+        @Override
+        public double getArrivalTime() { return source.getArrivalTime(); }
+
+        @Override
+        public int getCartSize() { return source.getCartSize(); }
+
+        /**
+         * Write the rest of the records, then the number of them in the
+         * header.
+         */
+        @Override
+        public void close() {
+            try ( channel ) {
+                flush();
+                ByteBuffer total = ByteBuffer.allocate( Long.BYTES );
+                total.putLong( count ).flip();
+                channel.write( total, 8 );
+            }
+            catch( IOException e ) {
+                throw new UncheckedIOException( e );
+            }
+            finally {
+                source.close();
+            }
+        }
+
+        /**
+         * Write the buffered records to the file.
+         */
+        private void flush() {
+            buffer.flip();
+            try {
+                while ( buffer.hasRemaining() ) {
+                    channel.write( buffer );
+                }
+            }
+            catch( IOException e ) {
+                throw new UncheckedIOException( e );
+            }
+            buffer.clear();
+        }
+    }
+}
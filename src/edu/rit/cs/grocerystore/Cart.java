@@ -10,20 +10,47 @@ package edu.rit.cs.grocerystore;
 public class Cart extends TimedObject implements Comparable< Cart > {
     /** The number of items in the Cart */
     private final int numItems;
+    /** The customer's number, counting from 0, or -1 if not numbered */
+    private final int id;
 
     /**
-     * Construct the Sentinel Cart that is enqueued to indicate that
-     * it is the end of the simulation. It is guaranteed to be lower
-     * priority than any other Cart because its "grocery load" is
-     * Integer.MAX_VALUE items. To be invoked only by Utilities
+     * The normal customer use to create grocery carts in the simulation
+     * @param numItems the number of groceries in the cart
      */
-    public Cart() { this.numItems = Integer.MAX_VALUE; }
+    public Cart( int numItems ) { this( numItems, -1 ); }
 
     /**
-     * The normal customer use to create grocery carts in the simulation
+     * Create a grocery cart for a numbered customer
+     * @param numItems the number of groceries in the cart
+     * @param id the customer's number, counting from 0
+     */
+    public Cart( int numItems, int id ) {
+        this.numItems = numItems;
+        this.id = id;
+    }
+
+    /**
+     * Create a grocery cart whose times are taken from the given clock,
+     * e.g. the virtual clock of a discrete-event simulation
+     * @param numItems the number of groceries in the cart
+     * @param clock where the cart's timestamps come from
+     */
+    public Cart( int numItems, Clock clock ) {
+        this( numItems, -1, clock );
+    }
+
+    /**
+     * Create a grocery cart for a numbered customer, whose times are
+     * taken from the given clock
      * @param numItems the number of groceries in the cart
+     * @param id the customer's number, counting from 0
+     * @param clock where the cart's timestamps come from
      */
-    public Cart( int numItems ) { this.numItems = numItems; }
+    public Cart( int numItems, int id, Clock clock ) {
+        super( clock );
+        this.numItems = numItems;
+        this.id = id;
+    }
 
     /**
      * How much of a load is in this cart?
@@ -32,6 +59,14 @@ public class Cart extends TimedObject implements Comparable< Cart > {
      */
     public int getCartSize() { return numItems; }
 
+    /**
+     * Whose cart is this?
+     *
+     * @return the customer's number, counting from 0, or -1 if the cart
+     * was made without one
+     */
+    public int getId() { return id; }
+
     /**
      * Compare two carts, for use in a priority queue.
      *
@@ -42,7 +77,7 @@ public class Cart extends TimedObject implements Comparable< Cart > {
      */
     @Override
     public int compareTo(Cart other) {
-        return numItems - other.numItems;
+        return Integer.compare( numItems, other.numItems );
     }
 
     /**
@@ -0,0 +1,192 @@
+package edu.rit.cs.grocerystore;
+
+import java.util.Arrays;
+
+/**
+ * The timestamps and size of every customer's cart, stored by column in
+ * primitive arrays indexed by the customer's number instead of in Cart
+ * objects. Once a cart's times are copied here the Cart can be dropped,
+ * and a run of millions of customers keeps about 29 bytes per customer
+ * and no objects at all.
+ * <p>
+ * Unlike the histograms of {@link WaitStatistics}, which know each value
+ * only to within 1%, the columns give exact averages and percentiles.
+ * They are worked out by simple loops over whole arrays, which the JIT
+ * compiler can unroll and vectorize, and a primitive sort.
+ * <p>
+ * Each customer's slot is written by only one thread, the one that
+ * finished its cart; read the columns only after every such thread has
+ * been joined.
+ *
+ * @author RIT CS
+ */
+public class CartTimings {
+
+    /** Nanoseconds per millisecond, for reporting values in msec. */
+    private static final double NANOS_PER_MSEC = 1_000_000.0;
+
+    /** When each cart entered the queue */
+    private final long[] enterTimes;
+    /** When each cart left the queue */
+    private final long[] exitTimes;
+    /** When each cart's servicing was done */
+    private final long[] finishTimes;
+    /** The number of groceries in each cart */
+    private final int[] cartSizes;
+    /** Whether each cart was serviced, rather than turned away */
+    private final boolean[] serviced;
+
+    /**
+     * Make room for a given number of customers.
+     *
+     * @param numCustomers how many customers there will be
+     */
+    public CartTimings( int numCustomers ) {
+        this.enterTimes = new long[ numCustomers ];
+        this.exitTimes = new long[ numCustomers ];
+        this.finishTimes = new long[ numCustomers ];
+        this.cartSizes = new int[ numCustomers ];
+        this.serviced = new boolean[ numCustomers ];
+    }
+
+    /**
+     * Copy a cart's times into its customer's slot. Call this after its
+     * servicingDone().
+     *
+     * @param cart a cart made with a customer number
+     */
+    public void record( Cart cart ) {
+        int id = cart.getId();
+        enterTimes[ id ] = cart.getEnterNanos();
+        exitTimes[ id ] = cart.getExitNanos();
+        finishTimes[ id ] = cart.getFinishedNanos();
+        cartSizes[ id ] = cart.getCartSize();
+        serviced[ id ] = true;
+    }
+
+    /**
+     * How many carts have been recorded?
+     *
+     * @return the number of serviced carts
+     */
+    public int getCount() {
+        int count = 0;
+        for ( boolean done : serviced ) {
+            count += done ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * What was the exact average number of groceries in a serviced cart?
+     *
+     * @return the mean cart size, or 0 if nothing was recorded
+     */
+    public double getMeanCartSize() {
+        long sum = 0;
+        int count = 0;
+        for ( int i = 0; i < cartSizes.length; ++i ) {
+            if ( serviced[ i ] ) {
+                sum += cartSizes[ i ];
+                ++count;
+            }
+        }
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Print the exact averages and a table of percentiles, in msec., in
+     * the same layout as {@link WaitStatistics#print()}.
+     */
+    public void print() {
+        long[] queueWait = durations( enterTimes, exitTimes );
+        long[] service = durations( exitTimes, finishTimes );
+        long[] totalWait = durations( enterTimes, finishTimes );
+        String format =
+                "Exact average %10s time was %10.3f msec." +
+                System.lineSeparator();
+        Utilities.printf( format, "queue wait", mean( queueWait ) );
+        Utilities.printf( format, "service", mean( service ) );
+        Utilities.printf( format, "total wait", mean( totalWait ) );
+        Utilities.printf( "Exact average cart size was %.3f, over %d carts." +
+                          System.lineSeparator(), getMeanCartSize(), totalWait.length );
+        StringBuilder header = new StringBuilder( String.format( "%-12s", "exact msec." ) );
+        for ( String name : WaitStatistics.PERCENTILE_NAMES ) {
+            header.append( String.format( "%11s", name ) );
+        }
+        header.append( String.format( "%11s", "max" ) );
+        Utilities.println( header.toString() );
+        printRow( "queue wait", queueWait );
+        printRow( "service", service );
+        printRow( "total wait", totalWait );
+    }
+
+    /**
+     * Work out one duration per serviced cart and sort them.
+     *
+     * @param from when each duration starts
+     * @param to when each duration ends
+     * @return to minus from, for every serviced cart, in increasing order
+     */
+    private long[] durations( long[] from, long[] to ) {
+        long[] all = new long[ from.length ];
+        for ( int i = 0; i < all.length; ++i ) {
+            all[ i ] = to[ i ] - from[ i ];
+        }
+        // Keep only the serviced carts, packed at the front.
+        int count = 0;
+        for ( int i = 0; i < all.length; ++i ) {
+            if ( serviced[ i ] ) {
+                all[ count++ ] = all[ i ];
+            }
+        }
+        long[] sorted = Arrays.copyOf( all, count );
+        Arrays.sort( sorted );
+        return sorted;
+    }
+
+    /**
+     * Find the mean of some durations.
+     *
+     * @param sorted the durations, in nanoseconds
+     * @return their mean in msec., or 0 if there are none
+     */
+    private static double mean( long[] sorted ) {
+        long sum = 0;
+        for ( long value : sorted ) {
+            sum += value;
+        }
+        return sorted.length == 0 ? 0 : sum / NANOS_PER_MSEC / sorted.length;
+    }
+
+    /**
+     * Find the value that the given percentage of durations are at or
+     * below, ranked the same way as {@link LatencyHistogram}.
+     *
+     * @param sorted the durations, in nanoseconds, in increasing order
+     * @param percentile a percentage from 0 to 100
+     * @return the value at that percentile in msec., or 0 if there are none
+     */
+    private static double valueAtPercentile( long[] sorted, double percentile ) {
+        if ( sorted.length == 0 ) {
+            return 0;
+        }
+        long rank = Math.max( 1, (long) Math.ceil( percentile / 100.0 * sorted.length ) );
+        return sorted[ (int) Math.min( rank, sorted.length ) - 1 ] / NANOS_PER_MSEC;
+    }
+
+    /**
+     * Print the percentiles of some durations on a line.
+     *
+     * @param name what the durations measure
+     * @param sorted the durations, in nanoseconds, in increasing order
+     */
+    private static void printRow( String name, long[] sorted ) {
+        StringBuilder row = new StringBuilder( String.format( "%-12s", name ) );
+        for ( double p : WaitStatistics.PERCENTILES ) {
+            row.append( String.format( "%11.3f", valueAtPercentile( sorted, p ) ) );
+        }
+        row.append( String.format( "%11.3f", valueAtPercentile( sorted, 100 ) ) );
+        Utilities.println( row.toString() );
+    }
+}
@@ -0,0 +1,432 @@
+package edu.rit.cs.grocerystore;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A set of first-in-first-out checkout lanes, each one owned by a single
+ * clerk. Customers join a lane chosen by a {@link Policy}. A clerk serves
+ * its own lane from the front; when its lane is empty it steals from the
+ * back of the longest other lane, and only when every lane is empty does
+ * it wait.
+ * <p>
+ * Each lane has its own lock, so producers and consumers working on
+ * different lanes do not contend with each other.
+ *
+ * @param <E> The type of elements that will be in the lanes
+ * @author RIT CS
+ */
+public class CheckoutLanes<E extends TimedObject> implements TSQueue<E> {
+
+    /**
+     * How an arriving customer picks a lane.
+     */
+    public enum Policy {
+        /** Join the lane with the fewest carts in it */
+        SHORTEST( "Shortest" ),
+        /** Join a lane chosen uniformly at random */
+        RANDOM( "Random" ),
+        /** Join the lanes in turn */
+        ROUND_ROBIN( "RoundRobin" );
+
+        /** The name used on the command line */
+        private final String argName;
+
+        Policy( String argName ) { this.argName = argName; }
+
+        /**
+         * Find the policy with the given command line name.
+         *
+         * @param argName the name used on the command line
+         * @return the matching policy
+         * @throws IllegalArgumentException if no policy has that name
+         */
+        public static Policy fromArg( String argName ) {
+            for ( Policy policy : values() ) {
+                if ( policy.argName.equals( argName ) ) {
+                    return policy;
+                }
+            }
+            throw new IllegalArgumentException( argName );
+        }
+
+        @Override
+        public String toString() { return argName; }
+    }
+
+    /** The lanes. Each one is guarded by its own monitor. */
+    private final ArrayDeque< E >[] lanes;
+    /** The length of every lane, readable without taking its lock */
+    private final AtomicIntegerArray laneSizes;
+    /** The number of elements in all lanes together */
+    private final AtomicInteger total;
+    /** How customers choose a lane */
+    private final Policy policy;
+    /** The next lane for {@link Policy#ROUND_ROBIN} */
+    private final AtomicInteger nextLane;
+    /** The monitor that idle clerks wait on */
+    private final Object idle;
+    /** The number of clerks waiting on {@link #idle} */
+    private volatile int idleCount;
+    /** Set once no more values may be added */
+    private volatile boolean closed;
+
+    /**
+     * Create empty lanes.
+     *
+     * @param numLanes how many lanes (and clerks) there are
+     * @param policy how arriving customers choose a lane
+     */
+    @SuppressWarnings( { "unchecked", "rawtypes" } )
+    public CheckoutLanes( int numLanes, Policy policy ) {
+        if ( numLanes < 1 ) {
+            throw new IllegalArgumentException( "lanes: " + numLanes );
+        }
+        this.lanes = new ArrayDeque[ numLanes ];
+        for ( int i = 0; i < numLanes; ++i ) {
+            this.lanes[ i ] = new ArrayDeque<>();
+        }
+        this.laneSizes = new AtomicIntegerArray( numLanes );
+        this.total = new AtomicInteger();
+        this.policy = policy;
+        this.nextLane = new AtomicInteger();
+        this.idle = new Object();
+        this.idleCount = 0;
+    }
+
+    /**
+     * How many lanes are there?
+     *
+     * @return the number of lanes given to the constructor
+     */
+    public int numLanes() { return lanes.length; }
+
+    /**
+     * Get the view of one lane that its clerk uses. Enqueuing on the view
+     * puts the value directly in that lane; dequeuing or draining from it
+     * serves that lane first and steals from the others when it is empty.
+     *
+     * @param laneNum which lane, from 0 to {@link #numLanes()}-1
+     * @return the lane's view
+     */
+    public TSQueue< E > lane( int laneNum ) {
+        if ( laneNum < 0 || laneNum >= lanes.length ) {
+            throw new IndexOutOfBoundsException( laneNum );
+        }
+        return new TSQueue<>() {
+            @Override
+            public int enqueue( E value ) { return put( laneNum, value ); }
+            @Override
+            public E dequeue() { return take( laneNum ); }
+            @Override
+            public int drainTo( Collection< ? super E > sink, int max ) {
+                return drain( laneNum, sink, max );
+            }
+            @Override
+            public int drainTo( Collection< ? super E > sink, int max,
+                                long timeout, TimeUnit unit ) {
+                return drain( laneNum, sink, max, unit.toNanos( timeout ) );
+            }
+            @Override
+            public void close() { CheckoutLanes.this.close(); }
+            @Override
+            public boolean isClosed() { return closed; }
+        };
+    }
+
+    /**
+     * Puts the value in the lane chosen by the policy, and calls
+     * TimedObject.enterQueue() on the value.
+     *
+     * @param value the value to be enqueued
+     * @return the size of the chosen lane after the value was added
+     */
+    @Override
+    public int enqueue( E value ) {
+        return put( chooseLane(), value );
+    }
+
+    /**
+     * Removes a value from the longest lane, stealing it from the back
+     * as an idle clerk would, and calls TimedObject.exitQueue() on it.
+     * Blocks if all lanes are empty.
+     *
+     * @return the value that was removed
+     */
+    @Override
+    public E dequeue() {
+        return take( -1 );
+    }
+
+    /**
+     * Removes up to max values without blocking, each stolen from the
+     * back of the longest lane, and calls TimedObject.exitQueue() on them.
+     *
+     * @param sink where the removed values are added
+     * @param max the most values to remove
+     * @return the number of values removed
+     */
+    @Override
+    public int drainTo( Collection< ? super E > sink, int max ) {
+        return drain( -1, sink, max );
+    }
+
+    /**
+     * Like {@link #drainTo(Collection, int)}, but waits up to the given
+     * time if all lanes are empty.
+     *
+     * @param sink where the removed values are added
+     * @param max the most values to remove
+     * @param timeout how long to wait for the first value
+     * @param unit the unit of timeout
+     * @return the number of values removed, 0 if the time ran out
+     */
+    @Override
+    public int drainTo( Collection< ? super E > sink, int max,
+                        long timeout, TimeUnit unit ) {
+        return drain( -1, sink, max, unit.toNanos( timeout ) );
+    }
+
+    /**
+     * Closes every lane and wakes every idle clerk. Clerks take what is
+     * left in any lane and then get null.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized( idle ) {
+            idle.notifyAll();
+        }
+    }
+
+    @Override
+    public boolean isClosed() { return closed; }
+
+    /**
+     * Pick a lane for an arriving customer.
+     *
+     * @return the index of the lane
+     */
+    private int chooseLane() {
+        switch ( policy ) {
+            case RANDOM:
+                return ThreadLocalRandom.current().nextInt( lanes.length );
+            case ROUND_ROBIN:
+                return Math.floorMod( nextLane.getAndIncrement(), lanes.length );
+            default:
+                int best = 0;
+                for ( int i = 1; i < lanes.length; ++i ) {
+                    if ( laneSizes.get( i ) < laneSizes.get( best ) ) {
+                        best = i;
+                    }
+                }
+                return best;
+        }
+    }
+
+    /**
+     * Add a value to the back of a lane and wake an idle clerk if
+     * there is one.
+     *
+     * @param laneNum the lane
+     * @param value the value to be enqueued
+     * @return the size of that lane after the value was added
+     * @throws IllegalStateException if the lanes are closed
+     */
+    private int put( int laneNum, E value ) {
+        if ( closed ) {
+            throw new IllegalStateException( "lanes are closed" );
+        }
+        ArrayDeque< E > lane = lanes[ laneNum ];
+        int size;
+        synchronized( lane ) {
+            lane.addLast( value );
+            value.enterQueue();
+            size = lane.size();
+            laneSizes.set( laneNum, size );
+        }
+        total.incrementAndGet();
+        wakeOne();
+        return size;
+    }
+
+    /**
+     * Serve the given lane, steal from the longest other lane, or wait
+     * until one of them has something in it or the lanes are closed.
+     *
+     * @param laneNum the caller's own lane, or -1 if it has none
+     * @return the value that was removed, or null if the lanes are closed
+     * and empty
+     */
+    private E take( int laneNum ) {
+        while ( true ) {
+            E value = laneNum >= 0 ? pollFirst( laneNum ) : null;
+            if ( value == null ) {
+                value = steal( laneNum );
+            }
+            if ( value != null ) {
+                total.decrementAndGet();
+                if ( total.get() > 0 ) {
+                    wakeOne();
+                }
+                value.exitQueue();
+                return value;
+            }
+            if ( closed && total.get() == 0 ) {
+                return null;
+            }
+            synchronized( idle ) {
+                ++idleCount;
+                try {
+                    while ( total.get() == 0 && !closed ) {
+                        idle.wait();
+                    }
+                }
+                catch( InterruptedException e ) {
+                    throw new RuntimeException( e );
+                }
+                finally {
+                    --idleCount;
+                }
+            }
+        }
+    }
+
+    /**
+     * Empty the front of the given lane, taking its lock once, then steal
+     * from other lanes until max values have been removed or all lanes
+     * are empty.
+     *
+     * @param laneNum the caller's own lane, or -1 if it has none
+     * @param sink where the removed values are added
+     * @param max the most values to remove
+     * @return the number of values removed
+     */
+    private int drain( int laneNum, Collection< ? super E > sink, int max ) {
+        int count = 0;
+        if ( laneNum >= 0 && max > 0 ) {
+            ArrayDeque< E > lane = lanes[ laneNum ];
+            synchronized( lane ) {
+                E value;
+                while ( count < max && ( value = lane.pollFirst() ) != null ) {
+                    value.exitQueue();
+                    sink.add( value );
+                    ++count;
+                }
+                laneSizes.set( laneNum, lane.size() );
+            }
+        }
+        E value;
+        while ( count < max && ( value = steal( laneNum ) ) != null ) {
+            value.exitQueue();
+            sink.add( value );
+            ++count;
+        }
+        if ( count > 0 && total.addAndGet( -count ) > 0 ) {
+            wakeOne();
+        }
+        return count;
+    }
+
+    /**
+     * Like {@link #drain(int, Collection, int)}, but wait up to the given
+     * time if all lanes are empty.
+     *
+     * @param laneNum the caller's own lane, or -1 if it has none
+     * @param sink where the removed values are added
+     * @param max the most values to remove
+     * @param nanos how long to wait for the first value
+     * @return the number of values removed, 0 if the time ran out or the
+     * lanes are closed and empty
+     */
+    private int drain( int laneNum, Collection< ? super E > sink, int max,
+                       long nanos ) {
+        long deadline = System.nanoTime() + nanos;
+        int count = drain( laneNum, sink, max );
+        while ( count == 0 && max > 0 ) {
+            synchronized( idle ) {
+                ++idleCount;
+                try {
+                    long remaining;
+                    while ( total.get() == 0 ) {
+                        remaining = deadline - System.nanoTime();
+                        if ( remaining <= 0 || closed ) {
+                            return 0;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait( idle, remaining );
+                    }
+                }
+                catch( InterruptedException e ) {
+                    throw new RuntimeException( e );
+                }
+                finally {
+                    --idleCount;
+                }
+            }
+            count = drain( laneNum, sink, max );
+        }
+        return count;
+    }
+
+    /**
+     * Take the value at the front of a lane without blocking.
+     *
+     * @param laneNum the lane
+     * @return the oldest value in that lane, or null if it is empty
+     */
+    private E pollFirst( int laneNum ) {
+        ArrayDeque< E > lane = lanes[ laneNum ];
+        synchronized( lane ) {
+            E value = lane.pollFirst();
+            laneSizes.set( laneNum, lane.size() );
+            return value;
+        }
+    }
+
+    /**
+     * Take the value at the back of the longest lane other than the
+     * caller's own, without blocking. Lane lengths may change during
+     * the scan, so every non-empty lane is tried, longest first.
+     *
+     * @param laneNum the caller's own lane, or -1 if it has none
+     * @return a value from another lane, or null if all are empty
+     */
+    private E steal( int laneNum ) {
+        while ( total.get() > 0 ) {
+            int victim = -1;
+            for ( int i = 0; i < lanes.length; ++i ) {
+                if ( i != laneNum && laneSizes.get( i ) > 0 &&
+                     ( victim < 0 || laneSizes.get( i ) > laneSizes.get( victim ) ) ) {
+                    victim = i;
+                }
+            }
+            if ( victim < 0 ) {
+                return null;
+            }
+            ArrayDeque< E > lane = lanes[ victim ];
+            synchronized( lane ) {
+                E value = lane.pollLast();
+                laneSizes.set( victim, lane.size() );
+                if ( value != null ) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Wake up one idle clerk, if any are waiting.
+     */
+    private void wakeOne() {
+        if ( idleCount > 0 ) {
+            synchronized( idle ) {
+                idle.notify();
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package edu.rit.cs.grocerystore;
+
+/**
+ * The binary protocol between a {@link RemoteTSQueue} and a
+ * {@link CheckoutServer}. All numbers are big-endian.
+ * <p>
+ * A request is an opcode byte and a request number (an int chosen by the
+ * client), then the opcode's fields:
+ * <ul>
+ *     <li>{@link #ENQUEUE}: key (long), payload (int) and timeout in
+ *     nsec. (long: 0 to give up at once if the line is full, negative to
+ *     wait for ever)</li>
+ *     <li>{@link #TAKE}: the most values to take (int) and timeout in
+ *     nsec. (long: 0 not to wait if the line is empty, negative to wait
+ *     for ever)</li>
+ *     <li>{@link #CLOSE} and {@link #IS_CLOSED}: nothing</li>
+ * </ul>
+ * A response is the request number and a status byte, then, if the
+ * status is {@link #OK}, the opcode's result:
+ * <ul>
+ *     <li>{@link #ENQUEUE}: the size of the line after the value went
+ *     in, or 0 if it did not (int)</li>
+ *     <li>{@link #TAKE}: the number of values taken (int), then for each,
+ *     its key (long), payload (int) and nsec. in line (long)</li>
+ *     <li>{@link #IS_CLOSED}: 1 or 0 (byte)</li>
+ *     <li>{@link #CLOSE}: nothing</li>
+ * </ul>
+ * There are no lengths: each side knows the size of every message from
+ * its opcode. A client may send any number of requests without waiting
+ * for their responses, and responses may come back in any order, since
+ * a request that waits does not hold up the others.
+ *
+ * @author RIT CS
+ */
+final class CheckoutProtocol {
+
+    /** Put a value in the line */
+    static final byte ENQUEUE = 1;
+    /** Take values out of the line */
+    static final byte TAKE = 2;
+    /** Say that this client will put no more values in the line */
+    static final byte CLOSE = 3;
+    /** Ask whether the line is closed */
+    static final byte IS_CLOSED = 4;
+
+    /** Status: the request was done */
+    static final byte OK = 0;
+    /** Status: the line is closed, so the value could not go in */
+    static final byte CLOSED = 1;
+
+    /** Bytes of the opcode and request number */
+    static final int REQUEST_HEADER_BYTES = 5;
+    /** Bytes of the request number and status */
+    static final int RESPONSE_HEADER_BYTES = 5;
+    /** Bytes of each value in a {@link #TAKE} response */
+    static final int TAKEN_BYTES = 20;
+
+    /** The port a server listens on unless told otherwise */
+    static final int DEFAULT_PORT = 7373;
+
+    /** There are only constants */
+    private CheckoutProtocol() {}
+
+    /**
+     * How many bytes are in a request?
+     *
+     * @param opcode the request's opcode
+     * @return its size, header included, or -1 if the opcode is unknown
+     */
+    static int requestBytes( byte opcode ) {
+        return switch ( opcode ) {
+            case ENQUEUE -> REQUEST_HEADER_BYTES + 20;
+            case TAKE -> REQUEST_HEADER_BYTES + 12;
+            case CLOSE, IS_CLOSED -> REQUEST_HEADER_BYTES;
+            default -> -1;
+        };
+    }
+}
@@ -0,0 +1,622 @@
+package edu.rit.cs.grocerystore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hosts a queue for other processes, which use it through a
+ * {@link RemoteTSQueue}, so that customers and clerks can run in as many
+ * processes as wanted, on this machine or others. The requests and
+ * responses are described in {@link CheckoutProtocol}.
+ * <p>
+ * One thread serves every connection with a {@link Selector}, and it is
+ * the only thread that touches the queue, so it never blocks on it:
+ * values go in with a zero-timeout offer and come out with a drain. A
+ * request that has to wait, for a value or for room, is parked until
+ * another request makes it possible, or its time runs out. Parked
+ * requests are served in the order they came in. All the requests that
+ * arrive together are handled before any responses are sent, and the
+ * responses to each connection then go out in one write.
+ * <p>
+ * The values in the queue are made again by a {@link TimedCodec}, and
+ * timed by this process's clock. A client that takes one is told how
+ * long it was in line.
+ * <p>
+ * Clients that put values in the line are its producers. The line is
+ * closed when one of them asks to close it and every other producer
+ * has asked too, or has gone away. A client that has put nothing in
+ * may also close it, if there are no producers. So every producer
+ * process should connect before the first of them finishes.
+ *
+ * @param <E> the type of elements in the queue
+ * @author RIT CS
+ */
+public class CheckoutServer< E extends TimedObject > {
+
+    /** Bytes of each connection's buffer for incoming requests */
+    private static final int IN_BUFFER_BYTES = 64 * 1024;
+
+    /** Bytes each connection's buffer for outgoing responses starts with */
+    private static final int OUT_BUFFER_BYTES = 16 * 1024;
+
+    /**
+     * One client.
+     */
+    private static final class Connection {
+        /** Its socket */
+        final SocketChannel channel;
+        /** Its selection key */
+        final SelectionKey key;
+        /** Requests read but not yet handled */
+        final ByteBuffer in = ByteBuffer.allocate( IN_BUFFER_BYTES );
+        /** Responses not yet sent, ready to be written to */
+        ByteBuffer out = ByteBuffer.allocate( OUT_BUFFER_BYTES );
+        /** Whether it has put a value in the line */
+        boolean producer;
+        /** Whether it has asked to close the line */
+        boolean closing;
+
+        Connection( SocketChannel channel, SelectionKey key ) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        /**
+         * Make room for another response.
+         *
+         * @param bytes the size of the response
+         * @return the buffer to put it in
+         */
+        ByteBuffer reserve( int bytes ) {
+            if ( out.remaining() < bytes ) {
+                ByteBuffer bigger = ByteBuffer.allocate(
+                        Math.max( out.capacity() * 2, out.position() + bytes ) );
+                out.flip();
+                bigger.put( out );
+                out = bigger;
+            }
+            return out;
+        }
+    }
+
+    /**
+     * A request that is waiting to be done.
+     *
+     * @param connection who asked
+     * @param request the request number
+     * @param value the value to put in, or null to take values out
+     * @param max the most values to take out
+     * @param deadline when to give up, in System.nanoTime(), or
+     *                 Long.MAX_VALUE for never
+     * @param <E> the type of the value
+     */
+    private record Parked< E >( Connection connection, int request, E value, int max,
+                                long deadline ) {}
+
+    /** The queue being served */
+    private final TSQueue< E > queue;
+    /** How values are made again */
+    private final TimedCodec< E > codec;
+    /** What the server listens for connections on */
+    private final ServerSocketChannel server;
+    /** Tells the serving thread what is ready */
+    private final Selector selector;
+    /** Requests waiting for values, in the order they came */
+    private final Deque< Parked< E > > takers;
+    /** Requests waiting for room, in the order they came */
+    private final Deque< Parked< E > > offers;
+    /** Connections with responses to send */
+    private final Set< Connection > unsent;
+    /** Every open connection */
+    private final Set< Connection > connections;
+    /** The thread serving requests, once started */
+    private Thread thread;
+    /** Cleared to make the serving thread stop */
+    private volatile boolean running;
+    /** Whether some client has asked to close the line */
+    private boolean closeRequested;
+    /** Values taken out so far; written only by the serving thread */
+    private volatile long taken;
+
+    /**
+     * Open a server for the queue, listening on the given address but not
+     * yet serving.
+     *
+     * @param queue the queue to serve; only the server should use it
+     * @param codec how values are made again
+     * @param address where to listen; port 0 chooses a free port
+     * @throws UncheckedIOException if the address cannot be listened on
+     */
+    public CheckoutServer( TSQueue< E > queue, TimedCodec< E > codec,
+                           InetSocketAddress address ) {
+        this.queue = queue;
+        this.codec = codec;
+        this.takers = new ArrayDeque<>();
+        this.offers = new ArrayDeque<>();
+        this.unsent = new LinkedHashSet<>();
+        this.connections = new LinkedHashSet<>();
+        try {
+            this.selector = Selector.open();
+            this.server = ServerSocketChannel.open();
+            server.bind( address );
+            server.configureBlocking( false );
+            server.register( selector, SelectionKey.OP_ACCEPT );
+        }
+        catch( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    /**
+     * Serve a checkout line of carts until killed. Once the line is
+     * closed it stays closed, so each run needs a server of its own.
+     *
+     * @param args Strings from the command line:
+     *             [0] the port to listen on (default
+     *                 {@value CheckoutProtocol#DEFAULT_PORT});
+     *             [1] the kind of line, as for {@link GroceryLine}, except
+     *                 Lanes (default FIFO);
+     *             [2] the most carts the line holds (default unbounded)
+     */
+    public static void main( String[] args ) {
+        try {
+            int port = args.length > 0 ? Integer.parseInt( args[ 0 ] ) :
+                       CheckoutProtocol.DEFAULT_PORT;
+            String kind = args.length > 1 ? args[ 1 ] : GroceryLine.FIFO_Q;
+            int capacity = args.length > 2 ? Integer.parseInt( args[ 2 ] ) :
+                           TSQueue.UNBOUNDED;
+            if ( kind.equals( GroceryLine.LANES_Q ) ) {
+                // Lanes are chosen by the clerk, which the server cannot tell.
+                throw new IllegalArgumentException( kind );
+            }
+            TSQueue< Cart > line = GroceryLine.newQueue(
+                    kind, 1, CheckoutLanes.Policy.SHORTEST, capacity );
+            CheckoutServer< Cart > server =
+                    new CheckoutServer<>( line, TimedCodec.CARTS, new InetSocketAddress( port ) );
+            server.start();
+            Utilities.println( "Serving a " + kind + " line on port " + server.getPort() + "." );
+            server.thread.join();
+        }
+        catch( IllegalArgumentException e ) {
+            System.err.println( e );
+            System.err.println( "Usage: java CheckoutServer [port [queue-kind [capacity]]]" );
+            System.exit( 1 );
+        }
+        catch( InterruptedException ie ) {
+            System.err.println( "InterruptedException in main() join()?" );
+            ie.printStackTrace();
+        }
+    }
+
+    /**
+     * Start serving requests on a thread of its own.
+     */
+    public synchronized void start() {
+        running = true;
+        thread = new Thread( this::serve, "CheckoutServer " + getPort() );
+        thread.start();
+    }
+
+    /**
+     * Stop serving, drop every connection, and close the queue.
+     *
+     * @throws InterruptedException if interrupted while waiting for the
+     * serving thread
+     */
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        selector.wakeup();
+        if ( thread != null ) {
+            thread.join();
+        }
+    }
+
+    /** @return the port the server listens on */
+    public int getPort() { return server.socket().getLocalPort(); }
+
+    /** @return how many values clients have taken out of the line */
+    public long getTaken() { return taken; }
+
+    /**
+     * Serve requests until stopped.
+     */
+    private void serve() {
+        try {
+            while ( running ) {
+                selector.select( selectTimeout() );
+                Iterator< SelectionKey > ready = selector.selectedKeys().iterator();
+                while ( ready.hasNext() ) {
+                    SelectionKey key = ready.next();
+                    ready.remove();
+                    if ( !key.isValid() ) {
+                        continue;
+                    }
+                    if ( key.isAcceptable() ) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if ( key.isWritable() ) {
+                            write( connection );
+                        }
+                        if ( key.isValid() && key.isReadable() ) {
+                            read( connection );
+                        }
+                    }
+                    catch( IOException | IllegalStateException e ) {
+                        drop( connection );
+                    }
+                }
+                expire();
+                while ( !unsent.isEmpty() ) {
+                    // Dropping a connection can answer others' requests.
+                    List< Connection > writing = new ArrayList<>( unsent );
+                    unsent.clear();
+                    for ( Connection connection : writing ) {
+                        try {
+                            write( connection );
+                        }
+                        catch( IOException e ) {
+                            drop( connection );
+                        }
+                    }
+                }
+            }
+        }
+        catch( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+        finally {
+            new ArrayList<>( connections ).forEach( this::drop );
+            queue.close();
+            try {
+                server.close();
+                selector.close();
+            }
+            catch( IOException e ) {
+                // Nothing more can be done; the port is freed on exit.
+            }
+        }
+    }
+
+    /**
+     * How long can the serving thread wait before a parked request's
+     * time runs out?
+     *
+     * @return msec., or 0 for as long as it likes
+     */
+    private long selectTimeout() {
+        long nearest = Long.MAX_VALUE;
+        for ( Deque< Parked< E > > parked : List.of( takers, offers ) ) {
+            for ( Parked< E > request : parked ) {
+                nearest = Math.min( nearest, request.deadline() );
+            }
+        }
+        if ( nearest == Long.MAX_VALUE ) {
+            return 0;
+        }
+        return Math.max( 1, TimeUnit.NANOSECONDS.toMillis( nearest - System.nanoTime() ) + 1 );
+    }
+
+    /**
+     * Take a new connection.
+     *
+     * @throws IOException if it cannot be set up
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if ( channel == null ) {
+            return;
+        }
+        channel.configureBlocking( false );
+        channel.setOption( StandardSocketOptions.TCP_NODELAY, true );
+        SelectionKey key = channel.register( selector, SelectionKey.OP_READ );
+        Connection connection = new Connection( channel, key );
+        key.attach( connection );
+        connections.add( connection );
+    }
+
+    /**
+     * Read what a connection has sent and handle every whole request in it.
+     *
+     * @param connection the connection
+     * @throws IOException if it cannot be read
+     * @throws IllegalStateException if a request makes no sense
+     */
+    private void read( Connection connection ) throws IOException {
+        ByteBuffer in = connection.in;
+        if ( connection.channel.read( in ) < 0 ) {
+            drop( connection );
+            return;
+        }
+        in.flip();
+        while ( in.hasRemaining() ) {
+            int bytes = CheckoutProtocol.requestBytes( in.get( in.position() ) );
+            if ( bytes < 0 ) {
+                throw new IllegalStateException( "opcode " + in.get( in.position() ) );
+            }
+            if ( in.remaining() < bytes ) {
+                break;
+            }
+            handle( connection, in );
+        }
+        in.compact();
+    }
+
+    /**
+     * Handle one request.
+     *
+     * @param connection who sent it
+     * @param in the request, which is read
+     */
+    private void handle( Connection connection, ByteBuffer in ) {
+        byte opcode = in.get();
+        int request = in.getInt();
+        switch ( opcode ) {
+            case CheckoutProtocol.ENQUEUE -> {
+                long key = in.getLong();
+                int payload = in.getInt();
+                long timeout = in.getLong();
+                connection.producer = true;
+                E value = codec.rebuild( key, payload, Clock.MONOTONIC );
+                if ( queue.isClosed() ) {
+                    status( connection, request, CheckoutProtocol.CLOSED );
+                }
+                else if ( !offers.isEmpty() || !offer( connection, request, value ) ) {
+                    if ( timeout == 0 ) {
+                        added( connection, request, 0 );
+                    }
+                    else {
+                        offers.addLast( new Parked<>( connection, request, value, 0,
+                                                    deadline( timeout ) ) );
+                    }
+                }
+            }
+            case CheckoutProtocol.TAKE -> {
+                int max = in.getInt();
+                long timeout = in.getLong();
+                if ( max < 1 ) {
+                    throw new IllegalStateException( "take " + max );
+                }
+                if ( !takers.isEmpty() || !take( connection, request, max ) ) {
+                    if ( timeout == 0 || queue.isClosed() ) {
+                        taken( connection, request, List.of() );
+                    }
+                    else {
+                        takers.addLast( new Parked<>( connection, request, null, max,
+                                                    deadline( timeout ) ) );
+                    }
+                }
+            }
+            case CheckoutProtocol.CLOSE -> {
+                connection.closing = true;
+                closeRequested = true;
+                status( connection, request, CheckoutProtocol.OK );
+                closeIfFinished();
+            }
+            case CheckoutProtocol.IS_CLOSED -> {
+                status( connection, request, CheckoutProtocol.OK );
+                connection.reserve( 1 ).put( (byte) ( queue.isClosed() ? 1 : 0 ) );
+            }
+            default -> throw new IllegalStateException( "opcode " + opcode );
+        }
+        unpark();
+    }
+
+    /**
+     * When does a request's time run out?
+     *
+     * @param timeout nsec. from now, 0 for not to wait, or negative for ever
+     * @return when, in System.nanoTime(), or Long.MAX_VALUE for never
+     */
+    private static long deadline( long timeout ) {
+        return timeout < 0 ? Long.MAX_VALUE : System.nanoTime() + timeout;
+    }
+
+    /**
+     * Try to put a value in the line, answering the request if it goes in.
+     *
+     * @param connection who asked
+     * @param request the request number
+     * @param value the value
+     * @return whether the value went in
+     */
+    private boolean offer( Connection connection, int request, E value ) {
+        int size = queue.offer( value, 0, TimeUnit.NANOSECONDS );
+        if ( size == 0 ) {
+            return false;
+        }
+        added( connection, request, size );
+        return true;
+    }
+
+    /**
+     * Try to take values out of the line, answering the request if any
+     * are taken.
+     *
+     * @param connection who asked
+     * @param request the request number
+     * @param max the most values to take
+     * @return whether any were taken
+     */
+    private boolean take( Connection connection, int request, int max ) {
+        List< E > values = new ArrayList<>();
+        if ( queue.drainTo( values, max ) == 0 ) {
+            return false;
+        }
+        taken( connection, request, values );
+        return true;
+    }
+
+    /**
+     * Do what parked requests can now be done, oldest first, and answer
+     * them all if the line has been closed.
+     */
+    private void unpark() {
+        boolean progress = true;
+        while ( progress ) {
+            progress = false;
+            while ( !takers.isEmpty() ) {
+                Parked< E > parked = takers.peekFirst();
+                if ( !take( parked.connection(), parked.request(), parked.max() ) ) {
+                    break;
+                }
+                takers.removeFirst();
+            }
+            while ( !offers.isEmpty() ) {
+                Parked< E > parked = offers.peekFirst();
+                if ( !offer( parked.connection(), parked.request(), parked.value() ) ) {
+                    break;
+                }
+                offers.removeFirst();
+                progress = true;
+            }
+        }
+        if ( queue.isClosed() ) {
+            takers.forEach( parked ->
+                    taken( parked.connection(), parked.request(), List.of() ) );
+            takers.clear();
+            offers.forEach( parked ->
+                    status( parked.connection(), parked.request(), CheckoutProtocol.CLOSED ) );
+            offers.clear();
+        }
+    }
+
+    /**
+     * Answer the parked requests whose time has run out.
+     */
+    private void expire() {
+        long now = System.nanoTime();
+        takers.removeIf( parked -> {
+            if ( parked.deadline() - now > 0 ) {
+                return false;
+            }
+            taken( parked.connection(), parked.request(), List.of() );
+            return true;
+        } );
+        offers.removeIf( parked -> {
+            if ( parked.deadline() - now > 0 ) {
+                return false;
+            }
+            added( parked.connection(), parked.request(), 0 );
+            return true;
+        } );
+    }
+
+    /**
+     * Close the line if every producer has asked to, or gone away, and
+     * some client has asked to.
+     */
+    private void closeIfFinished() {
+        if ( !closeRequested || queue.isClosed() ) {
+            return;
+        }
+        for ( Connection connection : connections ) {
+            if ( connection.producer && !connection.closing ) {
+                return;
+            }
+        }
+        queue.close();
+    }
+
+    /**
+     * Start a response.
+     *
+     * @param connection who to send it to
+     * @param request the request number
+     * @param status how it went
+     */
+    private void status( Connection connection, int request, byte status ) {
+        connection.reserve( CheckoutProtocol.RESPONSE_HEADER_BYTES )
+                  .putInt( request ).put( status );
+        unsent.add( connection );
+    }
+
+    /**
+     * Answer an {@link CheckoutProtocol#ENQUEUE} request.
+     *
+     * @param connection who to send it to
+     * @param request the request number
+     * @param size the size of the line, or 0 if the value did not go in
+     */
+    private void added( Connection connection, int request, int size ) {
+        status( connection, request, CheckoutProtocol.OK );
+        connection.reserve( Integer.BYTES ).putInt( size );
+    }
+
+    /**
+     * Answer a {@link CheckoutProtocol#TAKE} request.
+     *
+     * @param connection who to send it to
+     * @param request the request number
+     * @param values the values taken
+     */
+    private void taken( Connection connection, int request, List< E > values ) {
+        status( connection, request, CheckoutProtocol.OK );
+        ByteBuffer out = connection.reserve(
+                Integer.BYTES + values.size() * CheckoutProtocol.TAKEN_BYTES );
+        out.putInt( values.size() );
+        for ( E value : values ) {
+            out.putLong( codec.key( value ) ).putInt( codec.payload( value ) )
+               .putLong( value.getInQueueNanos() );
+        }
+        taken += values.size();
+    }
+
+    /**
+     * Send what responses a connection will take without blocking, and
+     * wait to be told it will take more if some are left.
+     *
+     * @param connection the connection
+     * @throws IOException if it cannot be written
+     */
+    private void write( Connection connection ) throws IOException {
+        if ( !connection.channel.isOpen() ) {
+            return;
+        }
+        ByteBuffer out = connection.out;
+        out.flip();
+        connection.channel.write( out );
+        boolean left = out.hasRemaining();
+        out.compact();
+        connection.key.interestOps( left ? SelectionKey.OP_READ | SelectionKey.OP_WRITE :
+                                           SelectionKey.OP_READ );
+    }
+
+    /**
+     * Forget a connection and what it was waiting for. If it was a
+     * producer, the line may now be finished with.
+     *
+     * @param connection the connection
+     */
+    private void drop( Connection connection ) {
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        }
+        catch( IOException e ) {
+            // It is gone either way.
+        }
+        connections.remove( connection );
+        takers.removeIf( parked -> parked.connection() == connection );
+        offers.removeIf( parked -> parked.connection() == connection );
+        closeIfFinished();
+        unpark();
+    }
+}
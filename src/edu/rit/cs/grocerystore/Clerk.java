@@ -1,5 +1,7 @@
 package edu.rit.cs.grocerystore;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * In the simulation, the person who checks out customers' groceries.
  * In terms of Producer/Consumer architectures, this is the consumer.
@@ -8,8 +10,19 @@ package edu.rit.cs.grocerystore;
  * @author Tiffany Lee
  */
 public class Clerk implements Runnable{
+    /** How often, in msec., an idle clerk that may retire checks whether it should */
+    public static final long RETIRE_CHECK_MSEC = 10;
+
     /** The checkout line */
     private final TSQueue<Cart> checkoutLine;
+    /** Where the times of serviced carts are recorded, or null */
+    private final WaitStatistics statistics;
+    /** Where the clerk counts itself busy and idle, or null */
+    private final QueueMetrics metrics;
+    /** Whether the clerk may be told to stop before the line closes */
+    private final boolean retirable;
+    /** Set when the clerk should stop after its current cart */
+    private volatile boolean retired;
 
     /**
      * Create a Clerk and connect it to its checkout line.
@@ -17,7 +30,57 @@ public class Clerk implements Runnable{
      * @param checkoutLine the queue from which the clerk gets carts to check out
      */
     public Clerk(TSQueue<Cart> checkoutLine){
+        this(checkoutLine, null);
+    }
+
+    /**
+     * Create a Clerk that records the times of every cart it checks out.
+     *
+     * @param checkoutLine the queue from which the clerk gets carts to check out
+     * @param statistics where to record each cart's times, or null for nowhere
+     */
+    public Clerk(TSQueue<Cart> checkoutLine, WaitStatistics statistics){
+        this(checkoutLine, statistics, null);
+    }
+
+    /**
+     * Create a Clerk that records the times of every cart it checks out,
+     * and counts itself busy in the live metrics while checking one out.
+     *
+     * @param checkoutLine the queue from which the clerk gets carts to check out
+     * @param statistics where to record each cart's times, or null for nowhere
+     * @param metrics the live metrics of the line, or null for none
+     */
+    public Clerk(TSQueue<Cart> checkoutLine, WaitStatistics statistics,
+                 QueueMetrics metrics){
+        this(checkoutLine, statistics, metrics, false);
+    }
+
+    /**
+     * Create a Clerk that records the times of every cart it checks out,
+     * counts itself busy in the live metrics while checking one out, and
+     * may be sent home before the line closes. Such a clerk waits for
+     * carts RETIRE_CHECK_MSEC at a time, so that it notices being told.
+     *
+     * @param checkoutLine the queue from which the clerk gets carts to check out
+     * @param statistics where to record each cart's times, or null for nowhere
+     * @param metrics the live metrics of the line, or null for none
+     * @param retirable whether {@link #retire()} may be called
+     */
+    public Clerk(TSQueue<Cart> checkoutLine, WaitStatistics statistics,
+                 QueueMetrics metrics, boolean retirable){
         this.checkoutLine = checkoutLine;
+        this.statistics = statistics;
+        this.metrics = metrics;
+        this.retirable = retirable;
+    }
+
+    /**
+     * Tell a retirable Clerk to stop once it has finished the cart it is
+     * checking out, if any. Carts still in line are left for other clerks.
+     */
+    public void retire(){
+        retired = true;
     }
 
     /**
@@ -26,22 +89,57 @@ public class Clerk implements Runnable{
      * simulate the checkout process. When the sleep time for a cart is
      * complete, it then "tells" the cart that it has finished servicing
      * the cart so that times can be saved. See TimedObject.servicingDone().
+     * The cart's times are then added to the statistics, if any.
      * The sleep time is the number of items in the cart, multiplied by
-     * Utilities.TIME_PER_CART_ITEM. The method exits when it removes the
-     * special cart Utilities.NO_MORE_CARTS, which is not included in any
-     * timing measurements.
+     * Utilities.TIME_PER_CART_ITEM. The method exits when the checkout
+     * line has been closed and there are no carts left in it, so any
+     * number of clerks can share the line, or when the clerk is retired.
      */
     public void run(){
-        Cart cartRemoved = checkoutLine.dequeue();
-        while(cartRemoved != Utilities.NO_MORE_CARTS){
+        Cart cartRemoved = nextCart();
+        while(cartRemoved != null){
+            if(metrics != null){
+                metrics.clerkBusy();
+            }
             try {
-                Utilities.println("Clerk got " + cartRemoved);
+                EventLog.clerkGot(cartRemoved.getCartSize(), System.nanoTime());
                 Thread.sleep(cartRemoved.getCartSize()*Utilities.TIME_PER_CART_ITEM);
             } catch (InterruptedException e) {
                 throw new RuntimeException(e);
+            } finally {
+                if(metrics != null){
+                    metrics.clerkIdle();
+                }
             }
             cartRemoved.servicingDone();
-            cartRemoved = checkoutLine.dequeue();
+            checkoutLine.serviced(cartRemoved);
+            if(statistics != null){
+                statistics.record(cartRemoved);
+            }
+            cartRemoved = nextCart();
+        }
+    }
+
+    /**
+     * Wait for the next cart to check out.
+     *
+     * @return the cart, or null if the line is closed and empty or the
+     * clerk has been retired
+     */
+    private Cart nextCart(){
+        if(!retirable){
+            return checkoutLine.dequeue();
+        }
+        while(!retired){
+            Cart cart = checkoutLine.poll(RETIRE_CHECK_MSEC, TimeUnit.MILLISECONDS);
+            if(cart != null){
+                return cart;
+            }
+            if(checkoutLine.isClosed()){
+                // Nothing can be added once closed, so one last look is enough.
+                return checkoutLine.poll(0, TimeUnit.MILLISECONDS);
+            }
         }
+        return null;
     }
 }
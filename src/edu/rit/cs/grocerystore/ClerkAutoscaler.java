@@ -0,0 +1,302 @@
+package edu.rit.cs.grocerystore;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts and retires clerks while a run goes on, to keep the checkout
+ * line near a target. Every {@value #SAMPLE_MSEC} msec. of real time
+ * it measures the line through a {@link QueueMetrics} view and compares
+ * the measure chosen by its {@link Policy} with the target.
+ * <p>
+ * To keep from starting and retiring clerks over and over, there is
+ * hysteresis both in size and in time: a clerk is added only after the
+ * measure has been over the target for {@value #UP_SAMPLES} samples in
+ * a row, and one is retired only after it has been under
+ * {@value #LOW_WATER} of the target for {@value #DOWN_SAMPLES} samples
+ * in a row, with fewer carts in line than clerks. The number of clerks
+ * stays between a minimum and a maximum.
+ * <p>
+ * Every decision is logged as it is made, with the measurement behind
+ * it, and the number of clerks over time is kept, so that policies can
+ * be compared on how fast they absorb a burst of customers and how many
+ * clerk-seconds they spend doing it.
+ *
+ * @author RIT CS
+ */
+public class ClerkAutoscaler {
+
+    /**
+     * What the autoscaler tries to keep near its target.
+     */
+    public enum Policy {
+        /**
+         * The 95th percentile queue wait of the carts taken in the last
+         * sample, in msec. Clerks are added one at a time.
+         */
+        WAIT( "Wait", 50, "p95 wait" ),
+        /**
+         * The number of carts in line per clerk. When it is over the
+         * target, enough clerks are added at once to bring it down to
+         * the target.
+         */
+        DEPTH( "Depth", 2, "carts per clerk" );
+
+        /** The name used on the command line */
+        private final String argName;
+        /** The target when none is given */
+        private final double defaultTarget;
+        /** What the measure is called in the log */
+        private final String measureName;
+
+        Policy( String argName, double defaultTarget, String measureName ) {
+            this.argName = argName;
+            this.defaultTarget = defaultTarget;
+            this.measureName = measureName;
+        }
+
+        /**
+         * Find the policy with the given command line name.
+         *
+         * @param argName the name used on the command line
+         * @return the matching policy
+         * @throws IllegalArgumentException if no policy has that name
+         */
+        public static Policy fromArg( String argName ) {
+            for ( Policy policy : values() ) {
+                if ( policy.argName.equals( argName ) ) {
+                    return policy;
+                }
+            }
+            throw new IllegalArgumentException( argName );
+        }
+
+        /** @return the target when none is given */
+        public double getDefaultTarget() { return defaultTarget; }
+
+        @Override
+        public String toString() { return argName; }
+    }
+
+    /** Msec. of real time between samples */
+    public static final long SAMPLE_MSEC = 100;
+
+    /** Samples in a row over the target before clerks are added */
+    public static final int UP_SAMPLES = 2;
+
+    /** Samples in a row under the low water mark before a clerk is retired */
+    public static final int DOWN_SAMPLES = 5;
+
+    /** The fraction of the target under which there are too many clerks */
+    public static final double LOW_WATER = 0.5;
+
+    /**
+     * The number of clerks became something else.
+     *
+     * @param time msec. since the autoscaler started
+     * @param clerks the number of clerks from then on
+     */
+    private record Change( double time, int clerks ) {}
+
+    /** What is kept near the target */
+    private final Policy policy;
+    /** The value of the measure to keep near */
+    private final double target;
+    /** The fewest clerks */
+    private final int minClerks;
+    /** The most clerks */
+    private final int maxClerks;
+    /** The line new clerks take carts from */
+    private final TSQueue< Cart > clerkLine;
+    /** Measures the line; nothing else takes its snapshots */
+    private final QueueMetrics sampler;
+    /** Where new clerks record their carts' times */
+    private final WaitStatistics statistics;
+    /** The live metrics new clerks count themselves busy in, or null */
+    private final QueueMetrics metrics;
+    /** Clerks working now, the newest last */
+    private final Deque< Clerk > active;
+    /** Every clerk thread started, retired or not */
+    private final List< Thread > threads;
+    /** The number of clerks over time */
+    private final List< Change > timeline;
+    /** Takes the samples, once started */
+    private ScheduledExecutorService timer;
+    /** When the autoscaler started, in System.nanoTime() */
+    private long startNanos;
+    /** When the autoscaler finished, in System.nanoTime() */
+    private long endNanos;
+    /** Samples in a row over the target */
+    private int above;
+    /** Samples in a row under the low water mark */
+    private int below;
+
+    /**
+     * Set up an autoscaler that has no clerks yet.
+     *
+     * @param policy what to keep near the target
+     * @param target the value to keep the measure near
+     * @param minClerks the fewest clerks, and how many to start with
+     * @param maxClerks the most clerks
+     * @param clerkLine the line clerks take carts from
+     * @param sampler a metered view of the line, used by nothing else,
+     *                through which customers and clerks both go
+     * @param statistics where clerks record their carts' times
+     * @param metrics the live metrics clerks count themselves busy in, or null
+     * @throws IllegalArgumentException if the limits or target make no sense
+     */
+    public ClerkAutoscaler( Policy policy, double target, int minClerks, int maxClerks,
+                            TSQueue< Cart > clerkLine, QueueMetrics sampler,
+                            WaitStatistics statistics, QueueMetrics metrics ) {
+        if ( minClerks < 1 || maxClerks < minClerks || target <= 0 ) {
+            throw new IllegalArgumentException(
+                    "clerks " + minClerks + " to " + maxClerks + ", target " + target );
+        }
+        this.policy = policy;
+        this.target = target;
+        this.minClerks = minClerks;
+        this.maxClerks = maxClerks;
+        this.clerkLine = clerkLine;
+        this.sampler = sampler;
+        this.statistics = statistics;
+        this.metrics = metrics;
+        this.active = new ArrayDeque<>();
+        this.threads = new ArrayList<>();
+        this.timeline = new ArrayList<>();
+    }
+
+    /**
+     * Start the minimum number of clerks and begin sampling.
+     */
+    public synchronized void start() {
+        startNanos = System.nanoTime();
+        for ( int i = 0; i < minClerks; ++i ) {
+            hire();
+        }
+        timeline.add( new Change( 0, active.size() ) );
+        timer = Executors.newSingleThreadScheduledExecutor( task -> {
+            Thread thread = new Thread( task, "ClerkAutoscaler" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        timer.scheduleAtFixedRate( this::sample, SAMPLE_MSEC, SAMPLE_MSEC,
+                                   TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Stop sampling, leaving the clerks there are now to empty the line,
+     * and wait for every clerk ever started to stop. Close the line first.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void finish() throws InterruptedException {
+        List< Thread > started;
+        synchronized ( this ) {
+            timer.shutdownNow();
+            started = new ArrayList<>( threads );
+        }
+        timer.awaitTermination( 1, TimeUnit.MINUTES );
+        for ( Thread thread : started ) {
+            thread.join();
+        }
+        synchronized ( this ) {
+            endNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Print when the number of clerks changed, the most there were, and
+     * the clerk-seconds spent. Call this after {@link #finish()}.
+     */
+    public synchronized void printTimeline() {
+        double end = ( endNanos - startNanos ) / 1e6;
+        StringBuilder line = new StringBuilder( "Clerks over time (msec.: clerks):" );
+        int peak = 0;
+        double clerkMsec = 0;
+        for ( int i = 0; i < timeline.size(); ++i ) {
+            Change change = timeline.get( i );
+            double until = i + 1 < timeline.size() ? timeline.get( i + 1 ).time() : end;
+            clerkMsec += change.clerks() * ( until - change.time() );
+            peak = Math.max( peak, change.clerks() );
+            line.append( String.format( "%s %.0f: %d", i == 0 ? "" : ",",
+                                        change.time(), change.clerks() ) );
+        }
+        Utilities.println( line.toString() );
+        Utilities.printf( "At most %d clerks; %.1f clerk-seconds in %.1f seconds, " +
+                          "%.2f clerks on average, %d changes." + System.lineSeparator(),
+                          peak, clerkMsec / 1000, end / 1000,
+                          clerkMsec / Math.max( 1, end ), timeline.size() - 1 );
+    }
+
+    /**
+     * Take a sample of the line, and start or retire clerks if it has been
+     * far enough from the target for long enough.
+     */
+    private synchronized void sample() {
+        sampler.snapshot();
+        long depth = sampler.getDepth();
+        int clerks = active.size();
+        double measure = policy == Policy.WAIT ? sampler.getWaitP95() :
+                         (double) depth / clerks;
+        if ( measure > target && clerks < maxClerks ) {
+            below = 0;
+            if ( ++above >= UP_SAMPLES ) {
+                int wanted = policy == Policy.DEPTH ?
+                             (int) Math.ceil( depth / target ) : clerks + 1;
+                resize( Math.min( maxClerks, Math.max( clerks + 1, wanted ) ),
+                        measure, depth );
+                above = 0;
+            }
+        }
+        else if ( measure < target * LOW_WATER && depth < clerks && clerks > minClerks ) {
+            above = 0;
+            if ( ++below >= DOWN_SAMPLES ) {
+                resize( clerks - 1, measure, depth );
+                below = 0;
+            }
+        }
+        else {
+            above = 0;
+            below = 0;
+        }
+    }
+
+    /**
+     * Start or retire clerks, newest first, and log the decision.
+     *
+     * @param clerks how many clerks there should be
+     * @param measure the measurement that led to the decision
+     * @param depth the number of carts in line
+     */
+    private void resize( int clerks, double measure, long depth ) {
+        double now = ( System.nanoTime() - startNanos ) / 1e6;
+        Utilities.printf( "[autoscale] %.0f msec.: %s %.2f %s target %.2f, depth %d: " +
+                          "clerks %d -> %d" + System.lineSeparator(),
+                          now, policy.measureName, measure,
+                          measure > target ? "over" : "under", target,
+                          depth, active.size(), clerks );
+        while ( active.size() < clerks ) {
+            hire();
+        }
+        while ( active.size() > clerks ) {
+            active.removeLast().retire();
+        }
+        timeline.add( new Change( now, clerks ) );
+    }
+
+    /**
+     * Start one more clerk.
+     */
+    private void hire() {
+        Clerk clerk = new Clerk( clerkLine, statistics, metrics, true );
+        Thread thread = new Thread( clerk, "Clerk " + ( threads.size() + 1 ) );
+        active.addLast( clerk );
+        threads.add( thread );
+        thread.start();
+    }
+}
@@ -0,0 +1,28 @@
+package edu.rit.cs.grocerystore;
+
+/**
+ * A source of the current time for {@link TimedObject}. The simulation
+ * normally runs against the monotonic system timer, but the
+ * discrete-event engine supplies a {@link VirtualClock} so that no real
+ * time has to pass, and tests can use a {@link ManualClock}.
+ * <p>
+ * Times are in nanoseconds. Only differences between two readings of
+ * the same clock are meaningful.
+ *
+ * @author RIT CS
+ */
+public interface Clock {
+
+    /**
+     * The monotonic system timer, as given by {@link System#nanoTime()}.
+     * Unlike the wall clock, it never jumps backwards.
+     */
+    Clock MONOTONIC = System::nanoTime;
+
+    /**
+     * What time is it?
+     *
+     * @return the current time in nanoseconds
+     */
+    long nanoTime();
+}
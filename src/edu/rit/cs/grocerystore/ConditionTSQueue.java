@@ -0,0 +1,443 @@
+package edu.rit.cs.grocerystore;
+
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * The common part of the locking TSQueue implementations. The subclass
+ * decides the extraction order by choosing the underlying collection;
+ * this class does the locking and waiting.
+ * <p>
+ * Instead of one monitor and notifyAll(), there is a lock with two
+ * conditions: consumers wait for "not empty" and producers of a bounded
+ * queue wait for "not full". Adding an element wakes exactly one
+ * waiting consumer, and removing one wakes exactly one waiting producer,
+ * and only if the queue is bounded. Closing the queue is the one time
+ * every waiting thread is woken.
+ * <p>
+ * To show how well that works, the queue counts how often a thread
+ * parks, how often a thread wakes up only to find it still has to
+ * wait (a spurious wake-up, including one where another thread got
+ * there first), and the total time threads spend parked.
+ *
+ * @param <E> the type of elements that will be in the queue
+ * @author RIT CS
+ */
+public abstract class ConditionTSQueue< E extends TimedObject >
+        implements TSQueue< E > {
+
+    /** The queue, or checkout line */
+    private final Queue< E > contents;
+    /** The most values the queue may hold */
+    private final int capacity;
+    /** Guards contents */
+    private final ReentrantLock lock;
+    /** Signaled when a value is added */
+    private final Condition notEmpty;
+    /** Signaled when a value is removed from a bounded queue */
+    private final Condition notFull;
+    /** The number of times a thread parked on either condition */
+    private final LongAdder parks;
+    /** The number of times a thread woke up and had to park again */
+    private final LongAdder spuriousWakeups;
+    /** The total time threads spent parked */
+    private final LongAdder parkedNanos;
+    /** Set, with the lock held, once no more values may be added */
+    private volatile boolean closed;
+
+    /**
+     * Set up an empty queue.
+     *
+     * @param contents the empty collection that holds the values; its
+     *                 remove() method decides the extraction order
+     * @param capacity the most values the queue may hold, or
+     *                 {@link TSQueue#UNBOUNDED}
+     */
+    protected ConditionTSQueue( Queue< E > contents, int capacity ) {
+        if ( capacity < 1 ) {
+            throw new IllegalArgumentException( "capacity: " + capacity );
+        }
+        this.contents = contents;
+        this.capacity = capacity;
+        this.lock = new ReentrantLock();
+        this.notEmpty = lock.newCondition();
+        this.notFull = lock.newCondition();
+        this.parks = new LongAdder();
+        this.spuriousWakeups = new LongAdder();
+        this.parkedNanos = new LongAdder();
+    }
+
+    /**
+     * Puts the value in the queue, and calls TimedObject.enterQueue() on
+     * the value. If the queue is full, waits until there is room.
+     * Wakes up one waiting consumer.
+     *
+     * @param value the value to be enqueued
+     * @return the size of the queue after the value was added
+     */
+    @Override
+    public int enqueue( E value ) {
+        lock.lock();
+        try {
+            boolean woken = false;
+            while ( contents.size() >= capacity && !closed ) {
+                woken = park( notFull, woken );
+            }
+            return add( value );
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Puts the value in the queue if there is room for it within the given
+     * time, and if so calls TimedObject.enterQueue() on the value.
+     *
+     * @param value the value to be enqueued
+     * @param timeout how long to wait for room; 0 means do not wait
+     * @param unit the unit of timeout
+     * @return the size of the queue after the value was added, or 0 if
+     * the queue stayed full
+     */
+    @Override
+    public int offer( E value, long timeout, TimeUnit unit ) {
+        lock.lock();
+        try {
+            long remaining = unit.toNanos( timeout );
+            boolean woken = false;
+            while ( contents.size() >= capacity && !closed ) {
+                if ( remaining <= 0 ) {
+                    return 0;
+                }
+                if ( woken ) {
+                    spuriousWakeups.increment();
+                }
+                remaining = parkNanos( notFull, remaining );
+                woken = true;
+            }
+            return add( value );
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Puts all the values in the queue and calls TimedObject.enterQueue()
+     * on each, taking the lock only once unless the queue fills up part
+     * way, in which case it waits for room for the rest.
+     *
+     * @param values the values to be enqueued
+     * @return the size of the queue after the values were added
+     */
+    @Override
+    public int enqueueAll( Collection< ? extends E > values ) {
+        lock.lock();
+        try {
+            for ( E value : values ) {
+                boolean woken = false;
+                while ( contents.size() >= capacity && !closed ) {
+                    woken = park( notFull, woken );
+                }
+                add( value );
+            }
+            return contents.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a value from the queue and calls TimedObject.exitQueue() on
+     * the value. This method blocks if the queue is empty and not closed.
+     *
+     * @return the next value, in the order decided by the subclass, or
+     * null if the queue is closed and empty
+     */
+    @Override
+    public E dequeue() {
+        lock.lock();
+        try {
+            boolean woken = false;
+            while ( contents.isEmpty() ) {
+                if ( closed ) {
+                    return null;
+                }
+                woken = park( notEmpty, woken );
+            }
+            return remove();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a value and calls TimedObject.exitQueue() on it, waiting up
+     * to the given time if the queue is empty.
+     *
+     * @param timeout how long to wait for a value
+     * @param unit the unit of timeout
+     * @return the value removed, or null if the time ran out or the queue
+     * is closed and empty
+     */
+    @Override
+    public E poll( long timeout, TimeUnit unit ) {
+        lock.lock();
+        try {
+            return awaitNotEmpty( unit.toNanos( timeout ) ) ? remove() : null;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes up to max values without blocking, and calls
+     * TimedObject.exitQueue() on each of them.
+     *
+     * @param sink where the removed values are added
+     * @param max the most values to remove
+     * @return the number of values removed
+     */
+    @Override
+    public int drainTo( Collection< ? super E > sink, int max ) {
+        lock.lock();
+        try {
+            int count = 0;
+            while ( count < max && !contents.isEmpty() ) {
+                sink.add( remove() );
+                ++count;
+            }
+            return count;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes up to max values and calls TimedObject.exitQueue() on each
+     * of them. If the queue is empty, waits up to the given time for a
+     * value to arrive.
+     *
+     * @param sink where the removed values are added
+     * @param max the most values to remove
+     * @param timeout how long to wait for the first value
+     * @param unit the unit of timeout
+     * @return the number of values removed, 0 if the time ran out
+     */
+    @Override
+    public int drainTo( Collection< ? super E > sink, int max,
+                        long timeout, TimeUnit unit ) {
+        if ( max <= 0 ) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            return awaitNotEmpty( unit.toNanos( timeout ) ) ? drainTo( sink, max ) : 0;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the value out of the queue wherever it is, and calls
+     * TimedObject.exitQueue() on it. This costs whatever the collection's
+     * remove(Object) costs: a search of the whole line for most of them.
+     * Wakes one waiting producer if the queue is bounded.
+     *
+     * @param value the value to be removed
+     * @return true if the value was in the queue
+     */
+    @Override
+    public boolean remove( E value ) {
+        lock.lock();
+        try {
+            if ( !contents.remove( value ) ) {
+                return false;
+            }
+            value.exitQueue();
+            if ( capacity != UNBOUNDED ) {
+                notFull.signal();
+            }
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the queue and wakes every waiting thread. Consumers take
+     * what is left and then get null; producers still waiting for room
+     * get an IllegalStateException.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isClosed() { return closed; }
+
+    /**
+     * How many times have threads parked waiting on this queue?
+     *
+     * @return the number of waits for "not empty" or "not full"
+     */
+    public long getParks() { return parks.sum(); }
+
+    /**
+     * How many times did a thread wake up only to find it had to wait again?
+     *
+     * @return the number of spurious or lost-race wake-ups
+     */
+    public long getSpuriousWakeups() { return spuriousWakeups.sum(); }
+
+    /**
+     * How long have threads spent parked on this queue?
+     *
+     * @return the total parked time of all threads, in msec.
+     */
+    public double getParkedTime() { return parkedNanos.sum() / 1_000_000.0; }
+
+    /**
+     * Do something to the contents with the lock held, for subclasses
+     * that offer more than the TSQueue methods.
+     *
+     * @param action what to do
+     * @param <T> the type of the result
+     * @return the action's result
+     */
+    protected < T > T withLock( Supplier< T > action ) {
+        lock.lock();
+        try {
+            return action.get();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add a value, with the lock held and room available, and wake one
+     * consumer.
+     *
+     * @param value the value
+     * @return the size of the queue after the value was added
+     * @throws IllegalStateException if the queue is closed
+     */
+    private int add( E value ) {
+        if ( closed ) {
+            throw new IllegalStateException( "queue is closed" );
+        }
+        contents.add( value );
+        value.enterQueue();
+        notEmpty.signal();
+        return contents.size();
+    }
+
+    /**
+     * Remove the next value, with the lock held and the queue not empty,
+     * and wake one producer if the queue is bounded.
+     *
+     * @return the value
+     */
+    private E remove() {
+        E removed = contents.remove();
+        removed.exitQueue();
+        if ( capacity != UNBOUNDED ) {
+            notFull.signal();
+        }
+        return removed;
+    }
+
+    /**
+     * With the lock held, wait up to a given time for the queue to have
+     * something in it.
+     *
+     * @param nanos how long to wait
+     * @return true if there is a value, false if the time ran out or the
+     * queue is closed and empty
+     */
+    private boolean awaitNotEmpty( long nanos ) {
+        long remaining = nanos;
+        boolean woken = false;
+        while ( contents.isEmpty() ) {
+            if ( remaining <= 0 || closed ) {
+                return false;
+            }
+            if ( woken ) {
+                spuriousWakeups.increment();
+            }
+            remaining = parkNanos( notEmpty, remaining );
+            woken = true;
+        }
+        return true;
+    }
+
+    /**
+     * Wait on a condition with no time limit, counting the wait and,
+     * if this is not the first wait for the same reason, the wake-up
+     * that led to it.
+     *
+     * @param condition what to wait for
+     * @param woken whether the caller has already waited once
+     * @return true, to be passed in as woken next time
+     */
+    private boolean park( Condition condition, boolean woken ) {
+        if ( woken ) {
+            spuriousWakeups.increment();
+        }
+        parks.increment();
+        long start = System.nanoTime();
+        try {
+            condition.await();
+        }
+        catch( InterruptedException e ) {
+            throw new RuntimeException( e );
+        }
+        finally {
+            parkedNanos.add( System.nanoTime() - start );
+        }
+        return true;
+    }
+
+    /**
+     * Wait on a condition for up to a given time, counting the wait.
+     *
+     * @param condition what to wait for
+     * @param nanos the longest time to wait
+     * @return the time left, as given by Condition.awaitNanos
+     */
+    private long parkNanos( Condition condition, long nanos ) {
+        parks.increment();
+        long start = System.nanoTime();
+        try {
+            return condition.awaitNanos( nanos );
+        }
+        catch( InterruptedException e ) {
+            throw new RuntimeException( e );
+        }
+        finally {
+            parkedNanos.add( System.nanoTime() - start );
+        }
+    }
+}
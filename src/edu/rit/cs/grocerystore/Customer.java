@@ -1,5 +1,7 @@
 package edu.rit.cs.grocerystore;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * In this simulation, a customer's only job is to wait for the
  * specified time, then enqueue its shopping cart in the checkout
@@ -11,10 +13,18 @@ package edu.rit.cs.grocerystore;
 public class Customer implements Runnable{
     /** Number of msec. to wait before enqueuing the cart at the checkout line */
     private final double delay;
+    /** The System.nanoTime() instant that the delay is measured from */
+    private final long epoch;
     /** The cart of groceries */
     private final Cart cart;
     /** The checkout line */
     private final TSQueue<Cart> queue;
+    /** Msec. to wait for room in a full line, or negative to wait forever */
+    private final double patience;
+    /** Where to count this customer if it does not get in line, or null */
+    private final WaitStatistics statistics;
+    /** Whether the cart went in the checkout line */
+    private boolean inLine;
     /** Customer ID */
     private final int id;
     /** Next customer's ID */
@@ -30,7 +40,42 @@ public class Customer implements Runnable{
      * @param queue the checkout line
      */
     public Customer(double delay,  Cart cart, TSQueue<Cart> queue){
+        this(delay, cart, queue, System.nanoTime());
+    }
+
+    /**
+     * Creates a customer object whose delay is measured from a given
+     * instant rather than from its creation. This keeps arrival times
+     * accurate when the customer does not start running right away,
+     * e.g. when it waits for a thread in a pool.
+     *
+     * @param delay how many msec. after epoch to enqueue the cart at the checkout line
+     * @param cart the cart of groceries (already filled with goodies)
+     * @param queue the checkout line
+     * @param epoch the System.nanoTime() value that the delay is measured from
+     */
+    public Customer(double delay, Cart cart, TSQueue<Cart> queue, long epoch){
+        this(delay, cart, queue, epoch, -1, null);
+    }
+
+    /**
+     * Creates a customer object that will only wait so long for room in
+     * a full checkout line before leaving.
+     *
+     * @param delay how many msec. after epoch to enqueue the cart at the checkout line
+     * @param cart the cart of groceries (already filled with goodies)
+     * @param queue the checkout line
+     * @param epoch the System.nanoTime() value that the delay is measured from
+     * @param patience how many msec. to wait for room in the line: 0 to
+     *                 leave at once if it is full, negative to wait forever
+     * @param statistics where to count the customer if it leaves, or null
+     */
+    public Customer(double delay, Cart cart, TSQueue<Cart> queue, long epoch,
+                    double patience, WaitStatistics statistics){
         this.delay = delay;
+        this.patience = patience;
+        this.statistics = statistics;
+        this.epoch = epoch;
         this.cart = cart;
         this.queue = queue;
         this.id = next_id;
@@ -40,21 +85,123 @@ public class Customer implements Runnable{
     /**
      * This method should be executed by a thread uniquely assigned
      * to this Customer. This is what the method does.
-     *      1. Sleep for the given delay time.
+     *      1. Sleep until the given delay time has passed since the epoch.
      *      2. Put the given Cart in the checkout queue.
-     *      3. Print a message announcing the above has been done.
+     *      3. Log a message announcing the above has been done.
      * The format of the message is:
      *      "Customer id with cart has entered the line, with N
      *      customers in front."
+     * If the customer has limited patience and the line stays full for
+     * that long, the customer leaves instead, is counted as rejected (no
+     * patience at all) or timed out, and says so.
      */
     public void run(){
+        awaitArrival();
+        arrive();
+    }
+
+    /**
+     * When should this customer get to the checkout line?
+     *
+     * @return the System.nanoTime() value at which the customer arrives
+     */
+    public long getArrivalNanos(){
+        return epoch + (long) (delay * 1_000_000);
+    }
+
+    /**
+     * Sleep until the given delay time has passed since the epoch.
+     */
+    public void awaitArrival(){
         try{
-            Thread.sleep((long) delay);
+            long remaining = getArrivalNanos() - System.nanoTime();
+            if(remaining > 0){
+                Thread.sleep(remaining / 1_000_000, (int) (remaining % 1_000_000));
+            }
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
-        int customersAhead = this.queue.enqueue(cart) - 1;
-        Utilities.println("Customer " + id + " with " + cart +
-                " has entered the line, with " + customersAhead + " customers in front.");
+    }
+
+    /**
+     * Put the Cart in the checkout queue now, waiting for room in a full
+     * line for as long as the customer's patience allows, and log what
+     * happened.
+     */
+    public void arrive(){
+        int size = patience < 0 ? this.queue.enqueue(cart) :
+                   this.queue.offer(cart, (long) (patience * 1_000_000), TimeUnit.NANOSECONDS);
+        finish(size);
+    }
+
+    /**
+     * Put the Cart in the checkout queue now if there is room for it,
+     * without waiting. A customer with no patience leaves at once if
+     * there is not.
+     *
+     * @return true if the customer is done, in line or gone; false if
+     * the line is full and the customer is willing to wait, in which
+     * case {@link #arrive()} should be called to do the waiting
+     */
+    public boolean tryArrive(){
+        int size = this.queue.offer(cart, 0, TimeUnit.NANOSECONDS);
+        if(size == 0 && patience != 0){
+            return false;
+        }
+        finish(size);
+        return true;
+    }
+
+    /**
+     * Did the cart go in the checkout line? Ask this on the thread that
+     * called {@link #arrive()} or {@link #tryArrive()}.
+     *
+     * @return true if the cart went in line, false if the customer left
+     * or has not arrived yet
+     */
+    public boolean gotInLine(){
+        return inLine;
+    }
+
+    /**
+     * Give up waiting in line: take the Cart back out of the checkout
+     * queue, if a clerk has not taken it yet, and count and log the
+     * customer leaving. The queue must support TSQueue.remove().
+     *
+     * @return true if the customer left, false if the cart was already
+     * taken by a clerk
+     */
+    public boolean leaveLine(){
+        if(!this.queue.remove(cart)){
+            return false;
+        }
+        if(statistics != null){
+            statistics.recordReneged();
+        }
+        EventLog.customerReneged(id, cart.getCartSize(), System.nanoTime());
+        return true;
+    }
+
+    /**
+     * Count and log the customer having got in line, or having left.
+     *
+     * @param size what the checkout queue returned, 0 if the cart did
+     *             not get in
+     */
+    private void finish(int size){
+        inLine = size > 0;
+        if(size == 0){
+            if(statistics != null){
+                if(patience == 0){
+                    statistics.recordRejected();
+                } else{
+                    statistics.recordTimedOut();
+                }
+            }
+            EventLog.customerLeft(id, cart.getCartSize(), System.nanoTime());
+            return;
+        }
+        int customersAhead = size - 1;
+        EventLog.customerEntered(id, cart.getCartSize(), customersAhead, System.nanoTime());
     }
 }
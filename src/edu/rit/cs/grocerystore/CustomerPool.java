@@ -1,7 +1,12 @@
 package edu.rit.cs.grocerystore;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class is responsible for creating Customers and
@@ -10,16 +15,71 @@ import java.util.Random;
  * @author Tiffany Lee
  */
 public class CustomerPool {
+
+    /**
+     * How the Customers are run.
+     */
+    public enum Mode {
+        /** One new platform thread for every Customer */
+        THREADS( "Threads" ),
+        /** A fixed-size pool of platform threads shared by all Customers */
+        POOLED( "Pooled" ),
+        /** One virtual thread for every Customer (needs Java 21 or later) */
+        VIRTUAL( "Virtual" ),
+        /** One thread that lets every Customer in at its time from a timing wheel */
+        WHEEL( "Wheel" );
+
+        /** The name used on the command line */
+        private final String argName;
+
+        Mode( String argName ) { this.argName = argName; }
+
+        /**
+         * Find the mode with the given command line name.
+         *
+         * @param argName the name used on the command line
+         * @return the matching mode
+         * @throws IllegalArgumentException if no mode has that name
+         */
+        public static Mode fromArg( String argName ) {
+            for ( Mode mode : values() ) {
+                if ( mode.argName.equals( argName ) ) {
+                    return mode;
+                }
+            }
+            throw new IllegalArgumentException( argName );
+        }
+
+        @Override
+        public String toString() { return argName; }
+    }
+
+    /**
+     * In the executor modes, the most Customers that may be submitted
+     * but not yet finished. Customers arrive in order, so only the next
+     * few are worth having in memory; the rest are created once earlier
+     * ones have entered the line.
+     */
+    public static final int MAX_WAITING_CUSTOMERS = 10_000;
+
     /** The checkout line */
     private final TSQueue<Cart> checkoutLine;
-    /** The number of customers in line */
-    private final int numCustomers;
-    /** The mean number of groceries in each Cart */
-    private final int avgLoad;
-    /** The mean amount of time between Customer arrivals at checkout */
-    private final double avgDelay;
-    /** Random number generator */
-    private final Random random;
+    /** When each Customer arrives, and with how many groceries */
+    private final ArrivalSource arrivals;
+    /** How the Customers are run */
+    private final Mode mode;
+    /** Msec. each Customer waits for room in a full line, or negative for ever */
+    private final double patience;
+    /** Msec. each Customer waits in line before leaving it, or negative for ever */
+    private final double renege;
+    /** Where Customers that leave a full line are counted */
+    private final WaitStatistics statistics;
+    /** How late each Customer got to the line, compared with its arrival time */
+    private final LatencyHistogram arrivalSkew;
+    /** Takes Customers out of line when their time is up, or null */
+    private ArrivalDispatcher reneging;
+    /** The numbers of Customers not to create */
+    private Set<Long> skipped = Set.of();
 
     /**
      * Store all the parameter values for later use.
@@ -32,51 +92,276 @@ public class CustomerPool {
      */
     public CustomerPool(TSQueue<Cart> checkoutLine, int numCustomers,
                         int avgLoad, int avgDelay){
+        this(checkoutLine, numCustomers, avgLoad, avgDelay, Mode.THREADS, -1, null);
+    }
+
+    /**
+     * Store all the parameter values for later use, including how the
+     * Customers should be run.
+     * Also, initialize a Random number generator.
+     *
+     * @param checkoutLine the provided queue of Carts
+     * @param numCustomers the number of customers to create
+     * @param avgLoad the mean number of groceries in each Cart
+     * @param avgDelay the mean amount of time between Customer arrivals at checkout
+     * @param mode how the Customers are run
+     * @param patience msec. each Customer waits for room in a full line:
+     *                 0 to leave at once, negative to wait forever
+     * @param statistics where Customers that leave a full line are
+     *                   counted, or null
+     */
+    public CustomerPool(TSQueue<Cart> checkoutLine, int numCustomers,
+                        int avgLoad, int avgDelay, Mode mode,
+                        double patience, WaitStatistics statistics){
+        this(checkoutLine, new GeneratedArrivals(numCustomers, new SineDistribution(avgLoad),
+                                                  new SineDistribution(avgDelay),
+                                                  new SplittableRandom()),
+             mode, patience, statistics);
+    }
+
+    /**
+     * Store all the parameter values for later use, taking the Customers
+     * from the given source, for example a seeded generator or a trace.
+     *
+     * @param checkoutLine the provided queue of Carts
+     * @param arrivals when each Customer arrives, and with how many groceries
+     * @param mode how the Customers are run
+     * @param patience msec. each Customer waits for room in a full line:
+     *                 0 to leave at once, negative to wait forever
+     * @param statistics where Customers that leave a full line are
+     *                   counted, or null
+     */
+    public CustomerPool(TSQueue<Cart> checkoutLine, ArrivalSource arrivals,
+                        Mode mode, double patience, WaitStatistics statistics){
+        this(checkoutLine, arrivals, mode, patience, -1, statistics);
+    }
+
+    /**
+     * Store all the parameter values for later use, taking the Customers
+     * from the given source, with Customers who only wait so long in line
+     * before leaving it.
+     *
+     * @param checkoutLine the provided queue of Carts; it must support
+     *                     TSQueue.remove() if renege is not negative
+     * @param arrivals when each Customer arrives, and with how many groceries
+     * @param mode how the Customers are run
+     * @param patience msec. each Customer waits for room in a full line:
+     *                 0 to leave at once, negative to wait forever
+     * @param renege msec. each Customer waits in line before leaving it,
+     *               or negative to wait until served
+     * @param statistics where Customers that leave are counted, or null
+     */
+    public CustomerPool(TSQueue<Cart> checkoutLine, ArrivalSource arrivals,
+                        Mode mode, double patience, double renege,
+                        WaitStatistics statistics){
+        this.mode = mode;
+        this.patience = patience;
+        this.renege = renege;
+        this.statistics = statistics;
         this.checkoutLine = checkoutLine;
-        this.numCustomers = numCustomers;
-        this.avgLoad = avgLoad;
-        this.avgDelay = avgDelay;
-        this.random = new Random();
+        this.arrivals = arrivals;
+        this.arrivalSkew = new LatencyHistogram();
     }
 
     /**
-     * Create the given number of customers, start them all up on
-     * separate threads, and wait for them to finish. In the process,
-     * a Cart will be created for each Customer. Each cart has a
-     * random number of groceries placed in it
-     * (avgLoad from constructor is the mean).
-     * Each customer is told to wait a random amount of time more than
-     * the previous customer. The additional time to wait is a random value
-     * based on the avgDelay from the constructor. Note that the time for
-     * each customer to wait is measured from roughly the start of this
-     * method. Therefore, times assigned to each successive customer go
-     * steadily upwards.
+     * Leave out some Customers, for example those that a journaled line
+     * recovered from a run that stopped part way. The others keep the
+     * numbers and arrival times they would have had.
+     *
+     * @param numbers the numbers of the Customers to leave out, counting from 0
+     */
+    public void skip(Set<Long> numbers){
+        this.skipped = numbers;
+    }
+
+    /**
+     * How late did Customers get to the line? Complete once
+     * simulateCustomers() has returned.
      *
-     * @return the list of Cart objects made for all the Customers. These
-     * get returned because they have timing information in them
+     * @return the measured minus the intended arrival time of every Customer
      */
-    public List<Cart> simulateCustomers(){
-        List<Cart> cartList = new ArrayList<>();
+    public LatencyHistogram getArrivalSkew(){
+        return arrivalSkew;
+    }
+
+    /**
+     * Create a customer for each arrival, start them all up on
+     * separate threads, and wait for them to finish. In the process,
+     * a Cart will be created for each Customer, with the number of
+     * groceries given by the arrivals.
+     * Each customer is told to wait until its arrival time, which is
+     * measured from roughly the start of this method. Times for
+     * successive customers go steadily upwards.
+     * In the executor modes, Customers are handed to the executor as they
+     * are created, and no more than MAX_WAITING_CUSTOMERS are outstanding
+     * at once. Carts are not kept here; their times are recorded by the
+     * Clerk when each one has been checked out.
+     * In WHEEL mode no Customer has a thread of its own: one dispatcher
+     * thread lets each in at its time, and only a Customer who finds a
+     * bounded line full and is willing to wait gets a thread to wait on.
+     * In every mode, how late each Customer got to the line is recorded.
+     * Customers who only wait so long in line are taken out of it by a
+     * timer thread, which keeps running until {@link #finish()}.
+     */
+    public void simulateCustomers(){
         List<Thread> customerList = new ArrayList<>();
-        double prevDelay = 0;
-        for(int i = 0; i < numCustomers; i++){
-            int load = (int) Utilities.sinePDFDelay(random, avgLoad);
-            Cart cart = new Cart(load);
-            cartList.add(cart);
-
-            prevDelay = Utilities.sinePDFDelay(random, avgDelay) + prevDelay;
-            Customer customer = new Customer(prevDelay, cart, checkoutLine);
-            Thread customerThread = new Thread(customer);
-            customerThread.start();
-            customerList.add(customerThread);
+        ExecutorService executor = mode == Mode.THREADS || mode == Mode.WHEEL ?
+                                   null : newExecutor(mode);
+        Semaphore waiting = new Semaphore(MAX_WAITING_CUSTOMERS);
+        long epoch = System.nanoTime();
+        ArrivalDispatcher dispatcher = mode == Mode.WHEEL ? new ArrivalDispatcher(epoch) : null;
+        int numCreated = 0;
+        if(renege >= 0){
+            reneging = new ArrivalDispatcher(epoch);
+            reneging.start();
         }
-        for(Thread customer : customerList){
-            try {
+        try {
+            if(dispatcher != null){
+                dispatcher.start();
+            }
+            while(arrivals.next()){
+                int number = numCreated++;
+                if(skipped.contains((long) number)){
+                    continue;
+                }
+                Cart cart = new Cart(arrivals.getCartSize(), number);
+                Customer customer = new Customer(arrivals.getArrivalTime(), cart,
+                                                 checkoutLine, epoch, patience, statistics);
+                if(dispatcher != null){
+                    waiting.acquire();
+                    dispatcher.schedule(customer.getArrivalNanos(), () -> {
+                        try {
+                            arriveWithoutWaiting(customer, customerList);
+                        } finally {
+                            waiting.release();
+                        }
+                    });
+                }
+                else if(executor == null){
+                    Thread customerThread = new Thread(() -> {
+                        customer.awaitArrival();
+                        arrive(customer);
+                    });
+                    customerThread.start();
+                    customerList.add(customerThread);
+                }
+                else{
+                    waiting.acquire();
+                    executor.execute(() -> {
+                        try {
+                            customer.awaitArrival();
+                            arrive(customer);
+                        } finally {
+                            waiting.release();
+                        }
+                    });
+                }
+            }
+            if(dispatcher != null){
+                // Customers waiting for room are only known once all have arrived.
+                dispatcher.finish();
+            }
+            for(Thread customer : customerList){
                 customer.join();
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
             }
+            if(executor != null){
+                executor.shutdown();
+                while(!executor.awaitTermination(1, TimeUnit.MINUTES)){
+                    Utilities.println("Still waiting for customers to arrive...");
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Stop taking Customers out of line. Call this once the clerks have
+     * emptied the line; until then, Customers who have waited too long
+     * keep leaving it.
+     *
+     * @throws InterruptedException if interrupted while stopping
+     */
+    public void finish() throws InterruptedException {
+        if(reneging != null){
+            reneging.stop();
+            reneging = null;
+        }
+    }
+
+    /**
+     * Let a Customer into the line now that its arrival time has come,
+     * recording how late that is.
+     *
+     * @param customer the Customer
+     */
+    private void arrive(Customer customer){
+        arrivalSkew.record(System.nanoTime() - customer.getArrivalNanos());
+        customer.arrive();
+        startWaiting(customer);
+    }
+
+    /**
+     * If Customers only wait so long in line, and this one got in,
+     * arrange for it to leave when its time is up.
+     *
+     * @param customer the Customer, on the thread that let it in
+     */
+    private void startWaiting(Customer customer){
+        if(reneging != null && customer.gotInLine()){
+            reneging.schedule(System.nanoTime() + (long) (renege * 1_000_000),
+                              customer::leaveLine);
+        }
+    }
+
+    /**
+     * On the dispatcher thread, let a Customer into the line now that its
+     * arrival time has come, recording how late that is. If the line is
+     * full and the Customer will wait for room, the waiting is done on a
+     * new thread so that later Customers are not held up.
+     *
+     * @param customer the Customer
+     * @param waitingForRoom where the new thread, if any, is added
+     */
+    private void arriveWithoutWaiting(Customer customer, List<Thread> waitingForRoom){
+        arrivalSkew.record(System.nanoTime() - customer.getArrivalNanos());
+        if(customer.tryArrive()){
+            startWaiting(customer);
+        }
+        else{
+            Thread customerThread = new Thread(() -> {
+                customer.arrive();
+                startWaiting(customer);
+            });
+            customerThread.start();
+            waitingForRoom.add(customerThread);
+        }
+    }
+
+    /**
+     * Make the executor that runs Customers in one of the executor modes.
+     * The pool in POOLED mode has one thread per available processor;
+     * that is enough because Customers are submitted in arrival order,
+     * so a pool thread is never stuck sleeping past a later arrival.
+     *
+     * @param mode POOLED or VIRTUAL
+     * @return a new executor
+     * @throws IllegalArgumentException if virtual threads are not
+     * available in this JVM
+     */
+    private static ExecutorService newExecutor(Mode mode){
+        if(mode == Mode.POOLED){
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+        // Looked up reflectively so the lab still builds on Java 16/17.
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException(
+                    mode + " customers need Java 21 or later, this is " +
+                    Runtime.version());
         }
-        return cartList;
     }
 }
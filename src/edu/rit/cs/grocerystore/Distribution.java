@@ -0,0 +1,81 @@
+package edu.rit.cs.grocerystore;
+
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * A probability distribution of non-negative numbers, such as cart sizes
+ * or times between customer arrivals. Samples are drawn from a random
+ * number generator owned by the caller, so a distribution has no state
+ * that changes and may be shared by any number of threads.
+ * <p>
+ * Every distribution is scaled to a given mean, so the same shape can be
+ * used with any average load or arrival rate.
+ *
+ * @author RIT CS
+ */
+public interface Distribution {
+
+    /** Command line name of {@link SineDistribution} */
+    public static final String SINE = "Sine";
+    /** Command line name of {@link ExponentialDistribution} */
+    public static final String EXPONENTIAL = "Exponential";
+    /** Command line name of {@link ErlangDistribution} */
+    public static final String ERLANG = "Erlang";
+    /** Command line name of {@link LogNormalDistribution} */
+    public static final String LOG_NORMAL = "LogNormal";
+    /** Command line name of {@link EmpiricalDistribution} */
+    public static final String EMPIRICAL = "Empirical";
+
+    /**
+     * Draw a number from this distribution.
+     *
+     * @param random the random number generator to use
+     * @return a non-negative number
+     */
+    double sample( SplittableRandom random );
+
+    /**
+     * What do the samples average out to?
+     *
+     * @return the mean of the distribution
+     */
+    double getMean();
+
+    /**
+     * Make the distribution named on the command line. The name may be
+     * followed by a colon and a parameter: Sine, Exponential, Erlang:k
+     * (k phases, default 2), LogNormal:sigma (the standard deviation of
+     * the logarithm, default 0.5), or Empirical:file (a histogram file).
+     *
+     * @param spec the name and parameter
+     * @param mean the mean the distribution is scaled to
+     * @return the distribution
+     * @throws IllegalArgumentException if the name or parameter is not valid
+     * @throws java.io.UncheckedIOException if a histogram cannot be read
+     */
+    public static Distribution fromArg( String spec, double mean ) {
+        int colon = spec.indexOf( ':' );
+        String name = colon < 0 ? spec : spec.substring( 0, colon );
+        String param = colon < 0 ? null : spec.substring( colon + 1 );
+        switch ( name ) {
+            case SINE:
+                return new SineDistribution( mean );
+            case EXPONENTIAL:
+                return new ExponentialDistribution( mean );
+            case ERLANG:
+                return new ErlangDistribution(
+                        param == null ? 2 : Integer.parseInt( param ), mean );
+            case LOG_NORMAL:
+                return new LogNormalDistribution(
+                        mean, param == null ? 0.5 : Double.parseDouble( param ) );
+            case EMPIRICAL:
+                if ( param == null ) {
+                    throw new IllegalArgumentException( EMPIRICAL + " needs a file" );
+                }
+                return EmpiricalDistribution.read( Path.of( param ), mean );
+            default:
+                throw new IllegalArgumentException( spec );
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package edu.rit.cs.grocerystore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * A distribution taken from a histogram of real traffic, such as the cart
+ * sizes or arrival gaps seen in a store. Each sample is one of the
+ * histogram's values, chosen with probability proportional to its weight.
+ * The values are scaled so that the distribution has the mean asked for,
+ * which keeps the shape of the histogram but not its units.
+ * <p>
+ * Values are chosen by Vose's alias method: one random column of a
+ * precomputed table, then one comparison to pick either the column's
+ * value or its alias, however many values there are.
+ *
+ * @author RIT CS
+ */
+public class EmpiricalDistribution implements Distribution {
+
+    /** The values, scaled to the mean */
+    private final double[] values;
+    /** For each column, the probability of taking its own value */
+    private final double[] keep;
+    /** For each column, the value taken otherwise */
+    private final int[] alias;
+    /** The mean */
+    private final double mean;
+
+    /**
+     * Make a distribution from a histogram.
+     *
+     * @param values the values, none negative
+     * @param weights how often each value occurs, none negative and not
+     *                all 0
+     * @param mean the mean the values are scaled to
+     * @throws IllegalArgumentException if the histogram is not valid
+     */
+    public EmpiricalDistribution( double[] values, double[] weights, double mean ) {
+        int n = values.length;
+        if ( n == 0 || weights.length != n ) {
+            throw new IllegalArgumentException( "bad histogram" );
+        }
+        double totalWeight = 0;
+        double weightedSum = 0;
+        for ( int i = 0; i < n; ++i ) {
+            if ( values[ i ] < 0 || weights[ i ] < 0 ) {
+                throw new IllegalArgumentException( "negative value or weight in histogram" );
+            }
+            totalWeight += weights[ i ];
+            weightedSum += weights[ i ] * values[ i ];
+        }
+        if ( totalWeight == 0 ) {
+            throw new IllegalArgumentException( "histogram has no weight" );
+        }
+        double scale = weightedSum == 0 ? 0 : mean * totalWeight / weightedSum;
+        this.values = new double[ n ];
+        for ( int i = 0; i < n; ++i ) {
+            this.values[ i ] = values[ i ] * scale;
+        }
+        this.keep = new double[ n ];
+        this.alias = new int[ n ];
+        this.mean = mean;
+
+        /*
+         * Scale the weights so they average 1, then pair every column
+         * under 1 with one over 1, which gives it the rest of its height.
+         */
+        double[] height = new double[ n ];
+        int[] small = new int[ n ];
+        int[] large = new int[ n ];
+        int numSmall = 0;
+        int numLarge = 0;
+        for ( int i = 0; i < n; ++i ) {
+            height[ i ] = weights[ i ] * n / totalWeight;
+            if ( height[ i ] < 1 ) {
+                small[ numSmall++ ] = i;
+            }
+            else {
+                large[ numLarge++ ] = i;
+            }
+        }
+        while ( numSmall > 0 && numLarge > 0 ) {
+            int less = small[ --numSmall ];
+            int more = large[ --numLarge ];
+            keep[ less ] = height[ less ];
+            alias[ less ] = more;
+            height[ more ] -= 1 - height[ less ];
+            if ( height[ more ] < 1 ) {
+                small[ numSmall++ ] = more;
+            }
+            else {
+                large[ numLarge++ ] = more;
+            }
+        }
+        // Whatever is left is 1, give or take rounding.
+        while ( numLarge > 0 ) {
+            keep[ large[ --numLarge ] ] = 1;
+        }
+        while ( numSmall > 0 ) {
+            keep[ small[ --numSmall ] ] = 1;
+        }
+    }
+
+    /**
+     * Read a histogram file and make a distribution from it. Each line
+     * has a value and its weight, separated by white space; blank lines
+     * and lines starting with # are skipped.
+     *
+     * @param file the histogram
+     * @param mean the mean the values are scaled to
+     * @return the distribution
+     * @throws IllegalArgumentException if a line is not well formed
+     * @throws UncheckedIOException if the file cannot be read
+     */
+    public static EmpiricalDistribution read( Path file, double mean ) {
+        List< String > lines;
+        try {
+            lines = Files.readAllLines( file );
+        }
+        catch( IOException e ) {
+            throw new UncheckedIOException( file.toString(), e );
+        }
+        List< double[] > bins = new ArrayList<>();
+        for ( String line : lines ) {
+            line = line.strip();
+            if ( line.isEmpty() || line.startsWith( "#" ) ) {
+                continue;
+            }
+            String[] fields = line.split( "\\s+" );
+            if ( fields.length != 2 ) {
+                throw new IllegalArgumentException( file + ": " + line );
+            }
+            bins.add( new double[]{ Double.parseDouble( fields[ 0 ] ),
+                                    Double.parseDouble( fields[ 1 ] ) } );
+        }
+        double[] values = new double[ bins.size() ];
+        double[] weights = new double[ bins.size() ];
+        for ( int i = 0; i < bins.size(); ++i ) {
+            values[ i ] = bins.get( i )[ 0 ];
+            weights[ i ] = bins.get( i )[ 1 ];
+        }
+        return new EmpiricalDistribution( values, weights, mean );
+    }
+
+    @Override
+    public double sample( SplittableRandom random ) {
+        int column = random.nextInt( values.length );
+        return values[ random.nextDouble() < keep[ column ] ? column : alias[ column ] ];
+    }
+
+    @Override
+    public double getMean() { return mean; }
+
+    @Override
+    public String toString() { return EMPIRICAL; }
+}
@@ -0,0 +1,70 @@
+package edu.rit.cs.grocerystore;
+
+import java.util.SplittableRandom;
+
+/**
+ * The Erlang distribution: the sum of k exponential phases with equal
+ * means. It is less variable than the exponential distribution the more
+ * phases it has, which suits service times made of several steps.
+ * <p>
+ * A sample is drawn as a gamma variate by Marsaglia and Tsang's method,
+ * which takes about one normal and one uniform number however many
+ * phases there are, and almost never a logarithm. That is faster even
+ * for 2 phases than summing exponential phases, or taking the logarithm
+ * of a product of uniform numbers, which underflows for many phases.
+ *
+ * @author RIT CS
+ */
+public class ErlangDistribution implements Distribution {
+
+    /** The number of phases */
+    private final int phases;
+    /** The mean */
+    private final double mean;
+    /** Marsaglia and Tsang's d: phases less one third */
+    private final double d;
+    /** Marsaglia and Tsang's c: 1/sqrt(9d) */
+    private final double c;
+
+    /**
+     * Make an Erlang distribution.
+     *
+     * @param phases the number of phases, at least 1
+     * @param mean the mean of the whole distribution
+     * @throws IllegalArgumentException if phases is less than 1
+     */
+    public ErlangDistribution( int phases, double mean ) {
+        if ( phases < 1 ) {
+            throw new IllegalArgumentException( ERLANG + ':' + phases );
+        }
+        this.phases = phases;
+        this.mean = mean;
+        this.d = phases - 1.0 / 3.0;
+        this.c = 1.0 / Math.sqrt( 9.0 * d );
+    }
+
+    @Override
+    public double sample( SplittableRandom random ) {
+        while ( true ) {
+            double x = random.nextGaussian();
+            double v = 1.0 + c * x;
+            if ( v <= 0 ) {
+                continue;
+            }
+            v = v * v * v;
+            double u = 1.0 - random.nextDouble();
+            double xx = x * x;
+            // The squeeze accepts nearly every sample without a logarithm.
+            if ( u < 1.0 - 0.0331 * xx * xx ||
+                 Math.log( u ) < 0.5 * xx + d * ( 1.0 - v + Math.log( v ) ) ) {
+                return mean / phases * d * v;
+            }
+        }
+    }
+
+    @Override
+    public double getMean() { return mean; }
+
+    @Override
+    public String toString() { return ERLANG + ':' + phases; }
+}
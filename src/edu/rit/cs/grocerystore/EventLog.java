@@ -0,0 +1,354 @@
+package edu.rit.cs.grocerystore;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The log of what customers and clerks do, written to standard output
+ * by a background thread so that the simulation itself neither builds
+ * strings nor waits for the console.
+ * <p>
+ * Events are kept as primitive fields in a fixed-size ring buffer. A
+ * thread that logs an event claims the next slot with one atomic
+ * increment, fills the slot in, and publishes it; nothing is allocated.
+ * The single writer thread turns published events into text, in the
+ * order they were claimed, using a byte buffer of its own. If the
+ * buffer of events is full, logging threads wait for the writer.
+ * <p>
+ * Call {@link #flush()} before printing anything else that must come
+ * after the events already logged.
+ *
+ * @author RIT CS
+ */
+public final class EventLog {
+
+    /**
+     * How much is logged.
+     */
+    public enum Verbosity {
+        /** Nothing */
+        OFF( "Off" ),
+        /** Every customer arriving or leaving and every cart a clerk takes */
+        ON( "On" ),
+        /** As for ON, with each event's time in msec. from the first one */
+        TIMED( "Timed" );
+
+        /** The name used on the command line */
+        private final String argName;
+
+        Verbosity( String argName ) { this.argName = argName; }
+
+        /**
+         * Find the verbosity with the given command line name.
+         *
+         * @param argName the name used on the command line
+         * @return the matching verbosity
+         * @throws IllegalArgumentException if no verbosity has that name
+         */
+        public static Verbosity fromArg( String argName ) {
+            for ( Verbosity verbosity : values() ) {
+                if ( verbosity.argName.equals( argName ) ) {
+                    return verbosity;
+                }
+            }
+            throw new IllegalArgumentException( argName );
+        }
+
+        @Override
+        public String toString() { return argName; }
+    }
+
+    /** The number of events the ring buffer holds (a power of 2) */
+    private static final int CAPACITY = 1 << 14;
+
+    /** For turning a sequence number into a slot number */
+    private static final int MASK = CAPACITY - 1;
+
+    /** How long the writer sleeps when there is nothing to write */
+    private static final long IDLE_NANOS = 1_000_000;
+
+    /** Kind of event: a customer put a cart in line */
+    private static final byte ENTERED = 0;
+    /** Kind of event: a customer left because the line was full */
+    private static final byte LEFT = 1;
+    /** Kind of event: a clerk took a cart from the line */
+    private static final byte CLERK_GOT = 2;
+    /** Kind of event: a customer gave up waiting in line */
+    private static final byte RENEGED = 3;
+
+    /** Start of a customer event */
+    private static final byte[] CUSTOMER = ascii( "Customer " );
+    /** Between the customer's number and the cart size */
+    private static final byte[] WITH_CART = ascii( " with Cart(" );
+    /** Between the cart size and the customers in front */
+    private static final byte[] ENTERED_WITH = ascii( ") has entered the line, with " );
+    /** End of an ENTERED event */
+    private static final byte[] IN_FRONT = ascii( " customers in front." );
+    /** End of a LEFT event */
+    private static final byte[] LEFT_FULL = ascii( ") left because the line was full." );
+    /** End of a RENEGED event */
+    private static final byte[] LEFT_LINE = ascii( ") left the line after waiting too long." );
+    /** Start of a CLERK_GOT event */
+    private static final byte[] CLERK_GOT_CART = ascii( "Clerk got Cart(" );
+    /** End of a CLERK_GOT event */
+    private static final byte[] CLOSE = ascii( ")" );
+    /** End of every event */
+    private static final byte[] NEWLINE = ascii( System.lineSeparator() );
+
+    /** What kind of event is in each slot */
+    private static final byte[] kinds = new byte[ CAPACITY ];
+    /** The customer's number, for each slot */
+    private static final int[] customers = new int[ CAPACITY ];
+    /** The number of groceries in the cart, for each slot */
+    private static final int[] cartSizes = new int[ CAPACITY ];
+    /** The number of customers in front, for each slot */
+    private static final int[] positions = new int[ CAPACITY ];
+    /** When the event happened, in nanoseconds, for each slot */
+    private static final long[] times = new long[ CAPACITY ];
+    /** For each slot, one more than the sequence number of the event in it */
+    private static final AtomicLongArray published = new AtomicLongArray( CAPACITY );
+    /** The sequence number the next event will get */
+    private static final AtomicLong tail = new AtomicLong();
+    /** The sequence number of the next event the writer will read */
+    private static volatile long head = 0;
+    /** Every event before this sequence number is on standard output */
+    private static volatile long written = 0;
+    /** How much is logged */
+    private static volatile Verbosity verbosity = Verbosity.ON;
+    /** The thread that writes the events */
+    private static final Thread writer;
+
+    static {
+        writer = new Thread( EventLog::write, "EventLog" );
+        writer.setDaemon( true );
+        writer.start();
+    }
+
+    /** There are only static methods */
+    private EventLog() {}
+
+    /**
+     * Choose how much to log from now on.
+     *
+     * @param level the new verbosity
+     */
+    public static void setVerbosity( Verbosity level ) { verbosity = level; }
+
+    /** @return how much is being logged */
+    public static Verbosity getVerbosity() { return verbosity; }
+
+    /**
+     * Log that a customer put a cart in line.
+     *
+     * @param customer the customer's number
+     * @param cartSize the number of groceries in the cart
+     * @param ahead the number of customers in front
+     * @param nanos when it happened
+     */
+    public static void customerEntered( int customer, int cartSize, int ahead, long nanos ) {
+        record( ENTERED, customer, cartSize, ahead, nanos );
+    }
+
+    /**
+     * Log that a customer left because the line was full.
+     *
+     * @param customer the customer's number
+     * @param cartSize the number of groceries in the cart
+     * @param nanos when it happened
+     */
+    public static void customerLeft( int customer, int cartSize, long nanos ) {
+        record( LEFT, customer, cartSize, 0, nanos );
+    }
+
+    /**
+     * Log that a customer gave up waiting in line and left it.
+     *
+     * @param customer the customer's number
+     * @param cartSize the number of groceries in the cart
+     * @param nanos when it happened
+     */
+    public static void customerReneged( int customer, int cartSize, long nanos ) {
+        record( RENEGED, customer, cartSize, 0, nanos );
+    }
+
+    /**
+     * Log that a clerk took a cart from the line.
+     *
+     * @param cartSize the number of groceries in the cart
+     * @param nanos when it happened
+     */
+    public static void clerkGot( int cartSize, long nanos ) {
+        record( CLERK_GOT, 0, cartSize, 0, nanos );
+    }
+
+    /**
+     * Wait until every event logged so far is on standard output.
+     */
+    public static void flush() {
+        long last = tail.get();
+        while ( written < last ) {
+            LockSupport.unpark( writer );
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Put an event in the next slot of the ring buffer, waiting for the
+     * writer if the buffer is full.
+     *
+     * @param kind what kind of event
+     * @param customer the customer's number
+     * @param cartSize the number of groceries in the cart
+     * @param position the number of customers in front
+     * @param nanos when it happened
+     */
+    private static void record( byte kind, int customer, int cartSize,
+                                int position, long nanos ) {
+        if ( verbosity == Verbosity.OFF ) {
+            return;
+        }
+        long seq = tail.getAndIncrement();
+        while ( seq - head >= CAPACITY ) {
+            LockSupport.unpark( writer );
+            Thread.yield();
+        }
+        int slot = (int) seq & MASK;
+        kinds[ slot ] = kind;
+        customers[ slot ] = customer;
+        cartSizes[ slot ] = cartSize;
+        positions[ slot ] = position;
+        times[ slot ] = nanos;
+        published.set( slot, seq + 1 );
+    }
+
+    /**
+     * The writer thread's work: format the published events in order
+     * and write them to standard output in large pieces.
+     */
+    private static void write() {
+        PrintStream out = System.out;
+        byte[] buffer = new byte[ 1 << 16 ];
+        int length = 0;
+        long origin = Long.MIN_VALUE;
+        while ( true ) {
+            long next = head;
+            if ( next == tail.get() ) {
+                if ( length > 0 ) {
+                    out.write( buffer, 0, length );
+                    out.flush();
+                    length = 0;
+                }
+                written = next;
+                LockSupport.parkNanos( IDLE_NANOS );
+                continue;
+            }
+            int slot = (int) next & MASK;
+            if ( published.get( slot ) != next + 1 ) {
+                // Claimed, but not filled in yet.
+                Thread.onSpinWait();
+                continue;
+            }
+            if ( buffer.length - length < 256 ) {
+                out.write( buffer, 0, length );
+                length = 0;
+            }
+            if ( origin == Long.MIN_VALUE ) {
+                origin = times[ slot ];
+            }
+            if ( verbosity == Verbosity.TIMED ) {
+                buffer[ length++ ] = '[';
+                long micros = ( times[ slot ] - origin ) / 1000;
+                length = append( buffer, length, micros / 1000 );
+                buffer[ length++ ] = '.';
+                long fraction = Math.abs( micros % 1000 );
+                buffer[ length++ ] = (byte) ( '0' + fraction / 100 );
+                buffer[ length++ ] = (byte) ( '0' + fraction / 10 % 10 );
+                buffer[ length++ ] = (byte) ( '0' + fraction % 10 );
+                buffer[ length++ ] = ']';
+                buffer[ length++ ] = ' ';
+            }
+            switch ( kinds[ slot ] ) {
+                case ENTERED -> {
+                    length = append( buffer, length, CUSTOMER );
+                    length = append( buffer, length, customers[ slot ] );
+                    length = append( buffer, length, WITH_CART );
+                    length = append( buffer, length, cartSizes[ slot ] );
+                    length = append( buffer, length, ENTERED_WITH );
+                    length = append( buffer, length, positions[ slot ] );
+                    length = append( buffer, length, IN_FRONT );
+                }
+                case LEFT -> {
+                    length = append( buffer, length, CUSTOMER );
+                    length = append( buffer, length, customers[ slot ] );
+                    length = append( buffer, length, WITH_CART );
+                    length = append( buffer, length, cartSizes[ slot ] );
+                    length = append( buffer, length, LEFT_FULL );
+                }
+                case RENEGED -> {
+                    length = append( buffer, length, CUSTOMER );
+                    length = append( buffer, length, customers[ slot ] );
+                    length = append( buffer, length, WITH_CART );
+                    length = append( buffer, length, cartSizes[ slot ] );
+                    length = append( buffer, length, LEFT_LINE );
+                }
+                default -> {
+                    length = append( buffer, length, CLERK_GOT_CART );
+                    length = append( buffer, length, cartSizes[ slot ] );
+                    length = append( buffer, length, CLOSE );
+                }
+            }
+            length = append( buffer, length, NEWLINE );
+            head = next + 1;
+        }
+    }
+
+    /**
+     * Copy some bytes into the buffer.
+     *
+     * @param buffer the buffer
+     * @param length how much of the buffer is in use
+     * @param bytes the bytes to add
+     * @return the new length
+     */
+    private static int append( byte[] buffer, int length, byte[] bytes ) {
+        System.arraycopy( bytes, 0, buffer, length, bytes.length );
+        return length + bytes.length;
+    }
+
+    /**
+     * Write a number in decimal into the buffer.
+     *
+     * @param buffer the buffer
+     * @param length how much of the buffer is in use
+     * @param value the number
+     * @return the new length
+     */
+    private static int append( byte[] buffer, int length, long value ) {
+        if ( value < 0 ) {
+            buffer[ length++ ] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for ( long rest = value / 10; rest > 0; rest /= 10 ) {
+            ++digits;
+        }
+        for ( int i = length + digits - 1; i >= length; --i ) {
+            buffer[ i ] = (byte) ( '0' + value % 10 );
+            value /= 10;
+        }
+        return length + digits;
+    }
+
+    /**
+     * Encode a string for the output buffer.
+     *
+     * @param text ASCII text
+     * @return its bytes
+     */
+    private static byte[] ascii( String text ) {
+        return text.getBytes( StandardCharsets.US_ASCII );
+    }
+}
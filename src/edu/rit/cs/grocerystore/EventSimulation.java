@@ -0,0 +1,316 @@
+package edu.rit.cs.grocerystore;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * A discrete-event version of the checkout simulation. Instead of
+ * sleeping threads, it keeps a calendar of future events ordered by
+ * time and jumps a {@link VirtualClock} from one event to the next, so
+ * a run takes only as long as the computer needs to process its events.
+ * <p>
+ * The semantics match the threaded simulation: arrivals come from an
+ * {@link ArrivalSource}, as in {@link CustomerPool}, every cart goes through the
+ * same {@link TSQueue}, and a clerk spends
+ * getCartSize()*Utilities.TIME_PER_CART_ITEM msec. on each cart before
+ * calling servicingDone(). Everything runs on the calling thread, so
+ * a clerk takes carts without blocking, staying idle if its line is
+ * empty, and a customer only enqueues when it knows the queue is not full. Customers
+ * who find the line full wait their turn for room, unless their
+ * patience runs out first.
+ *
+ * @author RIT CS
+ */
+public class EventSimulation {
+
+    /** What a calendar event represents */
+    private enum Kind {
+        /** A customer puts its cart in the checkout line */
+        ARRIVAL,
+        /** A clerk finishes checking out a cart */
+        SERVICE_DONE,
+        /** A customer waiting for room in a full line gives up */
+        TIMEOUT,
+        /** A customer waiting in line gives up and leaves it */
+        RENEGE
+    }
+
+    /**
+     * Something that will happen at a given virtual time.
+     * Events at the same time are processed in the order they were scheduled.
+     */
+    private static final class Event implements Comparable< Event > {
+        /** When the event happens, in msec. */
+        final double time;
+        /** Tie-breaker: the order in which events were scheduled */
+        final long seq;
+        /** What happens */
+        final Kind kind;
+        /** The cart involved */
+        final Cart cart;
+        /**
+         * The clerk involved, for SERVICE_DONE events, or the customer's
+         * number, for RENEGE events
+         */
+        final int clerk;
+
+        Event( double time, long seq, Kind kind, Cart cart, int clerk ) {
+            this.time = time;
+            this.seq = seq;
+            this.kind = kind;
+            this.cart = cart;
+            this.clerk = clerk;
+        }
+
+        @Override
+        public int compareTo( Event other ) {
+            int byTime = Double.compare( time, other.time );
+            return byTime != 0 ? byTime : Long.compare( seq, other.seq );
+        }
+    }
+
+    /** The checkout line that customers join */
+    private final TSQueue< Cart > checkoutLine;
+    /** The queue each clerk takes carts from (may all be checkoutLine) */
+    private final List< TSQueue< Cart > > clerkLines;
+    /** When each customer arrives, and with how many groceries */
+    private final ArrivalSource arrivals;
+    /** The most carts the checkout line may hold */
+    private final int capacity;
+    /** Msec. customers wait for room in a full line, or negative for ever */
+    private final double patience;
+    /** Msec. customers wait in line before leaving it, or negative for ever */
+    private final double renege;
+    /** Where customers who leave a full line are counted */
+    private final WaitStatistics statistics;
+    /** For each clerk, where the times of the carts it serviced are recorded */
+    private final List< WaitStatistics > clerkStatistics;
+    /** The simulation's notion of the current time */
+    private final VirtualClock clock;
+    /** Future events, earliest first */
+    private final PriorityQueue< Event > calendar;
+    /** Clerks with nothing to do */
+    private final Deque< Integer > idleClerks;
+    /** The number of events scheduled so far */
+    private long nextSeq;
+    /** The number of customers created so far */
+    private int numArrivals;
+    /** The number of carts in line, not yet taken by a clerk */
+    private int waiting;
+    /**
+     * The time of the last event that changed anything, in msec.; later
+     * events for customers who had already moved on do not count
+     */
+    private double lastEventTime;
+    /** Customers waiting for room in a full line, by cart, in arrival order */
+    private final Map< Cart, Integer > blocked;
+
+    /**
+     * Store all the parameter values for later use.
+     *
+     * @param checkoutLine the queue of Carts that customers join
+     * @param clerkLines for each clerk, the queue it takes Carts from
+     * @param arrivals when each customer arrives, and with how many groceries
+     * @param capacity the most carts the checkout line may hold
+     * @param patience msec. customers wait for room in a full line: 0 to
+     *                 leave at once, negative to wait forever
+     * @param renege msec. customers wait in line before leaving it, or
+     *               negative to wait until served; if not negative, the
+     *               checkout line must support TSQueue.remove()
+     * @param statistics where to record customers who leave
+     * @param clerkStatistics for each clerk, where to record each cart's
+     *                        times when the clerk has checked it out
+     */
+    public EventSimulation( TSQueue< Cart > checkoutLine,
+                            List< TSQueue< Cart > > clerkLines,
+                            ArrivalSource arrivals, int capacity, double patience,
+                            double renege, WaitStatistics statistics,
+                            List< WaitStatistics > clerkStatistics ) {
+        this.checkoutLine = checkoutLine;
+        this.clerkLines = clerkLines;
+        this.arrivals = arrivals;
+        this.capacity = capacity;
+        this.patience = patience;
+        this.renege = renege;
+        this.statistics = statistics;
+        this.clerkStatistics = clerkStatistics;
+        this.blocked = new LinkedHashMap<>();
+        this.clock = new VirtualClock();
+        this.calendar = new PriorityQueue<>();
+        this.idleClerks = new ArrayDeque<>();
+        for ( int i = 0; i < clerkLines.size(); ++i ) {
+            this.idleClerks.add( i );
+        }
+    }
+
+    /**
+     * Run the simulation until every customer has been checked out.
+     * Arrivals are read one at a time, as the previous one is
+     * processed, so the calendar never holds more than one arrival plus
+     * one event per clerk and one per customer who may leave the line,
+     * and carts are dropped once their times have been recorded.
+     */
+    public void simulateCustomers() {
+        int generated = 0;
+        if ( scheduleArrival() ) {
+            ++generated;
+        }
+        while ( !calendar.isEmpty() ) {
+            Event event = calendar.remove();
+            clock.advanceTo( event.time );
+            switch ( event.kind ) {
+                case ARRIVAL -> {
+                    lastEventTime = clock.now();
+                    if ( waiting < capacity ) {
+                        enterLine( generated, event.cart );
+                    }
+                    else if ( patience == 0 ) {
+                        statistics.recordRejected();
+                        leaveLine( generated, event.cart );
+                    }
+                    else {
+                        blocked.put( event.cart, generated );
+                        if ( patience > 0 ) {
+                            calendar.add( new Event( clock.now() + patience, nextSeq++,
+                                                     Kind.TIMEOUT, event.cart, -1 ) );
+                        }
+                    }
+                    if ( scheduleArrival() ) {
+                        ++generated;
+                    }
+                }
+                case SERVICE_DONE -> {
+                    lastEventTime = clock.now();
+                    event.cart.servicingDone();
+                    clerkLines.get( event.clerk ).serviced( event.cart );
+                    clerkStatistics.get( event.clerk ).record( event.cart );
+                    idleClerks.add( event.clerk );
+                }
+                case TIMEOUT -> {
+                    // The customer is only still waiting if not let in since.
+                    Integer customer = blocked.remove( event.cart );
+                    if ( customer != null ) {
+                        lastEventTime = clock.now();
+                        statistics.recordTimedOut();
+                        leaveLine( customer, event.cart );
+                    }
+                }
+                case RENEGE -> {
+                    // The cart is only still in line if no clerk has taken it.
+                    if ( checkoutLine.remove( event.cart ) ) {
+                        lastEventTime = clock.now();
+                        --waiting;
+                        statistics.recordReneged();
+                        EventLog.customerReneged( event.clerk, event.cart.getCartSize(),
+                                                  clock.nanoTime() );
+                        admitBlocked();
+                    }
+                }
+            }
+            Iterator< Integer > idle = idleClerks.iterator();
+            while ( waiting > 0 && idle.hasNext() ) {
+                if ( startService( idle.next() ) ) {
+                    idle.remove();
+                    admitBlocked();
+                }
+            }
+        }
+    }
+
+    /**
+     * How much virtual time has passed? Events left on the calendar for
+     * customers who had already got in line, or been served, are not
+     * counted, so the time is the same however patient the customers
+     * are, if none gave up.
+     *
+     * @return the time of the last event that changed anything, in msec.
+     */
+    public double getElapsedTime() {
+        return lastEventTime;
+    }
+
+    /**
+     * Create the next customer's cart, if there are more customers, and
+     * put its arrival on the calendar.
+     *
+     * @return true if there was another customer
+     */
+    private boolean scheduleArrival() {
+        if ( !arrivals.next() ) {
+            return false;
+        }
+        Cart cart = new Cart( arrivals.getCartSize(), numArrivals++, clock );
+        calendar.add( new Event( arrivals.getArrivalTime(), nextSeq++,
+                                 Kind.ARRIVAL, cart, -1 ) );
+        return true;
+    }
+
+    /**
+     * Put a customer's cart in the checkout line, which must not be full,
+     * and if customers only wait so long, put its leaving on the calendar.
+     *
+     * @param customer the customer's number
+     * @param cart the customer's cart
+     */
+    private void enterLine( int customer, Cart cart ) {
+        int customersAhead = checkoutLine.enqueue( cart ) - 1;
+        ++waiting;
+        EventLog.customerEntered( customer, cart.getCartSize(), customersAhead,
+                                  clock.nanoTime() );
+        if ( renege >= 0 ) {
+            calendar.add( new Event( clock.now() + renege, nextSeq++,
+                                     Kind.RENEGE, cart, customer ) );
+        }
+    }
+
+    /**
+     * Now that there is room in the line, let in the customer who has
+     * waited longest for it, if any.
+     */
+    private void admitBlocked() {
+        Iterator< Map.Entry< Cart, Integer > > next = blocked.entrySet().iterator();
+        if ( next.hasNext() ) {
+            Map.Entry< Cart, Integer > first = next.next();
+            next.remove();
+            enterLine( first.getValue(), first.getKey() );
+        }
+    }
+
+    /**
+     * Log that a customer left because the line was full.
+     *
+     * @param customer the customer's number
+     * @param cart the customer's cart
+     */
+    private void leaveLine( int customer, Cart cart ) {
+        EventLog.customerLeft( customer, cart.getCartSize(), clock.nanoTime() );
+    }
+
+    /**
+     * Have an idle clerk take the next cart from its line, if there is one
+     * (when clerks have lanes of their own, other lanes may still have
+     * carts), and put the end of the checkout on the calendar.
+     *
+     * @param clerk which clerk
+     * @return true if the clerk is now busy
+     */
+    private boolean startService( int clerk ) {
+        List< Cart > next = new ArrayList<>( 1 );
+        if ( clerkLines.get( clerk ).drainTo( next, 1 ) == 0 ) {
+            return false;
+        }
+        Cart cart = next.get( 0 );
+        --waiting;
+        EventLog.clerkGot( cart.getCartSize(), clock.nanoTime() );
+        double done = clock.now() +
+                      cart.getCartSize() * Utilities.TIME_PER_CART_ITEM;
+        calendar.add( new Event( done, nextSeq++, Kind.SERVICE_DONE, cart, clerk ) );
+        return true;
+    }
+}
@@ -0,0 +1,40 @@
+package edu.rit.cs.grocerystore;
+
+import java.util.SplittableRandom;
+
+/**
+ * The exponential distribution. As the times between arrivals, it makes
+ * the arrivals a Poisson process: customers who come independently of
+ * each other at a steady average rate.
+ * <p>
+ * The numbers come from the generator's own nextExponential(), which,
+ * like its nextGaussian(), uses a table-driven ziggurat method rather
+ * than computing a logarithm for every sample.
+ *
+ * @author RIT CS
+ */
+public class ExponentialDistribution implements Distribution {
+
+    /** The mean */
+    private final double mean;
+
+    /**
+     * Make an exponential distribution.
+     *
+     * @param mean the mean
+     */
+    public ExponentialDistribution( double mean ) {
+        this.mean = mean;
+    }
+
+    @Override
+    public double sample( SplittableRandom random ) {
+        return mean * random.nextExponential();
+    }
+
+    @Override
+    public double getMean() { return mean; }
+
+    @Override
+    public String toString() { return EXPONENTIAL; }
+}
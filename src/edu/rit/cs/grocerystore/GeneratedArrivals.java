@@ -0,0 +1,81 @@
+package edu.rit.cs.grocerystore;
+
+import java.util.SplittableRandom;
+
+/**
+ * Customers made up as they are needed, with cart sizes and times between
+ * arrivals drawn from given {@link Distribution}s. Given the same seed,
+ * the same customers are made every time, so different checkout lines
+ * can be compared on identical workloads.
+ * <p>
+ * Cart sizes and arrival times are drawn from two separate streams split
+ * from the one generator, so changing the distribution of one does not
+ * change the values drawn for the other. The generators belong to this
+ * source alone, so simulations running at the same time never contend
+ * for them.
+ *
+ * @author RIT CS
+ */
+public class GeneratedArrivals implements ArrivalSource {
+
+    /** The number of customers to make */
+    private final long numCustomers;
+    /** The distribution of the number of groceries in each Cart */
+    private final Distribution loads;
+    /** The distribution of the time between Customer arrivals */
+    private final Distribution delays;
+    /** Random number generator for cart sizes */
+    private final SplittableRandom loadRandom;
+    /** Random number generator for arrival times */
+    private final SplittableRandom delayRandom;
+    /** The number of customers made so far */
+    private long made;
+    /** The current customer's arrival time */
+    private double arrivalTime;
+    /** The current customer's number of groceries */
+    private int cartSize;
+
+    /**
+     * Make customers using the given distributions and random number
+     * generator.
+     *
+     * @param numCustomers the number of customers to make
+     * @param loads the distribution of the number of groceries in each Cart
+     * @param delays the distribution of the time between Customer arrivals
+     * @param random the random number generator, which is split in two
+     */
+    public GeneratedArrivals( long numCustomers, Distribution loads,
+                              Distribution delays, SplittableRandom random ) {
+        this.numCustomers = numCustomers;
+        this.loads = loads;
+        this.delays = delays;
+        this.loadRandom = random;
+        this.delayRandom = random.split();
+    }
+
+    @Override
+    public long getCount() { return numCustomers; }
+
+    /**
+     * Make the next customer: a random number of groceries, arriving a
+     * random time after the previous customer.
+     *
+     * @return true if there is one, false if all have been made
+     */
+    @Override
+    public boolean next() {
+        if ( made == numCustomers ) {
+            return false;
+        }
+        ++made;
+        cartSize = (int) loads.sample( loadRandom );
+        arrivalTime += delays.sample( delayRandom );
+        return true;
+    }
+
+    @Override
+    public double getArrivalTime() { return arrivalTime; }
+
+    @Override
+    public int getCartSize() { return cartSize; }
+}
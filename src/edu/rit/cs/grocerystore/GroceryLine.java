@@ -1,6 +1,8 @@
 package edu.rit.cs.grocerystore;
 
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * The main programs that creates and runs the simulation of a checkout line
@@ -23,6 +25,153 @@ public class GroceryLine {
      */
     public static final String PRIO_Q = "Priority";
 
+    /**
+     * Value of command line argument to indicate choice of a
+     * first-in-first-out checkout line that never takes a lock.
+     */
+    public static final String LOCKFREE_Q = "LockFree";
+
+    /**
+     * Value of command line argument to indicate choice of one
+     * first-in-first-out lane per clerk, where idle clerks steal carts
+     * from the back of the busiest lane.
+     */
+    public static final String LANES_Q = "Lanes";
+
+    /**
+     * Value of command line argument to indicate choice of a checkout line
+     * that services customers with fewer groceries first, and never takes
+     * a lock. Customers with equal loads are served in arrival order.
+     */
+    public static final String SKIPLIST_Q = "SkipList";
+
+    /**
+     * Value of command line argument to indicate choice of a bounded
+     * first-in-first-out checkout line in a pre-allocated ring, which
+     * never takes a lock and allocates nothing per customer.
+     */
+    public static final String RING_Q = "Ring";
+
+    /**
+     * Value of command line argument to indicate choice of a checkout line
+     * that services customers with fewer groceries first, and from which
+     * customers can leave quickly, however long it is.
+     */
+    public static final String HEAP_Q = "Heap";
+
+    /**
+     * Value of command line argument to indicate choice of a checkout line
+     * hosted by a {@link CheckoutServer} in another process, which other
+     * processes may share.
+     */
+    public static final String REMOTE_Q = "Remote";
+
+    /** Name of the option giving the number of clerks */
+    public static final String CLERKS_OPT = "clerks";
+
+    /**
+     * Name of the option giving what the clerk autoscaler keeps near a
+     * target, and the target
+     */
+    public static final String AUTOSCALE_OPT = "autoscale";
+
+    /** Name of the option giving the most clerks the autoscaler may start */
+    public static final String MAX_CLERKS_OPT = "maxclerks";
+
+    /** Name of the option giving how customers choose a lane */
+    public static final String LANE_POLICY_OPT = "lanes";
+
+    /** Name of the option giving how the customers are run */
+    public static final String CUSTOMERS_OPT = "customers";
+
+    /** Name of the option choosing threads or discrete events */
+    public static final String ENGINE_OPT = "engine";
+
+    /** Value of the engine option for the real-time, threaded simulation */
+    public static final String THREADS_ENGINE = "Threads";
+
+    /** Value of the engine option for the discrete-event simulation */
+    public static final String EVENTS_ENGINE = "Events";
+
+    /** Name of the option choosing how cart times are kept */
+    public static final String TIMINGS_OPT = "timings";
+
+    /** Value of the timings option for histograms only */
+    public static final String HISTOGRAM_TIMINGS = "Histogram";
+
+    /** Value of the timings option for exact times in primitive columns */
+    public static final String COLUMNAR_TIMINGS = "Columnar";
+
+    /** Name of the option giving the most carts the checkout line holds */
+    public static final String CAPACITY_OPT = "capacity";
+
+    /** Name of the option giving how long customers wait to get in line */
+    public static final String PATIENCE_OPT = "patience";
+
+    /** Name of the option giving how long customers wait in line before leaving it */
+    public static final String RENEGE_OPT = "renege";
+
+    /**
+     * Name of the option giving how long a customer may wait in a SkipList
+     * line before being served ahead of smaller carts
+     */
+    public static final String AGING_OPT = "aging";
+
+    /**
+     * Name of the option giving the rule that sends each customer to a
+     * lane of their own kind, one per clerk
+     */
+    public static final String ROUTE_OPT = "route";
+
+    /** Name of the option giving the most groceries allowed in the express lane */
+    public static final String EXPRESS_OPT = "express";
+
+    /** Name of the option giving how much customers and clerks log */
+    public static final String LOG_OPT = "log";
+
+    /** Name of the option giving how often live metrics are printed */
+    public static final String METRICS_OPT = "metrics";
+
+    /** Name of the option giving the distribution of cart sizes */
+    public static final String LOAD_DIST_OPT = "load";
+
+    /** Name of the option giving the distribution of times between arrivals */
+    public static final String DELAY_DIST_OPT = "delay";
+
+    /** Name of the option giving the seed for generating customers */
+    public static final String SEED_OPT = "seed";
+
+    /** Name of the option giving a file to record the customers to */
+    public static final String RECORD_OPT = "record";
+
+    /** Name of the option giving a file of customers to replay */
+    public static final String REPLAY_OPT = "replay";
+
+    /** Name of the option giving a directory to journal the line in */
+    public static final String JOURNAL_OPT = "journal";
+
+    /** Name of the option giving where the server of a Remote line is */
+    public static final String SERVER_OPT = "server";
+
+    /** Name of the option giving who this process runs, with a Remote line */
+    public static final String ROLE_OPT = "role";
+
+    /** Value of the role option for customers and clerks both */
+    public static final String BOTH_ROLE = "Both";
+
+    /** Value of the role option for customers only */
+    public static final String CUSTOMERS_ROLE = "Customers";
+
+    /** Value of the role option for clerks only */
+    public static final String CLERKS_ROLE = "Clerks";
+
+    /** All option names that {@link #parseOptions(String[], int)} accepts */
+    private static final Set< String > KNOWN_OPTIONS =
+            Set.of( CLERKS_OPT, AUTOSCALE_OPT, MAX_CLERKS_OPT, LANE_POLICY_OPT, CUSTOMERS_OPT, ENGINE_OPT,
+                    CAPACITY_OPT, PATIENCE_OPT, RENEGE_OPT, AGING_OPT, ROUTE_OPT,
+                    EXPRESS_OPT, LOG_OPT, METRICS_OPT, TIMINGS_OPT, LOAD_DIST_OPT, DELAY_DIST_OPT,
+                    SEED_OPT, RECORD_OPT, REPLAY_OPT, JOURNAL_OPT, SERVER_OPT, ROLE_OPT );
+
     /**
      * Run a simulation of the grocery store checkout line.
      *
@@ -30,7 +179,77 @@ public class GroceryLine {
      *             [0] How many customers to simulate;
      *             [1] The average grocery cart load;
      *             [2] The average time between customer arrivals at the line
-     *             [3] "fifo" for ordinary queue, "prio" for small-cart priority
+     *             [3] "FIFO" for ordinary queue, "Priority" for small-cart
+     *                 priority, "LockFree" for a lock-free ordinary queue,
+     *                 "Lanes" for one work-stealing lane per clerk,
+     *                 "SkipList" for lock-free small-cart priority,
+     *                 "Ring" for a lock-free ordinary queue in a fixed ring,
+     *                 "Heap" for small-cart priority that customers can
+     *                 leave from the middle of, "Remote" for a line
+     *                 served by a {@link CheckoutServer}
+     *             [4...] optional name=value settings:
+     *                 clerks=N for the number of clerks (default 1);
+     *                 autoscale=Wait:msec/Depth:carts to start and retire
+     *                 clerks while running, keeping the 95th percentile
+     *                 queue wait or the carts in line per clerk near the
+     *                 target, with clerks=N as the fewest (default off;
+     *                 see {@link ClerkAutoscaler});
+     *                 maxclerks=N for the most clerks the autoscaler may
+     *                 start (default 4 times clerks);
+     *                 lanes=Shortest/Random/RoundRobin for how customers
+     *                 choose a lane in a Lanes queue (default Shortest);
+     *                 customers=Threads/Pooled/Virtual/Wheel for a thread
+     *                 per customer, a shared thread pool, a virtual thread
+     *                 per customer, or one thread releasing customers from
+     *                 a timing wheel (default Threads);
+     *                 engine=Threads/Events to run in real time on threads,
+     *                 or as a discrete-event simulation on a virtual clock
+     *                 (default Threads);
+     *                 capacity=N for the most carts a FIFO, Priority or Heap
+     *                 line holds (default unbounded), or for the size of
+     *                 a Ring, rounded up to a power of two (default 65536);
+     *                 patience=msec. for how long customers wait for room
+     *                 in a full line, 0 to leave at once (default forever);
+     *                 renege=msec. for how long customers wait in a FIFO,
+     *                 Priority or Heap line before giving up and leaving
+     *                 it (default forever);
+     *                 aging=msec. for how long the oldest customer in a
+     *                 SkipList line waits before going first (default forever);
+     *                 route=LeastWork/Express to give each clerk a lane of
+     *                 the chosen kind, and send each customer to the lane
+     *                 with the least expected work, or with Express, keep
+     *                 lane 0 for small carts (default one shared line);
+     *                 express=N for the most groceries allowed in the
+     *                 express lane (default 10);
+     *                 log=Off/On/Timed for no log of customers and clerks,
+     *                 a log, or a log with times (default On);
+     *                 metrics=msec. to publish live measurements of the
+     *                 line as a JMX MBean and print a snapshot of them
+     *                 this often, in real time (default none);
+     *                 timings=Histogram/Columnar to keep cart times in
+     *                 histograms only, or also every cart's exact times,
+     *                 for exact percentiles (default Histogram);
+     *                 load=... and delay=... for the shapes of the
+     *                 distributions of cart sizes and of times between
+     *                 arrivals, scaled to [1] and [2]: Sine, Exponential,
+     *                 Erlang:k, LogNormal:sigma or Empirical:histogram-file
+     *                 (default Sine; see {@link Distribution#fromArg});
+     *                 seed=N to generate the same customers every run;
+     *                 record=file to write the customers to a trace;
+     *                 replay=file to take the customers from a trace
+     *                 instead of generating them, when [0] to [2] are
+     *                 ignored;
+     *                 journal=directory to journal an unbounded, unrouted
+     *                 line there, so that a run that stops part way picks
+     *                 up where it left off when run again with the same
+     *                 settings (see {@link JournaledTSQueue});
+     *                 server=host:port for where the server of a Remote
+     *                 line listens (default localhost:7373);
+     *                 role=Both/Customers/Clerks to run customers and
+     *                 clerks, only customers, closing the line after the
+     *                 last, or only clerks, until the line is closed, on
+     *                 a Remote line shared with other processes (default
+     *                 Both)
      */
     public static void main( String[] args ) {
         try {
@@ -41,76 +260,61 @@ public class GroceryLine {
              * caught at the end of this method.
              * A checkout queue is created based on the 4th argument.
              */
-            if ( args.length != 4 ) {
+            if ( args.length < 4 ) {
                 throw new IndexOutOfBoundsException( args.length );
             }
             int numCustomers = Integer.parseInt( args[ 0 ] );
             int avgLoad = Integer.parseInt( args[ 1 ] );
             double avgDelay = Double.parseDouble( args[ 2 ] );
-            TSQueue<Cart> checkoutLine;
-            switch( args[ 3 ] ) {
-                case FIFO_Q -> checkoutLine = new FIFOTSQueue<>();
-                case PRIO_Q -> checkoutLine = new PriorityTSQueue<>();
-                default -> throw new IllegalArgumentException( args[ 3 ] );
-            }
-            Utilities.println("Generating " + numCustomers + " customers.");
-            Utilities.println("Average cart size is " + avgLoad);
-            Utilities.println("Average inter-customer arrival time is " + avgDelay);
-            Utilities.println( "Using a " + args[ 3 ] + " queue.\n" );
-
-            // Record the time that the simulation started.
-            long beginTime = System.currentTimeMillis();
+            Map< String, String > options = parseOptions( args, 4 );
+            EventLog.setVerbosity( EventLog.Verbosity.fromArg(
+                    options.getOrDefault( LOG_OPT, EventLog.Verbosity.ON.toString() ) ) );
+            Simulation simulation = new Simulation(
+                    numCustomers, avgLoad, avgDelay, args[ 3 ], options );
+            simulation.printSettings();
 
-            CustomerPool customerPool = new CustomerPool(checkoutLine, numCustomers, avgLoad, (int) avgDelay);
-            Clerk newClerk = new Clerk(checkoutLine);
-            Thread clerkThread = new Thread(newClerk);
-
-            clerkThread.start();
-            List<Cart> carts = customerPool.simulateCustomers();
-
-            checkoutLine.enqueue(Utilities.NO_MORE_CARTS);
-            clerkThread.join();
-
-            // Record the time that the simulation started.
-            long endTime = System.currentTimeMillis();
+            simulation.run();
 
             /*
-             * Using the features of the TimedObject abstract class,
-             * compute the average wait times and show total time as well.
+             * The clerks recorded every cart's times as it was checked
+             * out. Show the averages and the tail, and total time as well.
              */
-            double avgQueueWaitTime =
-                    carts.stream()
-                                 .mapToDouble( Cart::getInQueueTime )
-                                 .sum()
-                         / numCustomers;
-            double avgServiceTime =
-                    carts.stream()
-                                 .mapToDouble( Cart::getServiceTime )
-                                 .sum()
-                         / numCustomers;
-            double avgTotalWaitTime =
-                    carts.stream()
-                                 .mapToDouble( Cart::getTotalWaitTime )
-                                 .sum()
-                         / numCustomers;
-
-            Utilities.println( System.lineSeparator() + "------------------" );
-            String format =
-                    "Average %10s time was %8.1f msec." +
-                    System.lineSeparator();
-            Utilities.printf( format, "queue wait", avgQueueWaitTime );
-            Utilities.printf( format, "service", avgServiceTime );
-            Utilities.printf( format, "total wait", avgTotalWaitTime );
-            Utilities.println( "---" );
-            Utilities.printf( "Total simulation time was %d msec.",
-                              ( endTime - beginTime ) );
+            EventLog.flush();
+            simulation.printResults();
         }
         catch( IndexOutOfBoundsException | IllegalArgumentException e ) {
-            System.err.println( e.getClass().getSimpleName() );
+            System.err.println( e.getClass().getSimpleName() +
+                                ( e.getMessage() != null ? ": " + e.getMessage() : "" ) );
             System.err.println(
                     "Usage: java " +
                     "GroceryLine #custs avg-load avg-inter-arrival-time " +
-                    FIFO_Q + '/' + PRIO_Q );
+                    FIFO_Q + '/' + PRIO_Q + '/' + LOCKFREE_Q + '/' + LANES_Q + '/' +
+                    SKIPLIST_Q + '/' + RING_Q + '/' + HEAP_Q + '/' + REMOTE_Q +
+                    " [" + CLERKS_OPT + "=#clerks]" +
+                    " [" + AUTOSCALE_OPT + "=Wait:msec/Depth:carts]" +
+                    " [" + MAX_CLERKS_OPT + "=#clerks]" +
+                    " [" + LANE_POLICY_OPT + "=Shortest/Random/RoundRobin]" +
+                    " [" + CUSTOMERS_OPT + "=Threads/Pooled/Virtual/Wheel]" +
+                    " [" + ENGINE_OPT + '=' + THREADS_ENGINE + '/' + EVENTS_ENGINE + ']' +
+                    " [" + CAPACITY_OPT + "=#carts]" +
+                    " [" + PATIENCE_OPT + "=msec]" +
+                    " [" + RENEGE_OPT + "=msec]" +
+                    " [" + AGING_OPT + "=msec]" +
+                    " [" + ROUTE_OPT + "=LeastWork/Express]" +
+                    " [" + EXPRESS_OPT + "=#items]" +
+                    " [" + LOG_OPT + "=Off/On/Timed]" +
+                    " [" + METRICS_OPT + "=msec]" +
+                    " [" + TIMINGS_OPT + '=' + HISTOGRAM_TIMINGS + '/' +
+                    COLUMNAR_TIMINGS + ']' +
+                    " [" + LOAD_DIST_OPT + "=distribution]" +
+                    " [" + DELAY_DIST_OPT + "=distribution]" +
+                    " [" + SEED_OPT + "=#seed]" +
+                    " [" + RECORD_OPT + "=file]" +
+                    " [" + REPLAY_OPT + "=file]" +
+                    " [" + JOURNAL_OPT + "=directory]" +
+                    " [" + SERVER_OPT + "=host:port]" +
+                    " [" + ROLE_OPT + '=' + BOTH_ROLE + '/' + CUSTOMERS_ROLE + '/' +
+                    CLERKS_ROLE + ']' );
             System.exit( 1 );
         }
         catch( InterruptedException ie ) {
@@ -118,4 +322,132 @@ public class GroceryLine {
             ie.printStackTrace();
         }
     }
+
+    /**
+     * Create an empty checkout line of the kind named on the command line.
+     *
+     * @param kind one of the queue kinds, e.g. {@link #FIFO_Q}
+     * @param numClerks how many clerks will serve the line; a Lanes queue
+     *                  gets one lane per clerk
+     * @param lanePolicy how customers choose a lane in a Lanes queue
+     * @param <E> the type of elements that will be in the queue
+     * @return the new, unbounded queue
+     * @throws IllegalArgumentException if kind is not a queue kind
+     */
+    public static < E extends TimedObject & Comparable< E > > TSQueue< E >
+    newQueue( String kind, int numClerks, CheckoutLanes.Policy lanePolicy ) {
+        return newQueue( kind, numClerks, lanePolicy, TSQueue.UNBOUNDED );
+    }
+
+    /**
+     * Create an empty checkout line of the kind named on the command line,
+     * holding at most the given number of elements.
+     *
+     * @param kind one of the queue kinds, e.g. {@link #FIFO_Q}
+     * @param numClerks how many clerks will serve the line; a Lanes queue
+     *                  gets one lane per clerk
+     * @param lanePolicy how customers choose a lane in a Lanes queue
+     * @param capacity the most elements the queue may hold, or
+     *                 {@link TSQueue#UNBOUNDED}
+     * @param <E> the type of elements that will be in the queue
+     * @return the new queue
+     * @throws IllegalArgumentException if kind is not a queue kind, or
+     * the kind of queue cannot be bounded
+     */
+    public static < E extends TimedObject & Comparable< E > > TSQueue< E >
+    newQueue( String kind, int numClerks, CheckoutLanes.Policy lanePolicy,
+              int capacity ) {
+        return newQueue( kind, numClerks, lanePolicy, capacity, -1 );
+    }
+
+    /**
+     * Create an empty checkout line of the kind named on the command line,
+     * holding at most the given number of elements, and optionally aging
+     * them.
+     *
+     * @param kind one of the queue kinds, e.g. {@link #FIFO_Q}
+     * @param numClerks how many clerks will serve the line; a Lanes queue
+     *                  gets one lane per clerk
+     * @param lanePolicy how customers choose a lane in a Lanes queue
+     * @param capacity the most elements the queue may hold, or
+     *                 {@link TSQueue#UNBOUNDED}
+     * @param maxAge msec. the oldest element may wait before it is taken
+     *               ahead of higher-priority ones, or negative for never
+     * @param <E> the type of elements that will be in the queue
+     * @return the new queue
+     * @throws IllegalArgumentException if kind is not a queue kind, or
+     * the kind of queue cannot be bounded or aged
+     */
+    public static < E extends TimedObject & Comparable< E > > TSQueue< E >
+    newQueue( String kind, int numClerks, CheckoutLanes.Policy lanePolicy,
+              int capacity, double maxAge ) {
+        if ( maxAge >= 0 && !kind.equals( SKIPLIST_Q ) ) {
+            throw new IllegalArgumentException(
+                    AGING_OPT + " is not supported by " + kind );
+        }
+        if ( capacity != TSQueue.UNBOUNDED &&
+             !kind.equals( FIFO_Q ) && !kind.equals( PRIO_Q ) &&
+             !kind.equals( HEAP_Q ) && !kind.equals( RING_Q ) ) {
+            throw new IllegalArgumentException(
+                    CAPACITY_OPT + " is not supported by " + kind );
+        }
+        return switch( kind ) {
+            case FIFO_Q -> new FIFOTSQueue<>( capacity );
+            case PRIO_Q -> new PriorityTSQueue<>( capacity );
+            case LOCKFREE_Q -> new LockFreeTSQueue<>();
+            case LANES_Q -> new CheckoutLanes<>( numClerks, lanePolicy );
+            case SKIPLIST_Q -> new SkipListTSQueue<>(
+                    maxAge < 0 ? SkipListTSQueue.NO_AGING : (long) ( maxAge * 1e6 ) );
+            case RING_Q -> new RingTSQueue<>( capacity );
+            case HEAP_Q -> new HeapTSQueue<>( capacity );
+            default -> throw new IllegalArgumentException( kind );
+        };
+    }
+
+    /**
+     * Get the queue that one clerk should take elements from: its own
+     * lane if the checkout line is split into lanes, otherwise the
+     * shared checkout line itself.
+     *
+     * @param checkoutLine a queue made by {@link #newQueue}
+     * @param clerk the clerk's number, counting from 0
+     * @param <E> the type of elements in the queue
+     * @return the queue for that clerk
+     */
+    public static < E extends TimedObject > TSQueue< E >
+    clerkView( TSQueue< E > checkoutLine, int clerk ) {
+        if ( checkoutLine instanceof CheckoutLanes< E > lanes ) {
+            return lanes.lane( clerk % lanes.numLanes() );
+        }
+        if ( checkoutLine instanceof LaneRouter< E > router ) {
+            return router.lane( clerk % router.numLanes() );
+        }
+        return checkoutLine;
+    }
+
+    /**
+     * Collect the optional name=value settings at the end of the
+     * command line.
+     *
+     * @param args Strings from the command line
+     * @param first the index of the first optional setting
+     * @return the settings, by name
+     * @throws IllegalArgumentException if a setting is not of the form
+     * name=value, or its name is not recognized
+     */
+    static Map< String, String > parseOptions( String[] args, int first ) {
+        Map< String, String > options = new HashMap<>();
+        for ( int i = first; i < args.length; ++i ) {
+            int eq = args[ i ].indexOf( '=' );
+            if ( eq <= 0 ) {
+                throw new IllegalArgumentException( args[ i ] );
+            }
+            String name = args[ i ].substring( 0, eq );
+            if ( !KNOWN_OPTIONS.contains( name ) ) {
+                throw new IllegalArgumentException( args[ i ] );
+            }
+            options.put( name, args[ i ].substring( eq + 1 ) );
+        }
+        return options;
+    }
 }
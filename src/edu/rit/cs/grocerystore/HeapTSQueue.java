@@ -0,0 +1,56 @@
+package edu.rit.cs.grocerystore;
+
+/**
+ * A TSQueue with priority queue extraction order, like
+ * {@link PriorityTSQueue}, in which any value can also be taken out of
+ * the middle of the line, or moved after its priority changes, in
+ * O(log n) time. That makes it the line to use when customers give up
+ * and leave a long line. The values are kept in an {@link IndexedHeap};
+ * the locking and waiting are done by {@link ConditionTSQueue}.
+ * Values with equal priority come out in the order they went in.
+ *
+ * @param <E> the type of elements that will be in the queue (must be Comparable)
+ * @author RIT CS
+ */
+public class HeapTSQueue< E extends TimedObject & Comparable< E > >
+        extends ConditionTSQueue< E > {
+
+    /** The values, also held by the superclass */
+    private final IndexedHeap< E > heap;
+
+    /** Initialize an empty, unbounded queue */
+    public HeapTSQueue() {
+        this( UNBOUNDED );
+    }
+
+    /**
+     * Initialize an empty queue that may hold no more than the given
+     * number of values.
+     *
+     * @param capacity the most values the queue may hold
+     */
+    public HeapTSQueue( int capacity ) {
+        this( new IndexedHeap<>(), capacity );
+    }
+
+    /**
+     * Initialize an empty queue around the given heap.
+     *
+     * @param heap the empty heap that holds the values
+     * @param capacity the most values the queue may hold
+     */
+    private HeapTSQueue( IndexedHeap< E > heap, int capacity ) {
+        super( heap, capacity );
+        this.heap = heap;
+    }
+
+    /**
+     * Move a value to where it belongs after its priority changed.
+     *
+     * @param value the value, found by identity
+     * @return true if the value was in the queue
+     */
+    public boolean update( E value ) {
+        return withLock( () -> heap.update( value ) );
+    }
+}
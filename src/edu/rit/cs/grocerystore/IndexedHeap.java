@@ -0,0 +1,285 @@
+package edu.rit.cs.grocerystore;
+
+import java.util.AbstractQueue;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A priority queue that knows where every element is, so that any
+ * element can be removed, or moved after its priority changes, in
+ * O(log n) time instead of the O(n) search of
+ * {@link java.util.PriorityQueue#remove(Object)}.
+ * <p>
+ * It is a {@value #ARITY}-ary heap in an array: a shallower tree than a
+ * binary heap, whose children share a cache line or two. Each element's
+ * slot is kept in an identity map, updated as elements move. Elements
+ * that compare equal come out in the order they went in, which the heap
+ * tracks with a sequence number per slot.
+ * <p>
+ * Elements are found by identity, not equals(), and an element may be
+ * in the heap only once. The heap is not thread-safe.
+ *
+ * @param <E> the type of elements in the heap
+ * @author RIT CS
+ */
+public class IndexedHeap< E extends Comparable< E > > extends AbstractQueue< E > {
+
+    /** The number of children of each node */
+    static final int ARITY = 4;
+
+    /** The slots allocated at first */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** The elements, in heap order, in slots 0 to size-1 */
+    private Object[] elements;
+    /** For each slot, when its element was added, to break ties */
+    private long[] order;
+    /** The slot of each element */
+    private final Map< E, Integer > slots;
+    /** The number of elements */
+    private int size;
+    /** The number of elements ever added */
+    private long added;
+
+    /** Create an empty heap */
+    public IndexedHeap() {
+        this.elements = new Object[ INITIAL_CAPACITY ];
+        this.order = new long[ INITIAL_CAPACITY ];
+        this.slots = new IdentityHashMap<>();
+    }
+
+    /**
+     * Add an element.
+     *
+     * @param value the element
+     * @return true
+     * @throws IllegalArgumentException if the element is already in the heap
+     */
+    @Override
+    public boolean offer( E value ) {
+        if ( slots.containsKey( value ) ) {
+            throw new IllegalArgumentException( "already in the heap: " + value );
+        }
+        if ( size == elements.length ) {
+            elements = Arrays.copyOf( elements, size * 2 );
+            order = Arrays.copyOf( order, size * 2 );
+        }
+        int slot = size++;
+        set( slot, value, added++ );
+        siftUp( slot );
+        return true;
+    }
+
+    /**
+     * Remove the smallest element, the oldest of equals.
+     *
+     * @return the element, or null if the heap is empty
+     */
+    @Override
+    public E poll() {
+        return size == 0 ? null : removeAt( 0 );
+    }
+
+    /**
+     * Look at the smallest element, the oldest of equals.
+     *
+     * @return the element, or null if the heap is empty
+     */
+    @Override
+    public E peek() {
+        return size == 0 ? null : elementAt( 0 );
+    }
+
+    /**
+     * Remove an element, wherever it is, in O(log n) time.
+     *
+     * @param value the element, found by identity
+     * @return true if it was in the heap
+     */
+    @Override
+    public boolean remove( Object value ) {
+        Integer slot = slots.get( value );
+        if ( slot == null ) {
+            return false;
+        }
+        removeAt( slot );
+        return true;
+    }
+
+    /**
+     * Is the element in the heap? This takes O(1) time.
+     *
+     * @param value the element, found by identity
+     * @return true if it is in the heap
+     */
+    @Override
+    public boolean contains( Object value ) {
+        return slots.containsKey( value );
+    }
+
+    /**
+     * Move an element to where it belongs after its priority changed, in
+     * O(log n) time. It keeps its place among elements equal to it.
+     *
+     * @param value the element, found by identity
+     * @return true if it was in the heap
+     */
+    public boolean update( E value ) {
+        Integer slot = slots.get( value );
+        if ( slot == null ) {
+            return false;
+        }
+        siftDown( siftUp( slot ) );
+        return true;
+    }
+
+    @Override
+    public int size() { return size; }
+
+    /**
+     * Go through the elements in heap order, which is not sorted order.
+     * The iterator cannot remove elements.
+     *
+     * @return an iterator over the elements
+     */
+    @Override
+    public Iterator< E > iterator() {
+        return new Iterator<>() {
+            /** The next slot to return */
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() { return next < size; }
+
+            @Override
+            public E next() {
+                if ( next >= size ) {
+                    throw new NoSuchElementException();
+                }
+                return elementAt( next++ );
+            }
+        };
+    }
+
+    /**
+     * Take the element out of a slot and fill the hole with the last one.
+     *
+     * @param slot where the element is
+     * @return the element
+     */
+    private E removeAt( int slot ) {
+        E removed = elementAt( slot );
+        slots.remove( removed );
+        int last = --size;
+        if ( slot != last ) {
+            set( slot, elementAt( last ), order[ last ] );
+            siftDown( siftUp( slot ) );
+        }
+        elements[ last ] = null;
+        return removed;
+    }
+
+    /**
+     * Move the element in a slot up while it is less than its parent.
+     *
+     * @param slot where the element is
+     * @return where it ended up
+     */
+    private int siftUp( int slot ) {
+        E value = elementAt( slot );
+        long when = order[ slot ];
+        while ( slot > 0 ) {
+            int parent = ( slot - 1 ) / ARITY;
+            if ( !less( value, when, parent ) ) {
+                break;
+            }
+            set( slot, elementAt( parent ), order[ parent ] );
+            slot = parent;
+        }
+        set( slot, value, when );
+        return slot;
+    }
+
+    /**
+     * Move the element in a slot down while a child is less than it.
+     *
+     * @param slot where the element is
+     */
+    private void siftDown( int slot ) {
+        E value = elementAt( slot );
+        long when = order[ slot ];
+        while ( true ) {
+            int first = slot * ARITY + 1;
+            if ( first >= size ) {
+                break;
+            }
+            int least = first;
+            for ( int child = first + 1; child < Math.min( first + ARITY, size ); ++child ) {
+                if ( less( elementAt( child ), order[ child ], least ) ) {
+                    least = child;
+                }
+            }
+            if ( !less( elementAt( least ), order[ least ], value, when ) ) {
+                break;
+            }
+            set( slot, elementAt( least ), order[ least ] );
+            slot = least;
+        }
+        set( slot, value, when );
+    }
+
+    /**
+     * Does an element come out before the one in a slot?
+     *
+     * @param value the element
+     * @param when when it was added
+     * @param slot the slot to compare with
+     * @return true if value is less, or equal and older
+     */
+    private boolean less( E value, long when, int slot ) {
+        return less( value, when, elementAt( slot ), order[ slot ] );
+    }
+
+    /**
+     * Does one element come out before another?
+     *
+     * @param value the first element
+     * @param when when it was added
+     * @param other the second element
+     * @param otherWhen when it was added
+     * @param <E> the type of the elements
+     * @return true if value is less, or equal and older
+     */
+    private static < E extends Comparable< E > > boolean less(
+            E value, long when, E other, long otherWhen ) {
+        int byValue = value.compareTo( other );
+        return byValue < 0 || ( byValue == 0 && when < otherWhen );
+    }
+
+    /**
+     * Put an element in a slot and remember where it is.
+     *
+     * @param slot the slot
+     * @param value the element
+     * @param when when it was added
+     */
+    private void set( int slot, E value, long when ) {
+        elements[ slot ] = value;
+        order[ slot ] = when;
+        slots.put( value, slot );
+    }
+
+    /**
+     * Get the element in a slot.
+     *
+     * @param slot the slot
+     * @return the element
+     */
+    @SuppressWarnings( "unchecked" )
+    private E elementAt( int slot ) {
+        return (E) elements[ slot ];
+    }
+}
@@ -0,0 +1,330 @@
+package edu.rit.cs.grocerystore;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A queue whose contents outlive the process: every value put in, taken
+ * out, taken away or serviced is appended to a {@link QueueJournal}, and
+ * a queue opened on an existing journal starts out as the last one left
+ * off. It wraps any other queue, which does the queueing.
+ * <p>
+ * On opening, the journal is replayed. Values that had been serviced
+ * are rebuilt, with their queue and service times, and handed to a
+ * consumer such as {@link WaitStatistics#record(TimedObject)}, so the
+ * timings collected before a crash are not lost. Values that had been
+ * taken out but not serviced go back in first, since they were at the
+ * front of the line, and then the values still in line, in the order
+ * they went in. Their queue times start over.
+ * <p>
+ * Records are appended after the wrapped queue has done its part, so a
+ * value taken out can appear in the journal before it was put in; the
+ * replay allows for that. The queue must have room for every recovered
+ * value. Values are told apart by the key a {@link TimedCodec} gives them,
+ * which must be unique among all the values ever journaled.
+ *
+ * @param <E> the type of elements in the queue
+ * @author RIT CS
+ */
+public class JournaledTSQueue< E extends TimedObject > implements TSQueue< E > {
+
+    /** Record kind: a value went in; no times */
+    private static final int ENQUEUED = 1;
+    /** Record kind: a value was taken out to be serviced; no times */
+    private static final int DEQUEUED = 2;
+    /** Record kind: a value was taken away without being serviced; no times */
+    private static final int REMOVED = 3;
+    /** Record kind: a value was serviced; its queue and service times */
+    private static final int SERVICED = 4;
+    /** Record kind: the journal was reopened; what was unfinished goes back in */
+    private static final int RESTARTED = 5;
+
+    /**
+     * Where a value stood in the journal, while it is replayed.
+     */
+    private enum State { WAITING, IN_SERVICE, DONE }
+
+    /** The queue that does the queueing */
+    private final TSQueue< E > queue;
+    /** How values are written */
+    private final TimedCodec< E > codec;
+    /** The directory of the journal */
+    private final Path directory;
+    /** Where everything is appended */
+    private final QueueJournal journal;
+    /** The keys of every value in the journal when it was opened */
+    private final Set< Long > recoveredKeys;
+    /** The number of serviced values recovered from the journal */
+    private final int recoveredServiced;
+    /** The number of unfinished values put back in the queue */
+    private final int recoveredUnfinished;
+
+    /**
+     * Journal a queue, replaying the journal if there is one.
+     *
+     * @param queue the queue that does the queueing; it should be empty
+     * @param directory the journal's directory; it is created if need be
+     * @param codec how values are written
+     * @param serviced what to give each value that had been serviced
+     * @throws java.io.UncheckedIOException if the journal cannot be read
+     * or written
+     */
+    public JournaledTSQueue( TSQueue< E > queue, Path directory, TimedCodec< E > codec,
+                             Consumer< ? super E > serviced ) {
+        this.queue = queue;
+        this.codec = codec;
+        this.directory = directory;
+
+        /*
+         * Follow each value through the journal. Its payload is in every
+         * record, so a value first seen taken out can still be made again.
+         */
+        Map< Long, State > states = new HashMap<>();
+        Map< Long, Integer > unfinished = new LinkedHashMap<>();
+        List< E > done = new ArrayList<>();
+        QueueJournal.replay( directory, ( kind, key, payload, first, second ) -> {
+            switch ( kind ) {
+                case ENQUEUED -> {
+                    if ( states.putIfAbsent( key, State.WAITING ) == null ) {
+                        unfinished.put( key, payload );
+                    }
+                }
+                case DEQUEUED -> {
+                    if ( states.put( key, State.IN_SERVICE ) != State.DONE ) {
+                        unfinished.putIfAbsent( key, payload );
+                    }
+                    else {
+                        states.put( key, State.DONE );
+                    }
+                }
+                case REMOVED -> {
+                    states.put( key, State.DONE );
+                    unfinished.remove( key );
+                }
+                case SERVICED -> {
+                    states.put( key, State.DONE );
+                    unfinished.remove( key );
+                    done.add( rebuild( key, payload, first, second ) );
+                }
+                case RESTARTED -> restart( states, unfinished );
+                default -> throw new IllegalStateException( "record kind " + kind );
+            }
+        } );
+        this.recoveredKeys = Collections.unmodifiableSet( states.keySet() );
+        this.recoveredServiced = done.size();
+        this.recoveredUnfinished = unfinished.size();
+        done.forEach( serviced );
+
+        /*
+         * The restart record stands for putting the unfinished values back
+         * in, so they need no records of their own, and a crash before
+         * they are all back in loses none of them.
+         */
+        this.journal = new QueueJournal( directory );
+        if ( !states.isEmpty() ) {
+            journal.append( RESTARTED, 0, 0, 0, 0 );
+            restart( states, unfinished );
+        }
+        List< E > again = new ArrayList<>();
+        unfinished.forEach( ( key, payload ) ->
+                again.add( codec.rebuild( key, payload, Clock.MONOTONIC ) ) );
+        if ( !again.isEmpty() ) {
+            queue.enqueueAll( again );
+        }
+    }
+
+    @Override
+    public int enqueue( E value ) {
+        int size = queue.enqueue( value );
+        append( ENQUEUED, value );
+        return size;
+    }
+
+    @Override
+    public int offer( E value, long timeout, TimeUnit unit ) {
+        int size = queue.offer( value, timeout, unit );
+        if ( size != 0 ) {
+            append( ENQUEUED, value );
+        }
+        return size;
+    }
+
+    @Override
+    public int enqueueAll( Collection< ? extends E > values ) {
+        int size = queue.enqueueAll( values );
+        values.forEach( value -> append( ENQUEUED, value ) );
+        return size;
+    }
+
+    @Override
+    public E dequeue() {
+        E value = queue.dequeue();
+        if ( value != null ) {
+            append( DEQUEUED, value );
+        }
+        return value;
+    }
+
+    @Override
+    public E poll( long timeout, TimeUnit unit ) {
+        E value = queue.poll( timeout, unit );
+        if ( value != null ) {
+            append( DEQUEUED, value );
+        }
+        return value;
+    }
+
+    @Override
+    public int drainTo( Collection< ? super E > sink, int max ) {
+        List< E > taken = new ArrayList<>();
+        queue.drainTo( taken, max );
+        return taken( taken, sink );
+    }
+
+    @Override
+    public int drainTo( Collection< ? super E > sink, int max,
+                        long timeout, TimeUnit unit ) {
+        List< E > taken = new ArrayList<>();
+        queue.drainTo( taken, max, timeout, unit );
+        return taken( taken, sink );
+    }
+
+    @Override
+    public boolean remove( E value ) {
+        boolean removed = queue.remove( value );
+        if ( removed ) {
+            append( REMOVED, value );
+        }
+        return removed;
+    }
+
+    /**
+     * Journal the value's queue and service times, so that it is not
+     * put back in the queue if the journal is replayed.
+     *
+     * @param value a value that was dequeued from this queue
+     */
+    @Override
+    public void serviced( E value ) {
+        journal.append( SERVICED, codec.key( value ), codec.payload( value ),
+                        value.getInQueueNanos(), value.getServiceNanos() );
+        queue.serviced( value );
+    }
+
+    @Override
+    public void close() { queue.close(); }
+
+    @Override
+    public boolean isClosed() { return queue.isClosed(); }
+
+    /**
+     * What was in the journal when the queue was opened?
+     *
+     * @return the keys of every value it had a record of
+     */
+    public Set< Long > getRecoveredKeys() { return recoveredKeys; }
+
+    /** @return how many serviced values were recovered from the journal */
+    public int getRecoveredServiced() { return recoveredServiced; }
+
+    /** @return how many unfinished values were put back in the queue */
+    public int getRecoveredUnfinished() { return recoveredUnfinished; }
+
+    /** @return how many records have been appended since the queue was opened */
+    public long getAppended() { return journal.getAppended(); }
+
+    /**
+     * Commit everything journaled so far to the disk now, rather than at
+     * the next group commit.
+     */
+    public void sync() { journal.sync(); }
+
+    /**
+     * Stop journaling, committing what is left. The queue cannot be
+     * changed afterwards. The journal stays, to be replayed.
+     */
+    public void closeJournal() { journal.close(); }
+
+    /**
+     * Stop journaling and delete the journal, once every value has been
+     * serviced and there is nothing left to recover.
+     */
+    public void deleteJournal() {
+        journal.close();
+        QueueJournal.delete( directory );
+    }
+
+    /**
+     * Journal the values taken out and pass them on.
+     *
+     * @param taken the values, in order
+     * @param sink where the caller wants them
+     * @return how many there were
+     */
+    private int taken( List< E > taken, Collection< ? super E > sink ) {
+        taken.forEach( value -> append( DEQUEUED, value ) );
+        sink.addAll( taken );
+        return taken.size();
+    }
+
+    /**
+     * Journal something that happened to a value, without times.
+     *
+     * @param kind what happened
+     * @param value the value
+     */
+    private void append( int kind, E value ) {
+        journal.append( kind, codec.key( value ), codec.payload( value ), 0, 0 );
+    }
+
+    /**
+     * Put the unfinished values back in line, as a restart does: those
+     * that were being serviced first, then those still waiting, in order.
+     *
+     * @param states where each value stood
+     * @param unfinished the payloads of the unfinished values, in the
+     *                   order they went in; reordered
+     */
+    private static void restart( Map< Long, State > states, Map< Long, Integer > unfinished ) {
+        Map< Long, Integer > inLine = new LinkedHashMap<>();
+        for ( State wanted : new State[]{ State.IN_SERVICE, State.WAITING } ) {
+            unfinished.forEach( ( key, payload ) -> {
+                if ( states.get( key ) == wanted ) {
+                    inLine.put( key, payload );
+                }
+            } );
+        }
+        unfinished.clear();
+        unfinished.putAll( inLine );
+        inLine.keySet().forEach( key -> states.put( key, State.WAITING ) );
+    }
+
+    /**
+     * Make a serviced value again, with its times.
+     *
+     * @param key its key
+     * @param payload what it holds besides its key
+     * @param queueNanos how long it was in the queue
+     * @param serviceNanos how long it took to service
+     * @return the value
+     */
+    private E rebuild( long key, int payload, long queueNanos, long serviceNanos ) {
+        ManualClock clock = new ManualClock();
+        E value = codec.rebuild( key, payload, clock );
+        value.enterQueue();
+        clock.advance( queueNanos );
+        value.exitQueue();
+        clock.advance( serviceNanos );
+        value.servicingDone();
+        return value;
+    }
+}
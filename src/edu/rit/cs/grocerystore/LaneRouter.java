@@ -0,0 +1,325 @@
+package edu.rit.cs.grocerystore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.ToLongFunction;
+
+/**
+ * Checkout lanes with a routing rule in front of them. Every lane is a
+ * TSQueue of its own, of any kind, served by its own clerk through
+ * {@link #lane(int)}; unlike {@link CheckoutLanes}, clerks never take
+ * carts from each other's lanes. Arriving customers are sent to a lane
+ * by a {@link Rule}, which looks at how much work is already waiting in
+ * each lane: the sum of the expected service times of the values in it.
+ * <p>
+ * The router itself can also be taken from, as by a clerk who serves
+ * every lane: values come from the lane with the most work waiting, and
+ * a taker who finds every lane empty waits for a value to arrive in any
+ * of them.
+ *
+ * @param <E> The type of elements that will be in the lanes
+ * @author RIT CS
+ */
+public class LaneRouter< E extends TimedObject > implements TSQueue< E > {
+
+    /**
+     * How an arriving customer is sent to a lane.
+     */
+    public enum Rule {
+        /** Join the lane with the least expected work waiting in it */
+        LEAST_WORK( "LeastWork" ),
+        /**
+         * Lane 0 is an express lane, for small values only. Small values
+         * join whichever lane has the least work; others join the regular
+         * lane with the least work.
+         */
+        EXPRESS( "Express" );
+
+        /** The name used on the command line */
+        private final String argName;
+
+        Rule( String argName ) { this.argName = argName; }
+
+        /**
+         * Find the rule with the given command line name.
+         *
+         * @param argName the name used on the command line
+         * @return the matching rule
+         * @throws IllegalArgumentException if no rule has that name
+         */
+        public static Rule fromArg( String argName ) {
+            for ( Rule rule : values() ) {
+                if ( rule.argName.equals( argName ) ) {
+                    return rule;
+                }
+            }
+            throw new IllegalArgumentException( argName );
+        }
+
+        @Override
+        public String toString() { return argName; }
+    }
+
+    /** The lanes */
+    private final List< TSQueue< E > > lanes;
+    /** The expected work waiting in each lane, in the units of work */
+    private final AtomicLongArray laneWork;
+    /** How lanes are chosen */
+    private final Rule rule;
+    /** The expected service time of a value */
+    private final ToLongFunction< ? super E > work;
+    /** The most work a value may need to use the express lane */
+    private final long expressLimit;
+    /** Set once no more values may be added */
+    private volatile boolean closed;
+    /** What takers from the whole router wait on for a value to arrive */
+    private final Object arrival;
+    /** The number of takers from the whole router waiting on {@link #arrival} */
+    private final AtomicInteger waiters;
+
+    /**
+     * Put a router in front of some lanes.
+     *
+     * @param lanes the empty lanes; with {@link Rule#EXPRESS} there must
+     *              be at least two, and the first is the express lane
+     * @param rule how arriving values are sent to a lane
+     * @param work the expected service time of a value
+     * @param expressLimit the most work a value may need to use the
+     *                     express lane (ignored by other rules)
+     */
+    public LaneRouter( List< TSQueue< E > > lanes, Rule rule,
+                       ToLongFunction< ? super E > work, long expressLimit ) {
+        if ( lanes.isEmpty() || ( rule == Rule.EXPRESS && lanes.size() < 2 ) ) {
+            throw new IllegalArgumentException(
+                    rule + " routing needs more than " + lanes.size() + " lane(s)" );
+        }
+        this.lanes = List.copyOf( lanes );
+        this.laneWork = new AtomicLongArray( lanes.size() );
+        this.rule = rule;
+        this.work = work;
+        this.expressLimit = expressLimit;
+        this.arrival = new Object();
+        this.waiters = new AtomicInteger();
+    }
+
+    /**
+     * How many lanes are there?
+     *
+     * @return the number of lanes given to the constructor
+     */
+    public int numLanes() { return lanes.size(); }
+
+    /**
+     * Is a lane reserved for small values?
+     *
+     * @param laneNum which lane, from 0 to {@link #numLanes()}-1
+     * @return true if it is the express lane
+     */
+    public boolean isExpress( int laneNum ) {
+        return rule == Rule.EXPRESS && laneNum == 0;
+    }
+
+    /**
+     * Get the view of one lane that its clerk uses. Values enqueued or
+     * taken through the view go directly in or out of that lane.
+     *
+     * @param laneNum which lane, from 0 to {@link #numLanes()}-1
+     * @return the lane's view
+     */
+    public TSQueue< E > lane( int laneNum ) {
+        TSQueue< E > lane = lanes.get( laneNum );
+        return new TSQueue<>() {
+            @Override
+            public int enqueue( E value ) { return put( laneNum, value ); }
+            @Override
+            public E dequeue() { return finished( laneNum, lane.dequeue() ); }
+            @Override
+            public int drainTo( Collection< ? super E > sink, int max ) {
+                List< E > taken = new ArrayList<>();
+                lane.drainTo( taken, max );
+                return finished( laneNum, taken, sink );
+            }
+            @Override
+            public int drainTo( Collection< ? super E > sink, int max,
+                                long timeout, TimeUnit unit ) {
+                List< E > taken = new ArrayList<>();
+                lane.drainTo( taken, max, timeout, unit );
+                return finished( laneNum, taken, sink );
+            }
+            @Override
+            public void close() { LaneRouter.this.close(); }
+            @Override
+            public boolean isClosed() { return closed; }
+        };
+    }
+
+    /**
+     * Puts the value in the lane chosen by the rule, and calls
+     * TimedObject.enterQueue() on the value.
+     *
+     * @param value the value to be enqueued
+     * @return the size of the chosen lane after the value was added
+     */
+    @Override
+    public int enqueue( E value ) {
+        int first = rule == Rule.EXPRESS &&
+                    work.applyAsLong( value ) > expressLimit ? 1 : 0;
+        int best = first;
+        for ( int i = first + 1; i < lanes.size(); ++i ) {
+            if ( laneWork.get( i ) < laneWork.get( best ) ) {
+                best = i;
+            }
+        }
+        return put( best, value );
+    }
+
+    /**
+     * Removes a value from the lane with the most work waiting, blocking
+     * while every lane is empty.
+     *
+     * @return the value, or null if the lanes are closed and empty
+     */
+    @Override
+    public E dequeue() {
+        List< E > taken = new ArrayList<>( 1 );
+        return drainTo( taken, 1, Long.MAX_VALUE, TimeUnit.NANOSECONDS ) == 1 ?
+               taken.get( 0 ) : null;
+    }
+
+    /**
+     * Removes up to max values from the lanes without blocking, taking
+     * from the lanes with the most work waiting first.
+     *
+     * @param sink where the removed values are added
+     * @param max the most values to remove
+     * @return the number of values removed
+     */
+    @Override
+    public int drainTo( Collection< ? super E > sink, int max ) {
+        int count = 0;
+        boolean[] tried = new boolean[ lanes.size() ];
+        for ( int n = 0; n < lanes.size() && count < max; ++n ) {
+            int busiest = -1;
+            for ( int i = 0; i < lanes.size(); ++i ) {
+                if ( !tried[ i ] && ( busiest < 0 ||
+                                      laneWork.get( i ) > laneWork.get( busiest ) ) ) {
+                    busiest = i;
+                }
+            }
+            tried[ busiest ] = true;
+            count += lane( busiest ).drainTo( sink, max - count );
+        }
+        return count;
+    }
+
+    /**
+     * Like {@link #drainTo(Collection, int)}, but if every lane is empty,
+     * waits up to the given time for a value to arrive in any of them.
+     *
+     * @param sink where the removed values are added
+     * @param max the most values to remove
+     * @param timeout how long to wait for the first value
+     * @param unit the unit of timeout
+     * @return the number of values removed, 0 if the time ran out or the
+     * lanes are closed and empty
+     */
+    @Override
+    public int drainTo( Collection< ? super E > sink, int max,
+                        long timeout, TimeUnit unit ) {
+        int count = drainTo( sink, max );
+        if ( count > 0 || closed || timeout <= 0 ) {
+            return count;
+        }
+        long nanos = unit.toNanos( timeout );
+        long deadline = System.nanoTime() + nanos;
+        synchronized ( arrival ) {
+            // Counted before looking, so that a value put in after the
+            // look is sure to be followed by a wake-up.
+            waiters.incrementAndGet();
+            try {
+                while ( ( count = drainTo( sink, max ) ) == 0 && !closed && nanos > 0 ) {
+                    TimeUnit.NANOSECONDS.timedWait( arrival, nanos );
+                    nanos = deadline - System.nanoTime();
+                }
+            }
+            catch( InterruptedException e ) {
+                throw new RuntimeException( e );
+            }
+            finally {
+                waiters.decrementAndGet();
+            }
+        }
+        // Closed while waiting: whatever arrived before is still there.
+        return count > 0 ? count : drainTo( sink, max );
+    }
+
+    /**
+     * Closes every lane. Each clerk takes what is left in its own lane and
+     * then gets null, as does anyone waiting on the whole router.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for ( TSQueue< E > lane : lanes ) {
+            lane.close();
+        }
+        synchronized ( arrival ) {
+            arrival.notifyAll();
+        }
+    }
+
+    @Override
+    public boolean isClosed() { return closed; }
+
+    /**
+     * Put a value in a given lane and add its work to the lane's.
+     *
+     * @param laneNum the lane
+     * @param value the value
+     * @return the size of the lane after the value was added
+     */
+    private int put( int laneNum, E value ) {
+        laneWork.addAndGet( laneNum, work.applyAsLong( value ) );
+        int size = lanes.get( laneNum ).enqueue( value );
+        if ( waiters.get() > 0 ) {
+            synchronized ( arrival ) {
+                arrival.notifyAll();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Take a value's work off its lane once a clerk has it.
+     *
+     * @param laneNum the lane
+     * @param value the value taken from the lane, or null if there was none
+     * @return value
+     */
+    private E finished( int laneNum, E value ) {
+        if ( value != null ) {
+            laneWork.addAndGet( laneNum, -work.applyAsLong( value ) );
+        }
+        return value;
+    }
+
+    /**
+     * Take the work of several values off their lane and pass them on.
+     *
+     * @param laneNum the lane
+     * @param taken the values taken from the lane
+     * @param sink where the values go
+     * @return the number of values
+     */
+    private int finished( int laneNum, List< E > taken,
+                          Collection< ? super E > sink ) {
+        for ( E value : taken ) {
+            sink.add( finished( laneNum, value ) );
+        }
+        return taken.size();
+    }
+}
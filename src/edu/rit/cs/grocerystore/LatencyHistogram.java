@@ -0,0 +1,164 @@
+package edu.rit.cs.grocerystore;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size histogram of non-negative durations, in the style of
+ * HdrHistogram. Values below 2^{@value #SUB_BUCKET_BITS} nanoseconds get
+ * a bucket each; above that, every power-of-two range is split into
+ * 2^({@value #SUB_BUCKET_BITS}-1) equal buckets. Any recorded value is
+ * therefore known to within 1%, and the histogram takes the same
+ * memory (about 58 KB) no matter how many values are recorded.
+ * <p>
+ * Recording is thread-safe and lock-free, so many clerks can record
+ * into the same histogram. Reading while others record gives a
+ * consistent-enough snapshot for reporting.
+ *
+ * @author RIT CS
+ */
+public class LatencyHistogram {
+
+    /** log2 of the number of buckets in the first, exact range */
+    private static final int SUB_BUCKET_BITS = 8;
+
+    /** Buckets per power-of-two range above the exact range */
+    private static final int HALF_COUNT = 1 << ( SUB_BUCKET_BITS - 1 );
+
+    /** Total number of buckets, enough for any non-negative long */
+    private static final int NUM_BUCKETS = ( 65 - SUB_BUCKET_BITS ) * HALF_COUNT;
+
+    /** Nanoseconds per millisecond, for reporting values in msec. */
+    private static final double NANOS_PER_MSEC = 1_000_000.0;
+
+    /** How many values fell in each bucket */
+    private final AtomicLongArray counts;
+    /** How many values were recorded */
+    private final LongAdder totalCount;
+    /** The sum of all values recorded, for an exact mean */
+    private final LongAdder totalSum;
+    /** The largest value recorded */
+    private final AtomicLong max;
+
+    /** Create an empty histogram */
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray( NUM_BUCKETS );
+        this.totalCount = new LongAdder();
+        this.totalSum = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Add a value to the histogram. Negative values (which a clock that
+     * is not monotonic can produce) are recorded as 0.
+     *
+     * @param nanos the duration, in nanoseconds
+     */
+    public void record( long nanos ) {
+        long value = Math.max( 0, nanos );
+        counts.incrementAndGet( bucketOf( value ) );
+        totalCount.increment();
+        totalSum.add( value );
+        max.accumulateAndGet( value, Math::max );
+    }
+
+    /**
+     * Add everything recorded in another histogram to this one.
+     *
+     * @param other the histogram to merge in; it is not changed
+     */
+    public void add( LatencyHistogram other ) {
+        for ( int i = 0; i < NUM_BUCKETS; ++i ) {
+            long count = other.counts.get( i );
+            if ( count != 0 ) {
+                counts.addAndGet( i, count );
+            }
+        }
+        totalCount.add( other.totalCount.sum() );
+        totalSum.add( other.totalSum.sum() );
+        max.accumulateAndGet( other.max.get(), Math::max );
+    }
+
+    /**
+     * How many values have been recorded?
+     *
+     * @return the number of calls to {@link #record(long)}
+     */
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    /**
+     * What is the exact mean of the recorded values?
+     *
+     * @return the mean in msec., or 0 if nothing was recorded
+     */
+    public double getMean() {
+        long count = totalCount.sum();
+        return count == 0 ? 0 : totalSum.sum() / NANOS_PER_MSEC / count;
+    }
+
+    /**
+     * What is the largest recorded value?
+     *
+     * @return the maximum in msec., or 0 if nothing was recorded
+     */
+    public double getMax() {
+        return max.get() / NANOS_PER_MSEC;
+    }
+
+    /**
+     * Find the value that the given percentage of recorded values are at
+     * or below. The answer is the top of the bucket that holds it, so it
+     * may be up to 1% higher than the true value, but never above the
+     * maximum.
+     *
+     * @param percentile a percentage from 0 to 100
+     * @return the value at that percentile in msec., or 0 if nothing was recorded
+     */
+    public double getValueAtPercentile( double percentile ) {
+        long count = totalCount.sum();
+        if ( count == 0 ) {
+            return 0;
+        }
+        long rank = Math.max( 1, (long) Math.ceil( percentile / 100.0 * count ) );
+        long seen = 0;
+        for ( int i = 0; i < NUM_BUCKETS; ++i ) {
+            seen += counts.get( i );
+            if ( seen >= rank ) {
+                return Math.min( highestIn( i ), max.get() ) / NANOS_PER_MSEC;
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Find the bucket a value belongs in.
+     *
+     * @param value a non-negative value
+     * @return the bucket's index
+     */
+    private static int bucketOf( long value ) {
+        int shift = 64 - Long.numberOfLeadingZeros( value ) - SUB_BUCKET_BITS;
+        if ( shift <= 0 ) {
+            return (int) value;
+        }
+        return shift * HALF_COUNT + (int) ( value >>> shift );
+    }
+
+    /**
+     * Find the largest value that belongs in a bucket.
+     *
+     * @param bucket the bucket's index
+     * @return the top of the bucket's range
+     */
+    private static long highestIn( int bucket ) {
+        if ( bucket < 2 * HALF_COUNT ) {
+            return bucket;
+        }
+        int shift = bucket / HALF_COUNT - 1;
+        long sub = bucket - (long) shift * HALF_COUNT;
+        return ( ( sub + 1 ) << shift ) - 1;
+    }
+}
@@ -0,0 +1,305 @@
+package edu.rit.cs.grocerystore;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A first-in-first-out TSQueue that never takes a lock. It is a
+ * Michael-Scott linked queue: producers append with a compare-and-set
+ * on the last node, and consumers advance the head with a
+ * compare-and-set. A consumer that finds the queue empty spins briefly
+ * and then parks in a {@link ParkingLot} until a producer wakes it.
+ *
+ * @param <E> The type of elements that will be in the queue
+ * @author RIT CS
+ */
+public class LockFreeTSQueue<E extends TimedObject> implements TSQueue<E> {
+
+    /**
+     * A link in the queue. The first node is always a dummy whose value
+     * has already been handed out.
+     *
+     * @param <E> The type of element held in the node
+     */
+    private static final class Node<E> {
+        /** The element, or null once it has been dequeued */
+        E value;
+        /** The next node, or null if this is the last node */
+        volatile Node<E> next;
+
+        Node( E value ) { this.value = value; }
+    }
+
+    /** Atomic access to {@link Node#next} without an extra object per node */
+    @SuppressWarnings( "rawtypes" )
+    private static final AtomicReferenceFieldUpdater< Node, Node > NEXT =
+            AtomicReferenceFieldUpdater.newUpdater( Node.class, Node.class, "next" );
+
+    /** The dummy node in front of the oldest element */
+    private final AtomicReference< Node<E> > head;
+    /** The last node, or (briefly) the one just before it */
+    private final AtomicReference< Node<E> > tail;
+    /** The number of elements enqueued and not yet dequeued */
+    private final AtomicInteger size;
+    /** Where consumers wait while the queue is empty */
+    private final ParkingLot waiters;
+    /** Set once no more values may be added */
+    private volatile boolean closed;
+
+    /** Initialize an empty queue */
+    public LockFreeTSQueue() {
+        Node<E> dummy = new Node<>( null );
+        this.head = new AtomicReference<>( dummy );
+        this.tail = new AtomicReference<>( dummy );
+        this.size = new AtomicInteger();
+        this.waiters = new ParkingLot();
+    }
+
+    /**
+     * Puts the value at the end of the queue, and calls
+     * TimedObject.enterQueue() on the value before it becomes visible
+     * to consumers. Wakes up one parked consumer, if there is one.
+     *
+     * @param value the value to be enqueued
+     * @return the size of the queue after the value was added. Under
+     * contention this is a snapshot that may include other elements
+     * being added or removed at the same moment.
+     */
+    @Override
+    public int enqueue( E value ) {
+        if ( closed ) {
+            throw new IllegalStateException( "queue is closed" );
+        }
+        value.enterQueue();
+        int newSize = size.incrementAndGet();
+        Node<E> node = new Node<>( value );
+        append( node, node );
+        waiters.signalOne();
+        return newSize;
+    }
+
+    /**
+     * Puts all the values at the end of the queue, and calls
+     * TimedObject.enterQueue() on each of them. The values are first
+     * linked together privately, then added with a single
+     * compare-and-set, so they stay together in the queue.
+     *
+     * @param values the values to be enqueued
+     * @return the size of the queue after the values were added (a
+     * snapshot, as for {@link #enqueue(TimedObject)})
+     */
+    @Override
+    public int enqueueAll( Collection< ? extends E > values ) {
+        if ( closed ) {
+            throw new IllegalStateException( "queue is closed" );
+        }
+        Node<E> first = null;
+        Node<E> last = null;
+        for ( E value : values ) {
+            value.enterQueue();
+            Node<E> node = new Node<>( value );
+            if ( first == null ) {
+                first = node;
+            }
+            else {
+                last.next = node;
+            }
+            last = node;
+        }
+        if ( first == null ) {
+            return size.get();
+        }
+        int newSize = size.addAndGet( values.size() );
+        append( first, last );
+        waiters.signalOne();
+        return newSize;
+    }
+
+    /**
+     * Removes up to max values, oldest first, without blocking, and calls
+     * TimedObject.exitQueue() on each of them.
+     *
+     * @param sink where the removed values are added
+     * @param max the most values to remove
+     * @return the number of values removed
+     */
+    @Override
+    public int drainTo( Collection< ? super E > sink, int max ) {
+        int count = 0;
+        E removed;
+        while ( count < max && ( removed = tryDequeue() ) != null ) {
+            removed.exitQueue();
+            sink.add( removed );
+            ++count;
+        }
+        if ( count > 0 && !isEmpty() ) {
+            waiters.signalOne();
+        }
+        return count;
+    }
+
+    /**
+     * Removes up to max values, oldest first, and calls
+     * TimedObject.exitQueue() on each of them. If the queue is empty,
+     * spins and then parks for up to the given time waiting for one.
+     *
+     * @param sink where the removed values are added
+     * @param max the most values to remove
+     * @param timeout how long to wait for the first value
+     * @param unit the unit of timeout
+     * @return the number of values removed, 0 if the time ran out or the
+     * queue is closed and empty
+     */
+    @Override
+    public int drainTo( Collection< ? super E > sink, int max,
+                        long timeout, TimeUnit unit ) {
+        long deadline = System.nanoTime() + unit.toNanos( timeout );
+        int spins = 0;
+        int count = drainTo( sink, max );
+        while ( count == 0 && max > 0 ) {
+            if ( closed ) {
+                return drainTo( sink, max );
+            }
+            long remaining = deadline - System.nanoTime();
+            if ( remaining <= 0 ) {
+                return 0;
+            }
+            if ( spins < ParkingLot.SPIN_LIMIT ) {
+                ++spins;
+                Thread.onSpinWait();
+            }
+            else {
+                waiters.awaitNanos( this::mustWait, remaining );
+            }
+            count = drainTo( sink, max );
+        }
+        return count;
+    }
+
+    /**
+     * Link a chain of nodes onto the end of the queue.
+     *
+     * @param first the first node of the chain
+     * @param last the last node of the chain, whose next is null
+     */
+    private void append( Node<E> first, Node<E> last ) {
+        while ( true ) {
+            Node<E> end = tail.get();
+            Node<E> next = end.next;
+            if ( end == tail.get() ) {
+                if ( next == null ) {
+                    if ( NEXT.compareAndSet( end, null, first ) ) {
+                        tail.compareAndSet( end, last );
+                        return;
+                    }
+                }
+                else {
+                    // Another producer linked a node but has not moved tail yet.
+                    tail.compareAndSet( end, next );
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest value from the queue and calls
+     * TimedObject.exitQueue() on the value. If the queue is empty, the
+     * calling thread spins for a short time and then parks until an
+     * element arrives or the queue is closed.
+     *
+     * @return the value that has been in the queue for the longest period
+     * of time, or null if the queue is closed and empty
+     */
+    @Override
+    public E dequeue() {
+        int spins = 0;
+        E removed = tryDequeue();
+        while ( removed == null ) {
+            if ( closed ) {
+                // Nothing more is coming; take anything added before the close.
+                removed = tryDequeue();
+                if ( removed == null ) {
+                    return null;
+                }
+                break;
+            }
+            if ( spins < ParkingLot.SPIN_LIMIT ) {
+                ++spins;
+                Thread.onSpinWait();
+            }
+            else {
+                waiters.await( this::mustWait );
+            }
+            removed = tryDequeue();
+        }
+        if ( !isEmpty() ) {
+            waiters.signalOne();
+        }
+        removed.exitQueue();
+        return removed;
+    }
+
+    /**
+     * Remove the oldest element without blocking.
+     *
+     * @return the oldest element, or null if the queue is empty
+     */
+    private E tryDequeue() {
+        while ( true ) {
+            Node<E> first = head.get();
+            Node<E> last = tail.get();
+            Node<E> next = first.next;
+            if ( first == head.get() ) {
+                if ( next == null ) {
+                    return null;
+                }
+                if ( first == last ) {
+                    // Help a producer that has not moved tail yet.
+                    tail.compareAndSet( last, next );
+                }
+                else {
+                    E value = next.value;
+                    if ( head.compareAndSet( first, next ) ) {
+                        next.value = null;
+                        size.decrementAndGet();
+                        return value;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the queue and wakes every parked consumer. Consumers take
+     * what is left and then get null.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        waiters.signalAll();
+    }
+
+    @Override
+    public boolean isClosed() { return closed; }
+
+    /**
+     * Does a consumer that found nothing to take have to wait?
+     *
+     * @return true if the queue is empty and not closed
+     */
+    private boolean mustWait() {
+        return isEmpty() && !closed;
+    }
+
+    /**
+     * Is there nothing for a consumer to take right now?
+     *
+     * @return true if the queue has no elements
+     */
+    private boolean isEmpty() {
+        return head.get().next == null;
+    }
+}
@@ -0,0 +1,51 @@
+package edu.rit.cs.grocerystore;
+
+import java.util.SplittableRandom;
+
+/**
+ * The log-normal distribution: a number whose logarithm is normally
+ * distributed. Its long right tail suits cart sizes, where most carts
+ * are small but a few are very large.
+ * <p>
+ * The normal numbers come from the generator's own nextGaussian(), which
+ * uses a table-driven ziggurat method rather than computing a logarithm
+ * and square root for every sample.
+ *
+ * @author RIT CS
+ */
+public class LogNormalDistribution implements Distribution {
+
+    /** The mean of the logarithm */
+    private final double mu;
+    /** The standard deviation of the logarithm */
+    private final double sigma;
+    /** The mean */
+    private final double mean;
+
+    /**
+     * Make a log-normal distribution.
+     *
+     * @param mean the mean of the distribution
+     * @param sigma the standard deviation of its logarithm, at least 0
+     * @throws IllegalArgumentException if sigma is negative
+     */
+    public LogNormalDistribution( double mean, double sigma ) {
+        if ( sigma < 0 ) {
+            throw new IllegalArgumentException( LOG_NORMAL + ':' + sigma );
+        }
+        this.mu = Math.log( mean ) - sigma * sigma / 2;
+        this.sigma = sigma;
+        this.mean = mean;
+    }
+
+    @Override
+    public double sample( SplittableRandom random ) {
+        return Math.exp( mu + sigma * random.nextGaussian() );
+    }
+
+    @Override
+    public double getMean() { return mean; }
+
+    @Override
+    public String toString() { return LOG_NORMAL + ':' + sigma; }
+}
@@ -0,0 +1,44 @@
+package edu.rit.cs.grocerystore;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A clock for tests that only moves when it is told to, so that times
+ * recorded in a {@link TimedObject} are exactly predictable. It is safe
+ * to read and advance from different threads. It starts at time 0.
+ *
+ * @author RIT CS
+ */
+public class ManualClock implements Clock {
+
+    /** The current time, in nanoseconds */
+    private final AtomicLong now;
+
+    /** Create a clock that reads 0 */
+    public ManualClock() {
+        this.now = new AtomicLong();
+    }
+
+    /**
+     * Move the clock forward.
+     *
+     * @param nanos how many nanoseconds to add to the current time
+     * @throws IllegalArgumentException if nanos is negative
+     */
+    public void advance( long nanos ) {
+        if ( nanos < 0 ) {
+            throw new IllegalArgumentException( "advance: " + nanos );
+        }
+        now.addAndGet( nanos );
+    }
+
+    /**
+     * What time is it?
+     *
+     * @return the total of all advances, in nanoseconds
+     */
+    @Override
+    public long nanoTime() {
+        return now.get();
+    }
+}
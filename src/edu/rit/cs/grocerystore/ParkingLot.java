@@ -0,0 +1,86 @@
+package edu.rit.cs.grocerystore;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A lock-free place for consumer threads to park while a lock-free
+ * queue is empty. Producers wake at most one parked thread per call
+ * to {@link #signalOne()}, and pay only a volatile read when nobody
+ * is parked.
+ * <p>
+ * To avoid lost wake-ups, a waiter registers itself before it checks
+ * the queue one last time, and a consumer that takes an element while
+ * more remain passes the signal on to the next parked thread.
+ *
+ * @author RIT CS
+ */
+class ParkingLot {
+
+    /** How many times a consumer re-checks the queue before parking */
+    static final int SPIN_LIMIT = 64;
+
+    /** The threads currently parked, in arrival order */
+    private final ConcurrentLinkedQueue< Thread > parked =
+            new ConcurrentLinkedQueue<>();
+
+    /**
+     * Park the current thread until it is signaled, unless the queue
+     * stops being empty (or is closed) while the thread registers itself.
+     * Callers must re-try their operation afterwards, since a wake-up
+     * does not guarantee that an element is still available.
+     *
+     * @param isEmpty tells whether the queue is still empty
+     */
+    void await( BooleanSupplier isEmpty ) {
+        awaitNanos( isEmpty, 0 );
+    }
+
+    /**
+     * Like {@link #await(BooleanSupplier)}, but give up after a time.
+     *
+     * @param isEmpty tells whether the queue is still empty
+     * @param nanos the longest time to stay parked, or 0 for no limit
+     */
+    void awaitNanos( BooleanSupplier isEmpty, long nanos ) {
+        Thread me = Thread.currentThread();
+        parked.add( me );
+        if ( isEmpty.getAsBoolean() ) {
+            if ( nanos > 0 ) {
+                LockSupport.parkNanos( this, nanos );
+            }
+            else {
+                LockSupport.park( this );
+            }
+        }
+        parked.remove( me );
+        if ( Thread.interrupted() ) {
+            throw new RuntimeException( new InterruptedException() );
+        }
+    }
+
+    /**
+     * Wake up every parked thread, as when the queue is closed. A thread
+     * that registers after this is called must find that it need not
+     * wait.
+     */
+    void signalAll() {
+        Thread waiter;
+        while ( ( waiter = parked.poll() ) != null ) {
+            LockSupport.unpark( waiter );
+        }
+    }
+
+    /**
+     * Wake up the longest-parked thread, if any.
+     */
+    void signalOne() {
+        if ( !parked.isEmpty() ) {
+            Thread waiter = parked.poll();
+            if ( waiter != null ) {
+                LockSupport.unpark( waiter );
+            }
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package edu.rit.cs.grocerystore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measure the throughput and latency of every TSQueue implementation
+ * with several producer:consumer thread ratios: 1:1, 5:2 (the same as
+ * {@link TestQueues}) and N:N, where N is half the available processors.
+ * Payloads are small comparable integers, like TestQueues' TimedInteger.
+ * <p>
+ * Each combination runs a number of warm-up iterations, whose results are
+ * thrown away, and then measured iterations. An iteration runs for a
+ * fixed time with producers enqueuing as fast as they can and consumers
+ * dequeuing as fast as they can, though producers pause if the backlog
+ * grows too large. Reported are the dequeue throughput,
+ * the latency of the enqueue call, and the time an element spends in
+ * the queue (from enterQueue() to exitQueue()).
+ * <p>
+ * A kind named {@value #JOURNALED} followed by another kind, such as
+ * JournaledFIFO, is that kind wrapped in a {@link JournaledTSQueue} with
+ * a journal in a temporary directory, to measure what durability costs.
+ * The kind {@value GroceryLine#REMOTE_Q} is a FIFO queue served by a
+ * {@link CheckoutServer} in this process, which every producer and
+ * consumer uses over one localhost connection, to measure what a network
+ * round trip costs.
+ *
+ * @author RIT CS
+ */
+public class QueueBenchmark {
+
+    /** Prefix of a queue kind that is to be journaled */
+    public static final String JOURNALED = "Journaled";
+
+    /** Time enqueue calls on every this many elements */
+    private static final int SAMPLE_EVERY = 16;
+
+    /**
+     * Producers pause when this many more elements have been enqueued
+     * than dequeued, so that a fast producer cannot fill the heap.
+     */
+    private static final long MAX_BACKLOG = 10_000;
+
+    /** Producers check the backlog every this many elements */
+    private static final int BACKLOG_CHECK_EVERY = 1024;
+
+    /**
+     * Run the benchmarks.
+     *
+     * @param args Strings from the command line, all optional:
+     *             [0] msec. per iteration (default 1000);
+     *             [1] number of warm-up iterations (default 2);
+     *             [2] number of measured iterations (default 3);
+     *             [3...] queue kinds to run (default all of them)
+     */
+    public static void main( String[] args ) {
+        try {
+            long iterationMillis = args.length > 0 ? Long.parseLong( args[ 0 ] ) : 1000;
+            int warmups = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 2;
+            int iterations = args.length > 2 ? Integer.parseInt( args[ 2 ] ) : 3;
+            List< String > kinds = new ArrayList<>();
+            for ( int i = 3; i < args.length; ++i ) {
+                kinds.add( args[ i ] );
+            }
+            if ( kinds.isEmpty() ) {
+                kinds = List.of( GroceryLine.FIFO_Q, JOURNALED + GroceryLine.FIFO_Q,
+                                 GroceryLine.PRIO_Q,
+                                 GroceryLine.LOCKFREE_Q, GroceryLine.LANES_Q,
+                                 GroceryLine.SKIPLIST_Q, GroceryLine.RING_Q,
+                                 GroceryLine.HEAP_Q, GroceryLine.REMOTE_Q );
+            }
+            int n = Math.max( 1, Runtime.getRuntime().availableProcessors() / 2 );
+            int[][] ratios = { { 1, 1 }, { 5, 2 }, { n, n } };
+
+            System.out.printf( "%-14s %5s %12s %12s %12s %12s %12s%n",
+                               "queue", "P:C", "ops/sec", "enq p50 us",
+                               "enq p99 us", "inq p50 us", "inq p99 us" );
+            for ( String kind : kinds ) {
+                for ( int[] ratio : ratios ) {
+                    for ( int i = 0; i < warmups; ++i ) {
+                        runIteration( kind, ratio[ 0 ], ratio[ 1 ], iterationMillis );
+                    }
+                    Result total = new Result();
+                    for ( int i = 0; i < iterations; ++i ) {
+                        total.add( runIteration( kind, ratio[ 0 ], ratio[ 1 ],
+                                                 iterationMillis ) );
+                    }
+                    System.out.printf(
+                            "%-14s %5s %12.0f %12.3f %12.3f %12.3f %12.3f%n",
+                            kind, ratio[ 0 ] + ":" + ratio[ 1 ],
+                            total.operations * 1e9 / total.nanos,
+                            total.enqueueLatency.getValueAtPercentile( 50 ) * 1000,
+                            total.enqueueLatency.getValueAtPercentile( 99 ) * 1000,
+                            total.inQueue.getValueAtPercentile( 50 ) * 1000,
+                            total.inQueue.getValueAtPercentile( 99 ) * 1000 );
+                }
+            }
+        }
+        catch( IllegalArgumentException e ) {
+            System.err.println( e );
+            System.err.println(
+                    "Usage: java QueueBenchmark [msec-per-iteration [warmups " +
+                    "[iterations [queue-kind ...]]]]" );
+            System.exit( 1 );
+        }
+    }
+
+    /**
+     * What the producers put in the queue: an integer that can be timed
+     * and compared, so that it fits every kind of queue.
+     */
+    private static final class Payload extends TimedObject
+            implements Comparable< Payload > {
+        /** Writes payloads, told apart by producer and value */
+        static final TimedCodec< Payload > CODEC = new TimedCodec<>() {
+            @Override
+            public long key( Payload payload ) {
+                return (long) payload.producer << Integer.SIZE | payload.value;
+            }
+
+            @Override
+            public int payload( Payload payload ) { return payload.value; }
+
+            @Override
+            public Payload rebuild( long key, int value, Clock clock ) {
+                return new Payload( (int) ( key >>> Integer.SIZE ), value, clock );
+            }
+        };
+
+        /** The producer that made it */
+        private final int producer;
+        /** The value */
+        private final int value;
+
+        Payload( int producer, int value ) {
+            this( producer, value, Clock.MONOTONIC );
+        }
+
+        Payload( int producer, int value, Clock clock ) {
+            super( clock );
+            this.producer = producer;
+            this.value = value;
+        }
+
+        /** @return the value given to the constructor */
+        int get() { return value; }
+
+        @Override
+        public int compareTo( Payload other ) {
+            return Integer.compare( value, other.value );
+        }
+    }
+
+    /**
+     * The combined measurements of one or more iterations.
+     */
+    private static class Result {
+        /** Elements dequeued */
+        long operations;
+        /** Time taken */
+        long nanos;
+        /** Sampled durations of enqueue calls */
+        final LatencyHistogram enqueueLatency = new LatencyHistogram();
+        /** Time each dequeued element spent in the queue */
+        final LatencyHistogram inQueue = new LatencyHistogram();
+
+        /**
+         * Fold another iteration into this one.
+         *
+         * @param other the other iteration's result
+         */
+        void add( Result other ) {
+            operations += other.operations;
+            nanos += other.nanos;
+            enqueueLatency.add( other.enqueueLatency );
+            inQueue.add( other.inQueue );
+        }
+    }
+
+    /**
+     * Run producers and consumers against a fresh queue for a fixed time.
+     *
+     * @param kind the queue kind, as accepted by {@link GroceryLine#newQueue},
+     *             optionally after {@value #JOURNALED}, or
+     *             {@value GroceryLine#REMOTE_Q}
+     * @param producers the number of producer threads
+     * @param consumers the number of consumer threads
+     * @param millis how long the producers run
+     * @return the measurements
+     */
+    private static Result runIteration( String kind, int producers, int consumers,
+                                        long millis ) {
+        boolean journaled = kind.startsWith( JOURNALED );
+        CheckoutServer< Payload > server = null;
+        TSQueue< Payload > inMemory;
+        if ( kind.equals( GroceryLine.REMOTE_Q ) ) {
+            server = new CheckoutServer<>( new FIFOTSQueue<>(), Payload.CODEC,
+                                           new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) );
+            server.start();
+            inMemory = new RemoteTSQueue<>(
+                    new InetSocketAddress( InetAddress.getLoopbackAddress(), server.getPort() ),
+                    Payload.CODEC );
+        }
+        else {
+            inMemory = GroceryLine.newQueue(
+                    journaled ? kind.substring( JOURNALED.length() ) : kind,
+                    consumers, CheckoutLanes.Policy.ROUND_ROBIN );
+        }
+        Path journal = null;
+        if ( journaled ) {
+            if ( inMemory instanceof CheckoutLanes ) {
+                // Clerks' views of the lanes would go around the journal.
+                throw new IllegalArgumentException( kind );
+            }
+            try {
+                journal = Files.createTempDirectory( "benchmark" );
+            }
+            catch( IOException e ) {
+                throw new UncheckedIOException( e );
+            }
+        }
+        TSQueue< Payload > queue = journal == null ? inMemory :
+                new JournaledTSQueue<>( inMemory, journal, Payload.CODEC, item -> {} );
+        Result result = new Result();
+        LongAdder enqueued = new LongAdder();
+        LongAdder dequeued = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean( true );
+        CountDownLatch start = new CountDownLatch( 1 );
+        List< Thread > producerThreads = new ArrayList<>();
+        List< Thread > consumerThreads = new ArrayList<>();
+
+        for ( int i = 0; i < producers; ++i ) {
+            int producer = i;
+            producerThreads.add( new Thread( () -> {
+                await( start );
+                int count = 0;
+                while ( running.get() ) {
+                    Payload item = new Payload( producer, count );
+                    if ( ++count % SAMPLE_EVERY == 0 ) {
+                        long before = System.nanoTime();
+                        queue.enqueue( item );
+                        result.enqueueLatency.record( System.nanoTime() - before );
+                    }
+                    else {
+                        queue.enqueue( item );
+                    }
+                    if ( count % BACKLOG_CHECK_EVERY == 0 ) {
+                        enqueued.add( BACKLOG_CHECK_EVERY );
+                        while ( running.get() &&
+                                enqueued.sum() - dequeued.sum() > MAX_BACKLOG ) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            } ) );
+        }
+        for ( int i = 0; i < consumers; ++i ) {
+            TSQueue< Payload > line = GroceryLine.clerkView( queue, i );
+            consumerThreads.add( new Thread( () -> {
+                await( start );
+                Payload item = line.dequeue();
+                while ( item != null ) {
+                    if ( running.get() ) {
+                        result.inQueue.record( item.getInQueueNanos() );
+                    }
+                    dequeued.increment();
+                    item = line.dequeue();
+                }
+            } ) );
+        }
+
+        producerThreads.forEach( Thread::start );
+        consumerThreads.forEach( Thread::start );
+        long begin = System.nanoTime();
+        start.countDown();
+        sleep( millis );
+        running.set( false );
+        producerThreads.forEach( QueueBenchmark::join );
+        // Measure only up to here; the consumers then empty the closed
+        // queue without it counting.
+        result.nanos = System.nanoTime() - begin;
+        result.operations = dequeued.sum();
+        queue.close();
+        consumerThreads.forEach( QueueBenchmark::join );
+        if ( queue instanceof JournaledTSQueue< Payload > journaledQueue ) {
+            journaledQueue.deleteJournal();
+        }
+        if ( server != null ) {
+            ( (RemoteTSQueue< Payload >) queue ).disconnect();
+            stop( server );
+        }
+        return result;
+    }
+
+    /**
+     * Wait for the starting signal.
+     *
+     * @param latch the signal
+     */
+    private static void await( CountDownLatch latch ) {
+        try {
+            latch.await();
+        }
+        catch( InterruptedException e ) {
+            throw new RuntimeException( e );
+        }
+    }
+
+    /**
+     * Wait for a thread to finish.
+     *
+     * @param thread the thread
+     */
+    private static void join( Thread thread ) {
+        try {
+            thread.join();
+        }
+        catch( InterruptedException e ) {
+            throw new RuntimeException( e );
+        }
+    }
+
+    /**
+     * Stop a server without having to handle interruption.
+     *
+     * @param server the server
+     */
+    private static void stop( CheckoutServer< ? > server ) {
+        try {
+            server.stop();
+        }
+        catch( InterruptedException e ) {
+            throw new RuntimeException( e );
+        }
+    }
+
+    /**
+     * Sleep without having to handle interruption.
+     *
+     * @param millis how long to sleep
+     */
+    private static void sleep( long millis ) {
+        try {
+            Thread.sleep( millis );
+        }
+        catch( InterruptedException e ) {
+            throw new RuntimeException( e );
+        }
+    }
+}
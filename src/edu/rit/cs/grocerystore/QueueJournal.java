@@ -0,0 +1,630 @@
+package edu.rit.cs.grocerystore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only log of what happened to the values of a queue, kept in
+ * memory-mapped segment files, for {@link JournaledTSQueue}.
+ * <p>
+ * A journal is a directory of segments named by number, each
+ * {@value #SEGMENT_BYTES} bytes: a 16-byte header (the magic number
+ * {@value #MAGIC}, a version number and the segment's number) and then
+ * records. A record is its kind, a value's key and payload and two
+ * times, all big-endian, and a CRC-32C of them; records whose times are
+ * both 0 leave them out, and are {@value #SHORT_RECORD_BYTES} bytes
+ * instead of {@value #TIMED_RECORD_BYTES}, since most records have no
+ * times and bytes written are most of what a journal costs. A segment
+ * is never written again once the next one has been started, and a
+ * journal that is opened again starts a new one.
+ * <p>
+ * Appending takes no lock, so that a journal does not make a lock-free
+ * queue a locking one. Each record's place is reserved by adding its
+ * size to the segment's position atomically, and the record is copied
+ * there, its kind last, since a kind of 0 marks a place not yet
+ * written. So a record can be complete before one appended just before
+ * it, and if the process dies in between, a hole is left. Replay skips
+ * a hole, or a record torn by a crash, if a whole record follows within
+ * {@value #RESYNC_BYTES} bytes; otherwise the segment ends there.
+ * <p>
+ * Appending a record only copies it into the mapped segment, which is in
+ * the operating system's page cache, so a record survives the process
+ * dying as soon as {@link #append} returns. Commits to the disk itself,
+ * which survive the machine going down, are grouped: a background thread
+ * forces what has been appended every {@value #COMMIT_MSEC} msec., so
+ * the cost of a force is shared by every record in that time.
+ * <p>
+ * The same thread gets the next segment ready before it is needed:
+ * filled with zeros, so that the file system has given it blocks, and
+ * with every page touched, so that appending never stops for the file
+ * system.
+ *
+ * @author RIT CS
+ */
+final class QueueJournal implements AutoCloseable {
+
+    /** First four bytes of every segment: "GLJN" */
+    static final int MAGIC = 0x474C4A4E;
+
+    /** The version of the format written */
+    private static final int VERSION = 1;
+
+    /** Bytes before the first record of a segment */
+    static final int HEADER_BYTES = 16;
+
+    /** Bytes in a record without times */
+    static final int SHORT_RECORD_BYTES = 20;
+
+    /** Bytes in a record with times */
+    static final int TIMED_RECORD_BYTES = 36;
+
+    /** Set in the kind written for a record with times */
+    private static final int TIMED = 1 << 16;
+
+    /** Bytes in each segment file (8 MB) */
+    static final int SEGMENT_BYTES = 8 << 20;
+
+    /** Msec. between group commits */
+    static final long COMMIT_MSEC = 10;
+
+    /** The ending of segment file names */
+    private static final String SUFFIX = ".journal";
+
+    /** Bytes of zeros written at a time to fill a new segment */
+    private static final int FILL_BYTES = 1 << 20;
+
+    /** Bytes in a page of memory, as far as touching each one goes */
+    private static final int PAGE_BYTES = 4096;
+
+    /** Bytes past a missing or torn record that replay looks for another in */
+    static final int RESYNC_BYTES = 4096;
+
+    /** Reads and writes the kinds of records, which mark them complete */
+    private static final VarHandle KIND =
+            MethodHandles.byteBufferViewVarHandle( int[].class, ByteOrder.BIG_ENDIAN );
+
+    /** Where each thread puts a record together and computes its CRC */
+    private static final ThreadLocal< Encoder > ENCODER = ThreadLocal.withInitial( Encoder::new );
+
+    /**
+     * One thread's means of putting a record together.
+     */
+    private static final class Encoder {
+        /** The record */
+        final ByteBuffer record = ByteBuffer.allocate( TIMED_RECORD_BYTES );
+        /** Computes its CRC */
+        final CRC32C crc = new CRC32C();
+    }
+
+    /**
+     * A segment file, mapped into memory.
+     */
+    private static final class Segment {
+        /** Its number */
+        final long number;
+        /** Its path */
+        final Path file;
+        /** The open file */
+        final FileChannel channel;
+        /** The mapping; only written at given places, never by position */
+        final MappedByteBuffer records;
+        /** Where the next record goes, even if past the end */
+        final AtomicInteger reserved;
+        /** Where the last record that fit ends, or -1 while there is room */
+        volatile int end;
+
+        Segment( long number, Path file, FileChannel channel, MappedByteBuffer records ) {
+            this.number = number;
+            this.file = file;
+            this.channel = channel;
+            this.records = records;
+            this.reserved = new AtomicInteger( HEADER_BYTES );
+            this.end = -1;
+        }
+    }
+
+    /**
+     * Reads the records of a journal, in the order they were appended.
+     */
+    @FunctionalInterface
+    interface Visitor {
+        /**
+         * Take one record.
+         *
+         * @param kind what happened; never 0
+         * @param key which value it happened to
+         * @param payload what the value holds besides its key
+         * @param first the first time, in nsec.
+         * @param second the second time, in nsec.
+         */
+        void record( int kind, long key, int payload, long first, long second );
+    }
+
+    /** The directory of segments */
+    private final Path directory;
+    /** Forces the current segment, once started */
+    private final ScheduledExecutorService committer;
+    /** The number of records appended */
+    private final LongAdder appended;
+    /** The segment being written; changed only while holding this */
+    private volatile Segment segment;
+    /** Where in the segment the last commit ended; guarded by this */
+    private int committed;
+    /** The segment after this one, ready to be written, or null; guarded by this */
+    private Segment spare;
+    /** Set while the spare is being got ready; guarded by this */
+    private boolean preparing;
+    /**
+     * The segment before this one, if its end is not committed yet, or
+     * null; guarded by this
+     */
+    private Segment finished;
+    /** Where in the segment before this one the last commit ended; guarded by this */
+    private int finishedCommitted;
+    /** Set once closed */
+    private volatile boolean closed;
+
+    /**
+     * Open a journal for appending, in a new segment after any there
+     * already are. Read what is there first, with {@link #replay}.
+     *
+     * @param directory the journal's directory; it is created if need be
+     * @throws UncheckedIOException if the journal cannot be written
+     */
+    QueueJournal( Path directory ) {
+        this.directory = directory;
+        this.appended = new LongAdder();
+        try {
+            Files.createDirectories( directory );
+            List< Path > segments = segments( directory );
+            this.segment = create( directory, segments.isEmpty() ? 0 :
+                                   number( segments.get( segments.size() - 1 ) ) + 1 );
+            this.committed = HEADER_BYTES;
+        }
+        catch( IOException e ) {
+            throw new UncheckedIOException( directory.toString(), e );
+        }
+        this.committer = Executors.newSingleThreadScheduledExecutor( task -> {
+            Thread thread = new Thread( task, "QueueJournal" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        committer.scheduleWithFixedDelay( this::commit, COMMIT_MSEC, COMMIT_MSEC,
+                                          TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Read every record of a journal in order. Each segment is read up to
+     * a record that is missing or torn with no whole record just after.
+     *
+     * @param directory the journal's directory
+     * @param visitor what to give each record to
+     * @return the number of records read; 0 if there is no journal
+     * @throws UncheckedIOException if the journal cannot be read, or a
+     * segment is not part of one
+     */
+    static long replay( Path directory, Visitor visitor ) {
+        long read = 0;
+        CRC32C check = new CRC32C();
+        try {
+            for ( Path file : segments( directory ) ) {
+                try ( FileChannel in = FileChannel.open( file, StandardOpenOption.READ ) ) {
+                    MappedByteBuffer records = in.map(
+                            FileChannel.MapMode.READ_ONLY, 0, in.size() );
+                    if ( records.remaining() >= HEADER_BYTES && records.getInt( 0 ) == 0 ) {
+                        // A segment still being got ready when the process died.
+                        continue;
+                    }
+                    if ( records.remaining() < HEADER_BYTES || records.getInt() != MAGIC ||
+                         records.getInt() != VERSION || records.getLong() != number( file ) ) {
+                        throw new IOException( "not a queue journal segment: " + file );
+                    }
+                    int at = HEADER_BYTES;
+                    while ( true ) {
+                        int bytes = recordBytes( records, at, check );
+                        if ( bytes == 0 ) {
+                            // Missing or torn; those appended at the same
+                            // time may still follow.
+                            int next = at + Integer.BYTES;
+                            while ( next - at < RESYNC_BYTES &&
+                                    ( bytes = recordBytes( records, next, check ) ) == 0 ) {
+                                next += Integer.BYTES;
+                            }
+                            if ( bytes == 0 ) {
+                                break;
+                            }
+                            at = next;
+                        }
+                        int kind = records.getInt( at );
+                        boolean timed = ( kind & TIMED ) != 0;
+                        visitor.record( kind & ~TIMED, records.getLong( at + 8 ),
+                                        records.getInt( at + 4 ),
+                                        timed ? records.getLong( at + 16 ) : 0,
+                                        timed ? records.getLong( at + 24 ) : 0 );
+                        ++read;
+                        at += bytes;
+                    }
+                }
+            }
+        }
+        catch( IOException e ) {
+            throw new UncheckedIOException( directory.toString(), e );
+        }
+        return read;
+    }
+
+    /**
+     * Delete every segment of a journal, and the directory if it is then
+     * empty. Close the journal first.
+     *
+     * @param directory the journal's directory
+     * @throws UncheckedIOException if a segment cannot be deleted
+     */
+    static void delete( Path directory ) {
+        try {
+            for ( Path file : segments( directory ) ) {
+                Files.delete( file );
+            }
+            try ( Stream< Path > rest = Files.list( directory ) ) {
+                if ( rest.findAny().isEmpty() ) {
+                    Files.delete( directory );
+                }
+            }
+        }
+        catch( IOException e ) {
+            throw new UncheckedIOException( directory.toString(), e );
+        }
+    }
+
+    /**
+     * Add a record. It survives the process dying once this returns, and
+     * the machine going down once the next group commit is done.
+     *
+     * @param kind what happened; more than 0 and less than 65536
+     * @param key which value it happened to
+     * @param payload what the value holds besides its key
+     * @param first the first time, in nsec., or 0
+     * @param second the second time, in nsec., or 0
+     * @throws IllegalStateException if the journal is closed
+     * @throws UncheckedIOException if a new segment cannot be started
+     */
+    void append( int kind, long key, int payload, long first, long second ) {
+        if ( closed ) {
+            throw new IllegalStateException( "journal closed" );
+        }
+        boolean timed = first != 0 || second != 0;
+        Encoder encoder = ENCODER.get();
+        ByteBuffer record = encoder.record;
+        record.clear();
+        record.putInt( timed ? kind | TIMED : kind ).putInt( payload ).putLong( key );
+        if ( timed ) {
+            record.putLong( first ).putLong( second );
+        }
+        encoder.crc.reset();
+        encoder.crc.update( record.array(), 0, record.position() );
+        record.putInt( (int) encoder.crc.getValue() );
+        int bytes = record.position();
+        while ( true ) {
+            Segment current = segment;
+            int at = current.reserved.getAndAdd( bytes );
+            if ( at + bytes <= SEGMENT_BYTES ) {
+                current.records.put( at + Integer.BYTES, record.array(),
+                                     Integer.BYTES, bytes - Integer.BYTES );
+                KIND.setRelease( current.records, at, record.getInt( 0 ) );
+                break;
+            }
+            if ( at <= SEGMENT_BYTES ) {
+                // The first record that does not fit: every one before it did.
+                current.end = at;
+            }
+            nextSegment( current );
+        }
+        appended.increment();
+    }
+
+    /**
+     * How many records have been appended since the journal was opened?
+     *
+     * @return the number of calls to {@link #append}
+     */
+    long getAppended() { return appended.sum(); }
+
+    /**
+     * Commit everything appended so far to the disk now, rather than
+     * waiting for the next group commit.
+     */
+    void sync() {
+        commit();
+    }
+
+    /**
+     * Stop the group commits, commit what is left, and let go of the
+     * segment file. Closing again has no effect.
+     */
+    @Override
+    public void close() {
+        committer.shutdownNow();
+        try {
+            committer.awaitTermination( 1, TimeUnit.MINUTES );
+        }
+        catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized ( this ) {
+            if ( closed ) {
+                return;
+            }
+            closed = true;
+            if ( finished != null ) {
+                forceFinished( finished, finishedCommitted );
+            }
+            // Let appends that got in before the close finish.
+            int to = Math.min( segment.reserved.get(), SEGMENT_BYTES );
+            while ( complete( segment, committed, to ) < to ) {
+                Thread.yield();
+            }
+            segment.records.force();
+            try {
+                segment.channel.close();
+                if ( spare != null ) {
+                    spare.channel.close();
+                    Files.delete( spare.file );
+                }
+            }
+            catch( IOException e ) {
+                throw new UncheckedIOException( e );
+            }
+        }
+    }
+
+    /**
+     * Force what has been appended since the last commit to the disk,
+     * up to the first record still being copied in, including the end of
+     * the segment before if it has just been finished, and get the next
+     * segment ready if it is not. Appending goes on meanwhile.
+     */
+    private void commit() {
+        Segment before;
+        int beforeFrom;
+        Segment current;
+        int from;
+        boolean prepare;
+        long next;
+        synchronized ( this ) {
+            if ( closed ) {
+                return;
+            }
+            before = finished;
+            beforeFrom = finishedCommitted;
+            finished = null;
+            current = segment;
+            from = committed;
+            prepare = spare == null && !preparing;
+            preparing |= prepare;
+            next = current.number + 1;
+        }
+        if ( before != null ) {
+            forceFinished( before, beforeFrom );
+        }
+        int to = complete( current, from, Math.min( current.reserved.get(), SEGMENT_BYTES ) );
+        if ( to > from ) {
+            current.records.force( from, to - from );
+            synchronized ( this ) {
+                if ( segment == current ) {
+                    committed = Math.max( committed, to );
+                }
+            }
+        }
+        if ( prepare ) {
+            Segment ready = null;
+            try {
+                ready = create( directory, next );
+            }
+            catch( IOException e ) {
+                // Interrupted by close(), or the disk is full; an append
+                // that needs the segment will find out which.
+            }
+            synchronized ( this ) {
+                spare = ready;
+                preparing = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Finish a full segment and start the next one, which is normally
+     * ready, unless another append has already done so. The end of the
+     * finished one is left to the next group commit, so appending does
+     * not wait for the disk.
+     *
+     * @param full the segment that a record did not fit in
+     */
+    private synchronized void nextSegment( Segment full ) {
+        if ( segment != full ) {
+            return;
+        }
+        boolean interrupted = false;
+        while ( preparing ) {
+            try {
+                wait();
+            }
+            catch( InterruptedException e ) {
+                interrupted = true;
+            }
+        }
+        if ( interrupted ) {
+            Thread.currentThread().interrupt();
+        }
+        if ( finished != null ) {
+            // Two segments since the last commit; this one cannot wait.
+            forceFinished( finished, finishedCommitted );
+        }
+        finished = full;
+        finishedCommitted = committed;
+        try {
+            Segment next = spare != null ? spare : create( directory, full.number + 1 );
+            spare = null;
+            // The mapping stays valid for appends still copying into it.
+            full.channel.close();
+            committed = HEADER_BYTES;
+            segment = next;
+        }
+        catch( IOException e ) {
+            throw new UncheckedIOException( directory.toString(), e );
+        }
+    }
+
+    /**
+     * Force the rest of a finished segment, once every record that fit in
+     * it has been copied in.
+     *
+     * @param full the segment
+     * @param from where its last commit ended
+     */
+    private static void forceFinished( Segment full, int from ) {
+        int end;
+        while ( ( end = full.end ) < 0 || complete( full, from, end ) < end ) {
+            Thread.yield();
+        }
+        if ( end > from ) {
+            full.records.force( from, end - from );
+        }
+    }
+
+    /**
+     * Where do the complete records starting at a given place end?
+     *
+     * @param segment the segment
+     * @param from where a record starts
+     * @param to where to stop looking
+     * @return where the first record not yet complete starts, or to
+     */
+    private static int complete( Segment segment, int from, int to ) {
+        int at = from;
+        while ( at < to ) {
+            int kind = (int) KIND.getAcquire( segment.records, at );
+            if ( kind == 0 ) {
+                break;
+            }
+            at += ( kind & TIMED ) != 0 ? TIMED_RECORD_BYTES : SHORT_RECORD_BYTES;
+        }
+        return at;
+    }
+
+    /**
+     * How long is the whole record at a given place?
+     *
+     * @param records a segment
+     * @param at where the record should start
+     * @param check computes CRCs
+     * @return its size, or 0 if there is none there, or it is torn
+     */
+    private static int recordBytes( ByteBuffer records, int at, CRC32C check ) {
+        if ( at + SHORT_RECORD_BYTES > records.limit() ) {
+            return 0;
+        }
+        int kind = records.getInt( at );
+        int bytes = ( kind & TIMED ) != 0 ? TIMED_RECORD_BYTES : SHORT_RECORD_BYTES;
+        if ( kind == 0 || at + bytes > records.limit() ) {
+            return 0;
+        }
+        check.reset();
+        check.update( records.slice( at, bytes - Integer.BYTES ) );
+        return (int) check.getValue() == records.getInt( at + bytes - Integer.BYTES ) ?
+               bytes : 0;
+    }
+
+    /**
+     * Create a segment: fill it with zeros, map it, touch every page and
+     * write its header.
+     *
+     * @param directory the journal's directory
+     * @param number the segment's number
+     * @return the segment, with its header
+     * @throws IOException if it cannot be created; nothing is left behind
+     */
+    private static Segment create( Path directory, long number ) throws IOException {
+        Path file = directory.resolve( String.format( "%012d%s", number, SUFFIX ) );
+        FileChannel channel = FileChannel.open(
+                file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE );
+        try {
+            ByteBuffer zeros = ByteBuffer.allocateDirect( FILL_BYTES );
+            for ( long at = 0; at < SEGMENT_BYTES; at += FILL_BYTES ) {
+                zeros.clear();
+                while ( zeros.hasRemaining() ) {
+                    channel.write( zeros, at + zeros.position() );
+                }
+            }
+            MappedByteBuffer records = channel.map(
+                    FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES );
+            for ( int page = 0; page < SEGMENT_BYTES; page += PAGE_BYTES ) {
+                records.put( page, (byte) 0 );
+            }
+            records.putInt( MAGIC ).putInt( VERSION ).putLong( number );
+            // Commits start after the header.
+            records.force( 0, HEADER_BYTES );
+            return new Segment( number, file, channel, records );
+        }
+        catch( IOException e ) {
+            channel.close();
+            Files.deleteIfExists( file );
+            throw e;
+        }
+    }
+
+    /**
+     * Find the segments of a journal.
+     *
+     * @param directory the journal's directory
+     * @return the segments, in order, or none if there is no directory
+     * @throws IOException if the directory cannot be read
+     */
+    private static List< Path > segments( Path directory ) throws IOException {
+        List< Path > segments = new ArrayList<>();
+        if ( Files.isDirectory( directory ) ) {
+            try ( Stream< Path > files = Files.list( directory ) ) {
+                files.filter( file -> file.getFileName().toString().endsWith( SUFFIX ) )
+                     .sorted()
+                     .forEach( segments::add );
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * The number of a segment, from its name.
+     *
+     * @param file the segment
+     * @return its number
+     * @throws IOException if the name is not a segment's
+     */
+    private static long number( Path file ) throws IOException {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong( name.substring( 0, name.length() - SUFFIX.length() ) );
+        }
+        catch( NumberFormatException e ) {
+            throw new IOException( "not a queue journal segment: " + file, e );
+        }
+    }
+}
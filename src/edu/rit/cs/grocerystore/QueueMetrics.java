@@ -0,0 +1,317 @@
+package edu.rit.cs.grocerystore;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Live measurements of a checkout line while a run goes on: how many
+ * carts are in it, how fast carts go in and out, how often threads park
+ * on its lock, how many clerks are busy, and percentiles of how long
+ * carts waited in line recently.
+ * <p>
+ * The queue is measured from outside, through views made by
+ * {@link #meter(TSQueue)}, so every kind of queue can be measured and
+ * a run that is not measured pays nothing. All counters are LongAdders,
+ * which threads update without contending with each other.
+ * <p>
+ * Once {@link #start(long)} is called, the measurements are published as
+ * a JMX MBean and a snapshot line is printed at a fixed interval, along
+ * with the garbage collections since the last one, so that a saturated
+ * line can be matched up with collector pauses.
+ *
+ * @author RIT CS
+ */
+public class QueueMetrics implements QueueMetricsMBean {
+
+    /** The JMX domain the MBeans are registered under */
+    public static final String JMX_DOMAIN = "edu.rit.cs.grocerystore";
+
+    /** Numbers the MBeans, so that runs at the same time have different names */
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    /** What is measured, for the MBean's name and the snapshot lines */
+    private final String name;
+    /** The number of times a thread parked on the queue, or null if unknown */
+    private final LongSupplier parks;
+    /** Values put in the queue */
+    private final LongAdder enqueued;
+    /** Values taken from the queue */
+    private final LongAdder dequeued;
+    /** Clerks checking out a cart now */
+    private final LongAdder busyClerks;
+    /** Queue waits of the values taken since the last snapshot */
+    private volatile LatencyHistogram interval;
+    /** The values of the counters at the last snapshot */
+    private long lastEnqueued, lastDequeued, lastGcCount, lastGcTime;
+    /** When the last snapshot was taken */
+    private long lastNanos;
+    /** Rates and percentiles from the last snapshot */
+    private volatile double enqueueRate, dequeueRate, waitP50, waitP95, waitP99;
+    /** Prints the snapshot lines, once started */
+    private ScheduledExecutorService timer;
+    /** The name the MBean is registered under, once started */
+    private ObjectName objectName;
+
+    /**
+     * Set up measurements of a checkout line.
+     *
+     * @param name what is measured, such as the kind of queue
+     * @param queue the queue itself; if it is a {@link ConditionTSQueue},
+     *              its parks are reported as lock contention
+     */
+    public QueueMetrics( String name, TSQueue< ? > queue ) {
+        this.name = name + '-' + instances.incrementAndGet();
+        this.parks = queue instanceof ConditionTSQueue< ? > line ? line::getParks : null;
+        this.enqueued = new LongAdder();
+        this.dequeued = new LongAdder();
+        this.busyClerks = new LongAdder();
+        this.interval = new LatencyHistogram();
+        this.lastNanos = System.nanoTime();
+    }
+
+    /**
+     * Make a view of a queue through which every value put in or taken
+     * out is counted, and the queue wait of every value taken out is
+     * recorded. Customers and clerks can have views of their own, even
+     * of different parts of the same line, such as lanes.
+     *
+     * @param queue the queue, or a part of it
+     * @param <E> the type of elements in the queue
+     * @return the view
+     */
+    public < E extends TimedObject > TSQueue< E > meter( TSQueue< E > queue ) {
+        return new TSQueue<>() {
+            @Override
+            public int enqueue( E value ) {
+                return entered( queue.enqueue( value ), 1 );
+            }
+            @Override
+            public int offer( E value, long timeout, TimeUnit unit ) {
+                int size = queue.offer( value, timeout, unit );
+                return size == 0 ? 0 : entered( size, 1 );
+            }
+            @Override
+            public int enqueueAll( Collection< ? extends E > values ) {
+                return entered( queue.enqueueAll( values ), values.size() );
+            }
+            @Override
+            public E dequeue() {
+                E value = queue.dequeue();
+                if ( value != null ) {
+                    left( value );
+                }
+                return value;
+            }
+            @Override
+            public E poll( long timeout, TimeUnit unit ) {
+                E value = queue.poll( timeout, unit );
+                if ( value != null ) {
+                    left( value );
+                }
+                return value;
+            }
+            @Override
+            public int drainTo( Collection< ? super E > sink, int max ) {
+                List< E > taken = new ArrayList<>();
+                queue.drainTo( taken, max );
+                return left( taken, sink );
+            }
+            @Override
+            public int drainTo( Collection< ? super E > sink, int max,
+                                long timeout, TimeUnit unit ) {
+                List< E > taken = new ArrayList<>();
+                queue.drainTo( taken, max, timeout, unit );
+                return left( taken, sink );
+            }
+            @Override
+            public boolean remove( E value ) {
+                boolean removed = queue.remove( value );
+                if ( removed ) {
+                    // Out of the line, but not served, so its wait is not a queue wait.
+                    dequeued.increment();
+                }
+                return removed;
+            }
+            @Override
+            public void serviced( E value ) { queue.serviced( value ); }
+            @Override
+            public void close() { queue.close(); }
+            @Override
+            public boolean isClosed() { return queue.isClosed(); }
+        };
+    }
+
+    /**
+     * Count a clerk starting to check out a cart.
+     */
+    public void clerkBusy() { busyClerks.increment(); }
+
+    /**
+     * Count a clerk finishing a cart.
+     */
+    public void clerkIdle() { busyClerks.decrement(); }
+
+    /**
+     * Register the MBean and start printing a snapshot line at a fixed
+     * interval of real time.
+     *
+     * @param intervalMsec msec. between snapshots
+     * @throws IllegalStateException if the MBean cannot be registered
+     */
+    public synchronized void start( long intervalMsec ) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            objectName = new ObjectName( JMX_DOMAIN + ":type=QueueMetrics,name=" +
+                                         ObjectName.quote( name ) );
+            server.registerMBean( this, objectName );
+        }
+        catch( JMException e ) {
+            throw new IllegalStateException( e );
+        }
+        timer = Executors.newSingleThreadScheduledExecutor( task -> {
+            Thread thread = new Thread( task, "QueueMetrics " + name );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        timer.scheduleAtFixedRate( () -> Utilities.println( snapshot() ),
+                                   intervalMsec, intervalMsec, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Stop printing snapshot lines and unregister the MBean.
+     */
+    public synchronized void stop() {
+        if ( timer == null ) {
+            return;
+        }
+        timer.shutdownNow();
+        timer = null;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean( objectName );
+        }
+        catch( JMException e ) {
+            // Already gone; nothing more to do.
+        }
+    }
+
+    /**
+     * Start a new interval: work out the rates and percentiles of the one
+     * just ended, and describe them.
+     *
+     * @return a one-line description of the interval just ended
+     */
+    public synchronized String snapshot() {
+        long now = System.nanoTime();
+        double seconds = Math.max( 1, now - lastNanos ) / 1e9;
+        long in = enqueued.sum();
+        long out = dequeued.sum();
+        LatencyHistogram waits = interval;
+        interval = new LatencyHistogram();
+        enqueueRate = ( in - lastEnqueued ) / seconds;
+        dequeueRate = ( out - lastDequeued ) / seconds;
+        waitP50 = waits.getValueAtPercentile( 50 );
+        waitP95 = waits.getValueAtPercentile( 95 );
+        waitP99 = waits.getValueAtPercentile( 99 );
+        lastEnqueued = in;
+        lastDequeued = out;
+        lastNanos = now;
+
+        long gcCount = 0;
+        long gcTime = 0;
+        for ( GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans() ) {
+            gcCount += Math.max( 0, gc.getCollectionCount() );
+            gcTime += Math.max( 0, gc.getCollectionTime() );
+        }
+        String line = String.format(
+                "[%s] depth %d, in %.0f/s, out %.0f/s, parks %s, busy %d, " +
+                "wait p50 %.3f p95 %.3f p99 %.3f msec., GC %d (%d msec.)",
+                name, in - out, enqueueRate, dequeueRate,
+                parks == null ? "-" : String.valueOf( parks.getAsLong() ),
+                busyClerks.sum(), waitP50, waitP95, waitP99,
+                gcCount - lastGcCount, gcTime - lastGcTime );
+        lastGcCount = gcCount;
+        lastGcTime = gcTime;
+        return line;
+    }
+
+    @Override
+    public long getDepth() { return enqueued.sum() - dequeued.sum(); }
+
+    @Override
+    public long getEnqueued() { return enqueued.sum(); }
+
+    @Override
+    public long getDequeued() { return dequeued.sum(); }
+
+    @Override
+    public double getEnqueueRate() { return enqueueRate; }
+
+    @Override
+    public double getDequeueRate() { return dequeueRate; }
+
+    @Override
+    public long getParks() { return parks == null ? 0 : parks.getAsLong(); }
+
+    @Override
+    public long getBusyClerks() { return busyClerks.sum(); }
+
+    @Override
+    public double getWaitP50() { return waitP50; }
+
+    @Override
+    public double getWaitP95() { return waitP95; }
+
+    @Override
+    public double getWaitP99() { return waitP99; }
+
+    /**
+     * Count values put in the queue.
+     *
+     * @param size what the queue returned
+     * @param count how many values went in
+     * @return size
+     */
+    private int entered( int size, int count ) {
+        enqueued.add( count );
+        return size;
+    }
+
+    /**
+     * Count a value taken from the queue, and record its queue wait.
+     *
+     * @param value the value
+     */
+    private void left( TimedObject value ) {
+        dequeued.increment();
+        interval.record( value.getInQueueNanos() );
+    }
+
+    /**
+     * Count values taken from the queue and pass them on.
+     *
+     * @param taken the values
+     * @param sink where they go
+     * @param <E> the type of the values
+     * @return the number of values
+     */
+    private < E extends TimedObject > int left( List< E > taken,
+                                                Collection< ? super E > sink ) {
+        for ( E value : taken ) {
+            left( value );
+            sink.add( value );
+        }
+        return taken.size();
+    }
+}
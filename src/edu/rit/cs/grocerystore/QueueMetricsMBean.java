@@ -0,0 +1,41 @@
+package edu.rit.cs.grocerystore;
+
+/**
+ * The management interface of {@link QueueMetrics}, as seen through JMX,
+ * for example in JConsole or VisualVM. Rates and percentiles are for the
+ * most recent snapshot interval; counts are since the start of the run.
+ *
+ * @author RIT CS
+ */
+public interface QueueMetricsMBean {
+
+    /** @return the number of values in the queue now */
+    long getDepth();
+
+    /** @return the number of values put in the queue so far */
+    long getEnqueued();
+
+    /** @return the number of values taken from the queue so far */
+    long getDequeued();
+
+    /** @return values put in the queue per second, in the last interval */
+    double getEnqueueRate();
+
+    /** @return values taken from the queue per second, in the last interval */
+    double getDequeueRate();
+
+    /** @return the number of times a thread parked on the queue's lock */
+    long getParks();
+
+    /** @return the number of clerks checking out a cart now */
+    long getBusyClerks();
+
+    /** @return the median queue wait in the last interval, in msec. */
+    double getWaitP50();
+
+    /** @return the 95th percentile queue wait in the last interval, in msec. */
+    double getWaitP95();
+
+    /** @return the 99th percentile queue wait in the last interval, in msec. */
+    double getWaitP99();
+}
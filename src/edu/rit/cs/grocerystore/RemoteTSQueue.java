@@ -0,0 +1,483 @@
+package edu.rit.cs.grocerystore;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A queue hosted by a {@link CheckoutServer} in another process, used
+ * over one connection by any number of threads. Customers and clerks can
+ * use it as they would any other queue.
+ * <p>
+ * Requests are pipelined: a thread sends its request and waits only for
+ * its own response, which a reader thread hands to it, so other threads'
+ * requests go out meanwhile. Requests made while one is being sent are
+ * sent together after it, in one write. {@link #enqueueAll(Collection)}
+ * sends all its values before waiting for any of the responses.
+ * <p>
+ * A value taken out is made again by a {@link TimedCodec}, and its time
+ * in line is the time the server measured. Values cannot be taken from
+ * the middle of the line, so {@link #remove(TimedObject)} is not
+ * supported. If the connection fails, the calls waiting on it and every
+ * call afterwards throw {@link UncheckedIOException}.
+ *
+ * @param <E> the type of elements in the queue
+ * @author RIT CS
+ */
+public class RemoteTSQueue< E extends TimedObject > implements TSQueue< E > {
+
+    /** Bytes of the buffer for incoming responses, to start with */
+    private static final int IN_BUFFER_BYTES = 64 * 1024;
+
+    /** Bytes of each buffer for outgoing requests, to start with */
+    private static final int OUT_BUFFER_BYTES = 16 * 1024;
+
+    /**
+     * What came back for a request.
+     *
+     * @param status how it went, e.g. {@link CheckoutProtocol#OK}
+     * @param number the size of the line or the answer, if any
+     * @param values the values taken, if any
+     * @param <E> the type of the values
+     */
+    private record Response< E >( byte status, int number, List< E > values ) {}
+
+    /**
+     * A request waiting for its response.
+     *
+     * @param opcode what was asked, which says how to read the response
+     * @param response completed by the reader thread
+     * @param <E> the type of the values
+     */
+    private record Pending< E >( byte opcode, CompletableFuture< Response< E > > response ) {}
+
+    /**
+     * A clock whose first reading is the given number of nsec. ago, so
+     * that a value that enters and leaves the queue at once has been in
+     * it that long. After that it is the monotonic system timer.
+     */
+    private static final class BackdatedClock implements Clock {
+        /** nsec. to take off the first reading, then 0 */
+        private long ago;
+
+        BackdatedClock( long ago ) { this.ago = ago; }
+
+        @Override
+        public long nanoTime() {
+            long now = System.nanoTime() - ago;
+            ago = 0;
+            return now;
+        }
+    }
+
+    /** The connection to the server */
+    private final SocketChannel channel;
+    /** How values are written */
+    private final TimedCodec< E > codec;
+    /** Requests sent and not yet answered, by request number */
+    private final Map< Integer, Pending< E > > pending;
+    /** Numbers the requests */
+    private final AtomicInteger nextRequest;
+    /** Guards {@link #outgoing} */
+    private final Object outLock;
+    /** Held by the thread writing requests to the connection */
+    private final Object writeLock;
+    /** Reads responses and hands them out */
+    private final Thread reader;
+    /** Requests not yet sent; guarded by {@link #outLock} */
+    private ByteBuffer outgoing;
+    /** Requests being sent; guarded by {@link #writeLock} */
+    private ByteBuffer sending;
+    /** Why the connection failed, or null while it works */
+    private volatile IOException failure;
+
+    /**
+     * Connect to a server.
+     *
+     * @param address where the server listens
+     * @param codec how values are written, as the server expects
+     * @throws UncheckedIOException if the server cannot be reached
+     */
+    public RemoteTSQueue( InetSocketAddress address, TimedCodec< E > codec ) {
+        this.codec = codec;
+        this.pending = new ConcurrentHashMap<>();
+        this.nextRequest = new AtomicInteger();
+        this.outLock = new Object();
+        this.writeLock = new Object();
+        this.outgoing = ByteBuffer.allocate( OUT_BUFFER_BYTES );
+        this.sending = ByteBuffer.allocate( OUT_BUFFER_BYTES );
+        try {
+            this.channel = SocketChannel.open( address );
+            channel.setOption( StandardSocketOptions.TCP_NODELAY, true );
+        }
+        catch( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+        this.reader = new Thread( this::readResponses, "RemoteTSQueue " + address );
+        reader.setDaemon( true );
+        reader.start();
+    }
+
+    /**
+     * Puts the value in the remote queue, waiting while it is full.
+     *
+     * @param value the value to be enqueued
+     * @return the size of the queue, after the value was added
+     * @throws IllegalStateException if the queue is closed
+     */
+    @Override
+    public int enqueue( E value ) {
+        return added( await( sendEnqueue( value, -1 ) ) );
+    }
+
+    @Override
+    public int offer( E value, long timeout, TimeUnit unit ) {
+        return added( await( sendEnqueue( value, unit.toNanos( timeout ) ) ) );
+    }
+
+    /**
+     * Puts all the values in the remote queue, sending them all before
+     * waiting for the server to say they went in.
+     *
+     * @param values the values to be enqueued
+     * @return the size of the queue, after the values were added
+     * @throws IllegalStateException if the queue is closed
+     */
+    @Override
+    public int enqueueAll( Collection< ? extends E > values ) {
+        List< CompletableFuture< Response< E > > > responses = new ArrayList<>();
+        synchronized ( outLock ) {
+            for ( E value : values ) {
+                responses.add( request( CheckoutProtocol.ENQUEUE, 20 ) );
+                encodeEnqueue( value, -1 );
+            }
+        }
+        flush();
+        int size = 0;
+        for ( CompletableFuture< Response< E > > response : responses ) {
+            size = added( await( response ) );
+        }
+        return size;
+    }
+
+    @Override
+    public E dequeue() {
+        List< E > values = take( 1, -1 );
+        return values.isEmpty() ? null : values.get( 0 );
+    }
+
+    @Override
+    public int drainTo( Collection< ? super E > sink, int max ) {
+        return drainTo( sink, max, 0, TimeUnit.NANOSECONDS );
+    }
+
+    @Override
+    public int drainTo( Collection< ? super E > sink, int max,
+                        long timeout, TimeUnit unit ) {
+        List< E > values = take( max, unit.toNanos( timeout ) );
+        sink.addAll( values );
+        return values.size();
+    }
+
+    /**
+     * Tells the server that no more values will come from this client.
+     * The remote queue closes once every client that put values in it
+     * has done so, or gone away.
+     */
+    @Override
+    public void close() {
+        CompletableFuture< Response< E > > response;
+        synchronized ( outLock ) {
+            response = request( CheckoutProtocol.CLOSE, 0 );
+        }
+        flush();
+        await( response );
+    }
+
+    @Override
+    public boolean isClosed() {
+        CompletableFuture< Response< E > > response;
+        synchronized ( outLock ) {
+            response = request( CheckoutProtocol.IS_CLOSED, 0 );
+        }
+        flush();
+        return await( response ).number() != 0;
+    }
+
+    /**
+     * Close the connection, without closing the remote queue unless
+     * this client was the last one putting values in it.
+     */
+    public void disconnect() {
+        try {
+            channel.close();
+            reader.join();
+        }
+        catch( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+        catch( InterruptedException e ) {
+            throw new RuntimeException( e );
+        }
+    }
+
+    /**
+     * Send a request to put a value in.
+     *
+     * @param value the value
+     * @param timeout nsec. to wait for room, or negative for ever
+     * @return where the response will be
+     */
+    private CompletableFuture< Response< E > > sendEnqueue( E value, long timeout ) {
+        CompletableFuture< Response< E > > response;
+        synchronized ( outLock ) {
+            response = request( CheckoutProtocol.ENQUEUE, 20 );
+            encodeEnqueue( value, timeout );
+        }
+        flush();
+        return response;
+    }
+
+    /**
+     * Write the fields of a request to put a value in, after its header.
+     * Call this holding {@link #outLock}.
+     *
+     * @param value the value, whose time in line starts now
+     * @param timeout nsec. to wait for room, or negative for ever
+     */
+    private void encodeEnqueue( E value, long timeout ) {
+        value.enterQueue();
+        outgoing.putLong( codec.key( value ) ).putInt( codec.payload( value ) )
+                .putLong( timeout );
+    }
+
+    /**
+     * Take values out of the remote queue.
+     *
+     * @param max the most values to take
+     * @param timeout nsec. to wait for the first, 0 for not to wait, or
+     *                negative for ever
+     * @return the values taken, possibly none
+     */
+    private List< E > take( int max, long timeout ) {
+        CompletableFuture< Response< E > > response;
+        synchronized ( outLock ) {
+            response = request( CheckoutProtocol.TAKE, 12 );
+            outgoing.putInt( max ).putLong( timeout );
+        }
+        flush();
+        return await( response ).values();
+    }
+
+    /**
+     * Start a request, making room for it in the buffer of requests not
+     * yet sent. Call this holding {@link #outLock}, and put the request's
+     * fields in {@link #outgoing} straight after.
+     *
+     * @param opcode what to ask
+     * @param bytes the size of its fields
+     * @return where the response will be
+     */
+    private CompletableFuture< Response< E > > request( byte opcode, int bytes ) {
+        int size = CheckoutProtocol.REQUEST_HEADER_BYTES + bytes;
+        if ( outgoing.remaining() < size ) {
+            ByteBuffer bigger = ByteBuffer.allocate( outgoing.capacity() * 2 + size );
+            outgoing.flip();
+            bigger.put( outgoing );
+            outgoing = bigger;
+        }
+        int number = nextRequest.getAndIncrement();
+        CompletableFuture< Response< E > > response = new CompletableFuture<>();
+        pending.put( number, new Pending<>( opcode, response ) );
+        IOException failed = failure;
+        if ( failed != null ) {
+            pending.remove( number );
+            response.completeExceptionally( failed );
+        }
+        outgoing.put( opcode ).putInt( number );
+        return response;
+    }
+
+    /**
+     * Send every request not yet sent. If another thread is sending, wait
+     * for it, and then send whatever it did not, which may be nothing.
+     */
+    private void flush() {
+        synchronized ( writeLock ) {
+            synchronized ( outLock ) {
+                if ( outgoing.position() == 0 ) {
+                    return;
+                }
+                ByteBuffer swap = sending;
+                sending = outgoing;
+                outgoing = swap;
+            }
+            sending.flip();
+            try {
+                while ( sending.hasRemaining() ) {
+                    channel.write( sending );
+                }
+            }
+            catch( IOException e ) {
+                fail( e );
+            }
+            finally {
+                sending.clear();
+            }
+        }
+    }
+
+    /**
+     * Wait for a response.
+     *
+     * @param response where it will be
+     * @return the response
+     * @throws UncheckedIOException if the connection failed
+     */
+    private Response< E > await( CompletableFuture< Response< E > > response ) {
+        try {
+            return response.get();
+        }
+        catch( InterruptedException e ) {
+            throw new RuntimeException( e );
+        }
+        catch( ExecutionException e ) {
+            throw new UncheckedIOException( (IOException) e.getCause() );
+        }
+    }
+
+    /**
+     * What the server said about a value put in.
+     *
+     * @param response the response
+     * @return the size of the line, or 0 if the value did not go in
+     * @throws IllegalStateException if the line is closed
+     */
+    private int added( Response< E > response ) {
+        if ( response.status() == CheckoutProtocol.CLOSED ) {
+            throw new IllegalStateException( "the line is closed" );
+        }
+        return response.number();
+    }
+
+    /**
+     * Read responses and hand them to the threads waiting for them, until
+     * the connection is closed.
+     */
+    private void readResponses() {
+        ByteBuffer in = ByteBuffer.allocate( IN_BUFFER_BYTES );
+        try {
+            while ( true ) {
+                if ( channel.read( in ) < 0 ) {
+                    throw new EOFException( "the server closed the connection" );
+                }
+                in.flip();
+                while ( in.remaining() >= CheckoutProtocol.RESPONSE_HEADER_BYTES &&
+                        respond( in ) ) {
+                    // Each pass hands out one response.
+                }
+                in.compact();
+                if ( !in.hasRemaining() ) {
+                    // A response bigger than the buffer has been partly read.
+                    ByteBuffer bigger = ByteBuffer.allocate( in.capacity() * 2 );
+                    in.flip();
+                    bigger.put( in );
+                    in = bigger;
+                }
+            }
+        }
+        catch( IOException e ) {
+            fail( e );
+        }
+    }
+
+    /**
+     * Hand out the response at the start of the buffer if all of it has
+     * come.
+     *
+     * @param in the responses read so far
+     * @return whether there was a whole response
+     * @throws IOException if a response does not match any request
+     */
+    private boolean respond( ByteBuffer in ) throws IOException {
+        int start = in.position();
+        int number = in.getInt( start );
+        byte status = in.get( start + Integer.BYTES );
+        Pending< E > request = pending.get( number );
+        if ( request == null ) {
+            throw new IOException( "response to unknown request " + number );
+        }
+        int bytes = CheckoutProtocol.RESPONSE_HEADER_BYTES;
+        if ( status == CheckoutProtocol.OK ) {
+            int fields = switch ( request.opcode() ) {
+                case CheckoutProtocol.ENQUEUE -> Integer.BYTES;
+                case CheckoutProtocol.TAKE -> Integer.BYTES;
+                case CheckoutProtocol.IS_CLOSED -> 1;
+                default -> 0;
+            };
+            if ( in.remaining() < bytes + fields ) {
+                return false;
+            }
+            if ( request.opcode() == CheckoutProtocol.TAKE ) {
+                fields += in.getInt( start + bytes ) * CheckoutProtocol.TAKEN_BYTES;
+                if ( in.remaining() < bytes + fields ) {
+                    return false;
+                }
+            }
+        }
+        in.position( start + bytes );
+        int answer = 0;
+        List< E > values = List.of();
+        if ( status == CheckoutProtocol.OK ) {
+            switch ( request.opcode() ) {
+                case CheckoutProtocol.ENQUEUE -> answer = in.getInt();
+                case CheckoutProtocol.IS_CLOSED -> answer = in.get();
+                case CheckoutProtocol.TAKE -> {
+                    int count = in.getInt();
+                    values = new ArrayList<>( count );
+                    for ( int i = 0; i < count; ++i ) {
+                        long key = in.getLong();
+                        int payload = in.getInt();
+                        E value = codec.rebuild( key, payload, new BackdatedClock( in.getLong() ) );
+                        value.enterQueue();
+                        value.exitQueue();
+                        values.add( value );
+                    }
+                }
+                default -> {}
+            }
+        }
+        pending.remove( number );
+        request.response().complete( new Response<>( status, answer, values ) );
+        return true;
+    }
+
+    /**
+     * The connection has failed: fail every request waiting on it, and
+     * every one made from now on.
+     *
+     * @param e what went wrong
+     */
+    private void fail( IOException e ) {
+        failure = e;
+        for ( Integer number : pending.keySet() ) {
+            Pending< E > request = pending.remove( number );
+            if ( request != null ) {
+                request.response().completeExceptionally( e );
+            }
+        }
+    }
+}
@@ -0,0 +1,462 @@
+package edu.rit.cs.grocerystore;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded first-in-first-out TSQueue in a ring of slots that are all
+ * allocated up front, in the style of the LMAX Disruptor and Dmitry
+ * Vyukov's bounded multi-producer, multi-consumer queue. Putting a value
+ * in and taking it out allocate nothing and never take a lock.
+ * <p>
+ * Each slot has a sequence number that says whose turn it is. A producer
+ * claims the next position with a compare-and-set on the tail counter,
+ * fills the slot, and publishes it by setting its sequence to one past
+ * the position. A consumer claims a published slot the same way with
+ * the head counter, empties it, and hands it back to the producers one
+ * lap later. The head and tail counters are padded onto cache lines of
+ * their own, so producers and consumers do not slow each other down by
+ * writing next to each other.
+ * <p>
+ * The ring has a power-of-two number of slots, and a producer that
+ * finds it full spins and then parks, like a consumer that finds it
+ * empty, in a {@link ParkingLot}.
+ *
+ * @param <E> The type of elements that will be in the queue
+ * @author RIT CS
+ */
+public class RingTSQueue<E extends TimedObject> implements TSQueue<E> {
+
+    /** The number of slots in a ring when no capacity is given */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /** The most slots a ring can have */
+    public static final int MAX_CAPACITY = 1 << 30;
+
+    /** Padding in front of a counter, so nothing before it shares its cache line */
+    private static class LeftPad {
+        long p01, p02, p03, p04, p05, p06, p07;
+    }
+
+    /** A position in the ring, counting up forever */
+    private static class Counter extends LeftPad {
+        volatile long value;
+    }
+
+    /** A counter with padding behind it as well, alone on its cache line */
+    private static final class PaddedCounter extends Counter {
+        long p11, p12, p13, p14, p15, p16, p17;
+    }
+
+    /** Compare-and-set of {@link Counter#value} */
+    private static final VarHandle COUNTER;
+
+    /** Acquire and release access to the slots' sequence numbers */
+    private static final VarHandle SEQUENCE =
+            MethodHandles.arrayElementVarHandle( long[].class );
+
+    static {
+        try {
+            COUNTER = MethodHandles.lookup().findVarHandle(
+                    Counter.class, "value", long.class );
+        }
+        catch( ReflectiveOperationException e ) {
+            throw new ExceptionInInitializerError( e );
+        }
+    }
+
+    /** The values in the slots, or null in empty slots */
+    private final Object[] values;
+    /** For each slot, the position a producer or consumer may next use it for */
+    private final long[] sequences;
+    /** The number of slots, less one, for turning positions into slots */
+    private final int mask;
+    /** The next position a consumer will take */
+    private final PaddedCounter head;
+    /** The next position a producer will fill */
+    private final PaddedCounter tail;
+    /** Where consumers wait while the ring is empty */
+    private final ParkingLot notEmpty;
+    /** Where producers wait while the ring is full */
+    private final ParkingLot notFull;
+    /** Set once no more values may be added */
+    private volatile boolean closed;
+
+    /** Initialize an empty ring of {@link #DEFAULT_CAPACITY} slots */
+    public RingTSQueue() {
+        this( DEFAULT_CAPACITY );
+    }
+
+    /**
+     * Initialize an empty ring with room for at least the given number
+     * of elements.
+     *
+     * @param capacity the fewest elements the ring must hold, rounded up
+     *                 to a power of two, or {@link TSQueue#UNBOUNDED} for
+     *                 {@link #DEFAULT_CAPACITY}
+     * @throws IllegalArgumentException if capacity is less than 1 or
+     * more than {@link #MAX_CAPACITY}
+     */
+    public RingTSQueue( int capacity ) {
+        int size = ringSize( capacity );
+        this.values = new Object[ size ];
+        this.sequences = new long[ size ];
+        for ( int i = 0; i < size; ++i ) {
+            sequences[ i ] = i;
+        }
+        this.mask = size - 1;
+        this.head = new PaddedCounter();
+        this.tail = new PaddedCounter();
+        this.notEmpty = new ParkingLot();
+        this.notFull = new ParkingLot();
+    }
+
+    /**
+     * How many slots would a ring asked to hold the given number of
+     * elements have?
+     *
+     * @param capacity the fewest elements the ring must hold, or
+     *                 {@link TSQueue#UNBOUNDED} for the default
+     * @return the next power of two at or above capacity
+     * @throws IllegalArgumentException if capacity is less than 1 or
+     * more than {@link #MAX_CAPACITY}
+     */
+    public static int ringSize( int capacity ) {
+        if ( capacity == UNBOUNDED ) {
+            return DEFAULT_CAPACITY;
+        }
+        if ( capacity < 1 || capacity > MAX_CAPACITY ) {
+            throw new IllegalArgumentException( "ring capacity " + capacity );
+        }
+        return capacity == 1 ? 1 : Integer.highestOneBit( capacity - 1 ) << 1;
+    }
+
+    /**
+     * Puts the value at the end of the queue, and calls
+     * TimedObject.enterQueue() on the value before it becomes visible
+     * to consumers. If the ring is full, spins and then parks until a
+     * consumer makes room. Wakes up one parked consumer, if there is one.
+     *
+     * @param value the value to be enqueued
+     * @return the size of the queue after the value was added. Under
+     * contention this is a snapshot that may include other elements
+     * being added or removed at the same moment.
+     * @throws IllegalStateException if the queue is or becomes closed
+     */
+    @Override
+    public int enqueue( E value ) {
+        int size = put( value, false, 0 );
+        notEmpty.signalOne();
+        return size;
+    }
+
+    /**
+     * Puts the value at the end of the queue if a slot frees up within
+     * the given time, and if so calls TimedObject.enterQueue() on it.
+     *
+     * @param value the value to be enqueued
+     * @param timeout how long to wait for room
+     * @param unit the unit of timeout
+     * @return the size of the queue after the value was added, or 0 if
+     * the ring stayed full
+     * @throws IllegalStateException if the queue is or becomes closed
+     */
+    @Override
+    public int offer( E value, long timeout, TimeUnit unit ) {
+        int size = put( value, true, System.nanoTime() + unit.toNanos( timeout ) );
+        if ( size > 0 ) {
+            notEmpty.signalOne();
+        }
+        return size;
+    }
+
+    /**
+     * Puts all the values at the end of the queue, one slot at a time,
+     * and calls TimedObject.enterQueue() on each of them. Consumers are
+     * woken once, at the end, unless the ring fills up first.
+     *
+     * @param values the values to be enqueued
+     * @return the size of the queue after the values were added (a
+     * snapshot, as for {@link #enqueue(TimedObject)})
+     * @throws IllegalStateException if the queue is or becomes closed
+     */
+    @Override
+    public int enqueueAll( Collection< ? extends E > values ) {
+        if ( closed ) {
+            throw new IllegalStateException( "queue is closed" );
+        }
+        int size = size();
+        for ( E value : values ) {
+            size = put( value, false, 0 );
+        }
+        notEmpty.signalOne();
+        return size;
+    }
+
+    /**
+     * Put a value in the next free slot, waiting for one if the ring is
+     * full. Consumers are not woken, except before parking.
+     *
+     * @param value the value to be enqueued
+     * @param timed whether to give up at the deadline
+     * @param deadline System.nanoTime() at which to give up, if timed
+     * @return the size of the queue after the value was added, or 0 if
+     * the time ran out
+     * @throws IllegalStateException if the queue is or becomes closed
+     */
+    private int put( E value, boolean timed, long deadline ) {
+        int spins = 0;
+        while ( true ) {
+            if ( closed ) {
+                throw new IllegalStateException( "queue is closed" );
+            }
+            int size = tryEnqueue( value );
+            if ( size > 0 ) {
+                return size;
+            }
+            long remaining = timed ? deadline - System.nanoTime() : 0;
+            if ( timed && remaining <= 0 ) {
+                return 0;
+            }
+            if ( spins < ParkingLot.SPIN_LIMIT ) {
+                ++spins;
+                Thread.onSpinWait();
+            }
+            else {
+                // Values put by enqueueAll have not woken anyone yet.
+                notEmpty.signalOne();
+                notFull.awaitNanos( this::mustWaitForRoom, remaining );
+            }
+        }
+    }
+
+    /**
+     * Put a value in the next free slot without blocking.
+     *
+     * @param value the value to be enqueued
+     * @return the size of the queue after the value was added, or 0 if
+     * the ring is full
+     */
+    private int tryEnqueue( E value ) {
+        long position = tail.value;
+        while ( true ) {
+            int slot = (int) position & mask;
+            long sequence = (long) SEQUENCE.getAcquire( sequences, slot );
+            if ( sequence == position ) {
+                if ( COUNTER.compareAndSet( tail, position, position + 1 ) ) {
+                    value.enterQueue();
+                    values[ slot ] = value;
+                    SEQUENCE.setRelease( sequences, slot, position + 1 );
+                    return (int) Math.max( 1, position + 1 - head.value );
+                }
+            }
+            else if ( sequence < position ) {
+                // The slot still holds the value from one lap ago.
+                return 0;
+            }
+            position = tail.value;
+        }
+    }
+
+    /**
+     * Removes the oldest value from the queue and calls
+     * TimedObject.exitQueue() on the value. If the queue is empty, the
+     * calling thread spins for a short time and then parks until an
+     * element arrives or the queue is closed.
+     *
+     * @return the value that has been in the queue for the longest period
+     * of time, or null if the queue is closed and empty
+     */
+    @Override
+    public E dequeue() {
+        int spins = 0;
+        E removed = tryDequeue();
+        while ( removed == null ) {
+            if ( closed ) {
+                // Nothing more is coming; take anything added before the close.
+                removed = tryDequeue();
+                if ( removed == null ) {
+                    return null;
+                }
+                break;
+            }
+            if ( spins < ParkingLot.SPIN_LIMIT ) {
+                ++spins;
+                Thread.onSpinWait();
+            }
+            else {
+                notEmpty.await( this::mustWait );
+            }
+            removed = tryDequeue();
+        }
+        notFull.signalOne();
+        if ( !isEmpty() ) {
+            notEmpty.signalOne();
+        }
+        removed.exitQueue();
+        return removed;
+    }
+
+    /**
+     * Removes up to max values, oldest first, without blocking, and calls
+     * TimedObject.exitQueue() on each of them.
+     *
+     * @param sink where the removed values are added
+     * @param max the most values to remove
+     * @return the number of values removed
+     */
+    @Override
+    public int drainTo( Collection< ? super E > sink, int max ) {
+        int count = 0;
+        E removed;
+        while ( count < max && ( removed = tryDequeue() ) != null ) {
+            removed.exitQueue();
+            sink.add( removed );
+            ++count;
+        }
+        if ( count > 0 ) {
+            notFull.signalAll();
+            if ( !isEmpty() ) {
+                notEmpty.signalOne();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Removes up to max values, oldest first, and calls
+     * TimedObject.exitQueue() on each of them. If the queue is empty,
+     * spins and then parks for up to the given time waiting for one.
+     *
+     * @param sink where the removed values are added
+     * @param max the most values to remove
+     * @param timeout how long to wait for the first value
+     * @param unit the unit of timeout
+     * @return the number of values removed, 0 if the time ran out or the
+     * queue is closed and empty
+     */
+    @Override
+    public int drainTo( Collection< ? super E > sink, int max,
+                        long timeout, TimeUnit unit ) {
+        long deadline = System.nanoTime() + unit.toNanos( timeout );
+        int spins = 0;
+        int count = drainTo( sink, max );
+        while ( count == 0 && max > 0 ) {
+            if ( closed ) {
+                return drainTo( sink, max );
+            }
+            long remaining = deadline - System.nanoTime();
+            if ( remaining <= 0 ) {
+                return 0;
+            }
+            if ( spins < ParkingLot.SPIN_LIMIT ) {
+                ++spins;
+                Thread.onSpinWait();
+            }
+            else {
+                notEmpty.awaitNanos( this::mustWait, remaining );
+            }
+            count = drainTo( sink, max );
+        }
+        return count;
+    }
+
+    /**
+     * Remove the oldest element without blocking.
+     *
+     * @return the oldest element, or null if the queue is empty
+     */
+    @SuppressWarnings( "unchecked" )
+    private E tryDequeue() {
+        long position = head.value;
+        while ( true ) {
+            int slot = (int) position & mask;
+            long sequence = (long) SEQUENCE.getAcquire( sequences, slot );
+            if ( sequence == position + 1 ) {
+                if ( COUNTER.compareAndSet( head, position, position + 1 ) ) {
+                    E value = (E) values[ slot ];
+                    values[ slot ] = null;
+                    SEQUENCE.setRelease( sequences, slot, position + mask + 1 );
+                    return value;
+                }
+            }
+            else if ( sequence < position + 1 ) {
+                // The slot's value has not been published yet.
+                return null;
+            }
+            position = head.value;
+        }
+    }
+
+    /**
+     * Closes the queue and wakes every parked consumer and producer.
+     * Consumers take what is left and then get null; producers waiting
+     * for room get an IllegalStateException.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        notEmpty.signalAll();
+        notFull.signalAll();
+    }
+
+    @Override
+    public boolean isClosed() { return closed; }
+
+    /**
+     * How many elements are in the queue?
+     *
+     * @return a snapshot of the number of elements
+     */
+    public int size() {
+        long first = head.value;
+        return (int) Math.max( 0, tail.value - first );
+    }
+
+    /**
+     * How many elements can the queue hold?
+     *
+     * @return the number of slots in the ring
+     */
+    public int getCapacity() { return values.length; }
+
+    /**
+     * Does a consumer that found nothing to take have to wait?
+     *
+     * @return true if the queue is empty and not closed
+     */
+    private boolean mustWait() {
+        return isEmpty() && !closed;
+    }
+
+    /**
+     * Does a producer that found no room have to wait?
+     *
+     * @return true if the ring is full and not closed
+     */
+    private boolean mustWaitForRoom() {
+        return isFull() && !closed;
+    }
+
+    /**
+     * Is there nothing for a consumer to take right now?
+     *
+     * @return true if the oldest slot has not been published
+     */
+    private boolean isEmpty() {
+        long position = head.value;
+        return (long) SEQUENCE.getAcquire( sequences, (int) position & mask ) <= position;
+    }
+
+    /**
+     * Is there no room for a producer right now?
+     *
+     * @return true if the next slot to fill has not been emptied
+     */
+    private boolean isFull() {
+        long position = tail.value;
+        return (long) SEQUENCE.getAcquire( sequences, (int) position & mask ) < position;
+    }
+}
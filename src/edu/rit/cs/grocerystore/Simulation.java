@@ -0,0 +1,647 @@
+package edu.rit.cs.grocerystore;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * One run of the checkout simulation, with all of its settings. The
+ * settings are the ones on the {@link GroceryLine} command line. Every
+ * run has its own checkout line and statistics, so separate runs may
+ * go on at the same time (for example in a {@link Sweep}), though
+ * discrete-event runs are the ones that do not compete for real time.
+ *
+ * @author RIT CS
+ */
+public class Simulation {
+
+    /** How many customers to simulate */
+    private final int numCustomers;
+    /** When each customer arrives, and with how many groceries */
+    private final ArrivalSource arrivals;
+    /** Where the arrivals come from if not generated, or null */
+    private final String arrivalsDescription;
+    /** The distribution of cart sizes, if generated */
+    private final Distribution loads;
+    /** The distribution of times between arrivals, if generated */
+    private final Distribution delays;
+    /** The mean number of groceries in each Cart */
+    private final int avgLoad;
+    /** The mean amount of time between Customer arrivals */
+    private final double avgDelay;
+    /** The kind of checkout line, e.g. {@link GroceryLine#FIFO_Q} */
+    private final String kind;
+    /** How many clerks there are */
+    private final int numClerks;
+    /** What the clerk autoscaler keeps near its target, or null for no autoscaling */
+    private final ClerkAutoscaler.Policy autoscalePolicy;
+    /** The autoscaler's target */
+    private final double autoscaleTarget;
+    /** The most clerks the autoscaler may start */
+    private final int maxClerks;
+    /** How customers are run, on the Threads engine */
+    private final CustomerPool.Mode customerMode;
+    /** {@link GroceryLine#THREADS_ENGINE} or {@link GroceryLine#EVENTS_ENGINE} */
+    private final String engine;
+    /** The most carts the checkout line holds */
+    private final int capacity;
+    /** Msec. customers wait for room in a full line, or negative for ever */
+    private final double patience;
+    /** Msec. customers wait in line before leaving it, or negative for ever */
+    private final double renege;
+    /** Msec. before the oldest cart goes first, or negative for never */
+    private final double maxAge;
+    /** The routing rule's name, or null if the line is not routed */
+    private final String route;
+    /** Msec. between live metrics snapshots, or 0 for no live metrics */
+    private final long metricsInterval;
+    /** The checkout line that customers join */
+    private final TSQueue< Cart > checkoutLine;
+    /** The checkout line, journaled, or null if it is not */
+    private final JournaledTSQueue< Cart > journal;
+    /** Where the line is journaled, or null */
+    private final String journalDirectory;
+    /** Who this process runs on a Remote line, e.g. {@link GroceryLine#BOTH_ROLE} */
+    private final String role;
+    /** Where the server of a Remote line is, or null */
+    private final String server;
+    /** The exact times of every cart, or null if only histograms are kept */
+    private final CartTimings timings;
+    /** The times of all serviced carts, and customers who left */
+    private final WaitStatistics statistics;
+    /** For each clerk, the times of the carts it serviced */
+    private final List< WaitStatistics > clerkStatistics;
+    /** How much time passed in the simulation, in msec. */
+    private double simulatedTime;
+    /** How much real time the run took, in msec. */
+    private double realTime;
+    /** How late customers got to the line, or null on the Events engine */
+    private LatencyHistogram arrivalSkew;
+    /** The clerk autoscaler of the last run, or null */
+    private ClerkAutoscaler autoscaler;
+
+    /**
+     * Check the settings and set up an empty store.
+     *
+     * @param numCustomers how many customers to simulate
+     * @param avgLoad the mean number of groceries in each Cart
+     * @param avgDelay the mean amount of time between Customer arrivals
+     * @param kind the kind of checkout line, e.g. {@link GroceryLine#FIFO_Q}
+     * @param options the optional name=value settings described in
+     *                {@link GroceryLine#main(String[])}, by name
+     *                ({@link GroceryLine#LOG_OPT} is ignored)
+     * @throws IllegalArgumentException if a setting is not valid
+     * @throws java.io.UncheckedIOException if a trace cannot be opened, or
+     * the server of a Remote line cannot be reached
+     */
+    public Simulation( int numCustomers, int avgLoad, double avgDelay,
+                       String kind, Map< String, String > options ) {
+        this.avgLoad = avgLoad;
+        this.avgDelay = avgDelay;
+        this.kind = kind;
+        this.numClerks = Integer.parseInt(
+                options.getOrDefault( GroceryLine.CLERKS_OPT, "1" ) );
+        if ( numClerks < 1 ) {
+            throw new IllegalArgumentException(
+                    GroceryLine.CLERKS_OPT + '=' + numClerks );
+        }
+        CheckoutLanes.Policy lanePolicy = CheckoutLanes.Policy.fromArg(
+                options.getOrDefault( GroceryLine.LANE_POLICY_OPT,
+                                      CheckoutLanes.Policy.SHORTEST.toString() ) );
+        this.customerMode = CustomerPool.Mode.fromArg(
+                options.getOrDefault( GroceryLine.CUSTOMERS_OPT,
+                                      CustomerPool.Mode.THREADS.toString() ) );
+        this.engine = options.getOrDefault(
+                GroceryLine.ENGINE_OPT, GroceryLine.THREADS_ENGINE );
+        if ( !engine.equals( GroceryLine.THREADS_ENGINE ) &&
+             !engine.equals( GroceryLine.EVENTS_ENGINE ) ) {
+            throw new IllegalArgumentException( GroceryLine.ENGINE_OPT + '=' + engine );
+        }
+        int requested = Integer.parseInt( options.getOrDefault(
+                GroceryLine.CAPACITY_OPT, String.valueOf( TSQueue.UNBOUNDED ) ) );
+        // A ring is always bounded, so both engines must know its real size.
+        this.capacity = kind.equals( GroceryLine.RING_Q ) ?
+                        RingTSQueue.ringSize( requested ) : requested;
+        this.patience = Double.parseDouble(
+                options.getOrDefault( GroceryLine.PATIENCE_OPT, "-1" ) );
+        this.renege = Double.parseDouble(
+                options.getOrDefault( GroceryLine.RENEGE_OPT, "-1" ) );
+        this.maxAge = Double.parseDouble(
+                options.getOrDefault( GroceryLine.AGING_OPT, "-1" ) );
+        this.route = options.get( GroceryLine.ROUTE_OPT );
+        if ( renege >= 0 && ( route != null ||
+             !( kind.equals( GroceryLine.FIFO_Q ) || kind.equals( GroceryLine.PRIO_Q ) ||
+                kind.equals( GroceryLine.HEAP_Q ) ) ) ) {
+            // Only the locking queues can take a cart out of the middle.
+            throw new IllegalArgumentException(
+                    GroceryLine.RENEGE_OPT + " is not supported by " +
+                    ( route != null ? GroceryLine.ROUTE_OPT : kind ) );
+        }
+        String autoscale = options.get( GroceryLine.AUTOSCALE_OPT );
+        if ( autoscale != null ) {
+            if ( !engine.equals( GroceryLine.THREADS_ENGINE ) || route != null ||
+                 kind.equals( GroceryLine.LANES_Q ) ) {
+                // Clerks can only come and go in real time, on a shared line.
+                throw new IllegalArgumentException(
+                        GroceryLine.AUTOSCALE_OPT + " is not supported by " +
+                        ( route != null ? GroceryLine.ROUTE_OPT :
+                          kind.equals( GroceryLine.LANES_Q ) ? kind : engine ) );
+            }
+            String[] parts = autoscale.split( ":", 2 );
+            this.autoscalePolicy = ClerkAutoscaler.Policy.fromArg( parts[ 0 ] );
+            this.autoscaleTarget = parts.length > 1 ? Double.parseDouble( parts[ 1 ] ) :
+                                   autoscalePolicy.getDefaultTarget();
+            this.maxClerks = Integer.parseInt( options.getOrDefault(
+                    GroceryLine.MAX_CLERKS_OPT, String.valueOf( numClerks * 4 ) ) );
+            if ( autoscaleTarget <= 0 || maxClerks < numClerks ) {
+                throw new IllegalArgumentException(
+                        autoscaleTarget <= 0 ? GroceryLine.AUTOSCALE_OPT + '=' + autoscale :
+                        GroceryLine.MAX_CLERKS_OPT + '=' + maxClerks );
+            }
+        }
+        else if ( options.containsKey( GroceryLine.MAX_CLERKS_OPT ) ) {
+            throw new IllegalArgumentException(
+                    GroceryLine.MAX_CLERKS_OPT + " needs " + GroceryLine.AUTOSCALE_OPT );
+        }
+        else {
+            this.autoscalePolicy = null;
+            this.autoscaleTarget = 0;
+            this.maxClerks = numClerks;
+        }
+        this.metricsInterval = Long.parseLong(
+                options.getOrDefault( GroceryLine.METRICS_OPT, "0" ) );
+        if ( metricsInterval < 0 ) {
+            throw new IllegalArgumentException(
+                    GroceryLine.METRICS_OPT + '=' + metricsInterval );
+        }
+        this.role = options.getOrDefault( GroceryLine.ROLE_OPT, GroceryLine.BOTH_ROLE );
+        if ( !role.equals( GroceryLine.BOTH_ROLE ) && !role.equals( GroceryLine.CUSTOMERS_ROLE ) &&
+             !role.equals( GroceryLine.CLERKS_ROLE ) ) {
+            throw new IllegalArgumentException( GroceryLine.ROLE_OPT + '=' + role );
+        }
+        this.server = !kind.equals( GroceryLine.REMOTE_Q ) ? null :
+                      options.getOrDefault( GroceryLine.SERVER_OPT,
+                                            "localhost:" + CheckoutProtocol.DEFAULT_PORT );
+        if ( server != null ) {
+            // The server decides the kind of line; here are only its users.
+            // Carts are numbered by whichever process made them, so they
+            // cannot index columns sized for this process's customers.
+            String unsupported =
+                    !engine.equals( GroceryLine.THREADS_ENGINE ) ? GroceryLine.ENGINE_OPT + '=' + engine :
+                    route != null ? GroceryLine.ROUTE_OPT :
+                    autoscale != null ? GroceryLine.AUTOSCALE_OPT :
+                    options.containsKey( GroceryLine.JOURNAL_OPT ) ? GroceryLine.JOURNAL_OPT :
+                    capacity != TSQueue.UNBOUNDED ? GroceryLine.CAPACITY_OPT :
+                    maxAge >= 0 ? GroceryLine.AGING_OPT :
+                    GroceryLine.COLUMNAR_TIMINGS.equals( options.get( GroceryLine.TIMINGS_OPT ) ) ?
+                    GroceryLine.TIMINGS_OPT + '=' + GroceryLine.COLUMNAR_TIMINGS : null;
+            if ( unsupported != null ) {
+                throw new IllegalArgumentException( unsupported + " is not supported by " + kind );
+            }
+        }
+        else if ( options.containsKey( GroceryLine.SERVER_OPT ) ||
+                  !role.equals( GroceryLine.BOTH_ROLE ) ) {
+            throw new IllegalArgumentException(
+                    ( options.containsKey( GroceryLine.SERVER_OPT ) ?
+                      GroceryLine.SERVER_OPT : GroceryLine.ROLE_OPT ) +
+                    " needs " + GroceryLine.REMOTE_Q );
+        }
+        // The router has no offer(), so its lanes must never be full,
+        // and a ring always has a bound.
+        else if ( route != null &&
+                  ( kind.equals( GroceryLine.LANES_Q ) || kind.equals( GroceryLine.RING_Q ) ||
+                    capacity != TSQueue.UNBOUNDED ) ) {
+            throw new IllegalArgumentException(
+                    GroceryLine.ROUTE_OPT + " is not supported by " +
+                    ( kind.equals( GroceryLine.LANES_Q ) || kind.equals( GroceryLine.RING_Q ) ?
+                      kind : GroceryLine.CAPACITY_OPT ) );
+        }
+        LaneRouter.Rule routeRule = route != null ? LaneRouter.Rule.fromArg( route ) : null;
+        int expressItems = Integer.parseInt(
+                options.getOrDefault( GroceryLine.EXPRESS_OPT, "10" ) );
+
+        this.loads = Distribution.fromArg(
+                options.getOrDefault( GroceryLine.LOAD_DIST_OPT, Distribution.SINE ),
+                avgLoad );
+        this.delays = Distribution.fromArg(
+                options.getOrDefault( GroceryLine.DELAY_DIST_OPT, Distribution.SINE ),
+                avgDelay );
+        String replay = options.get( GroceryLine.REPLAY_OPT );
+        String seed = options.get( GroceryLine.SEED_OPT );
+        String record = options.get( GroceryLine.RECORD_OPT );
+        if ( replay != null && ( seed != null || record != null ) ) {
+            throw new IllegalArgumentException(
+                    GroceryLine.REPLAY_OPT + " cannot be used with " +
+                    ( seed != null ? GroceryLine.SEED_OPT : GroceryLine.RECORD_OPT ) );
+        }
+        SplittableRandom random = seed != null ? new SplittableRandom( Long.parseLong( seed ) ) :
+                                  new SplittableRandom();
+        String store = options.getOrDefault( GroceryLine.TIMINGS_OPT, GroceryLine.HISTOGRAM_TIMINGS );
+        if ( !store.equals( GroceryLine.COLUMNAR_TIMINGS ) &&
+             !store.equals( GroceryLine.HISTOGRAM_TIMINGS ) ) {
+            throw new IllegalArgumentException( GroceryLine.TIMINGS_OPT + '=' + store );
+        }
+        this.journalDirectory = options.get( GroceryLine.JOURNAL_OPT );
+        // A ring is always bounded, and what comes back from the journal
+        // need not fit in it.
+        if ( journalDirectory != null &&
+             ( !engine.equals( GroceryLine.THREADS_ENGINE ) || route != null ||
+               kind.equals( GroceryLine.LANES_Q ) || kind.equals( GroceryLine.RING_Q ) ||
+               capacity != TSQueue.UNBOUNDED ) ) {
+            throw new IllegalArgumentException(
+                    GroceryLine.JOURNAL_OPT + " is not supported by " +
+                    ( route != null ? GroceryLine.ROUTE_OPT :
+                      kind.equals( GroceryLine.LANES_Q ) ||
+                      kind.equals( GroceryLine.RING_Q ) ? kind :
+                      capacity != TSQueue.UNBOUNDED ? GroceryLine.CAPACITY_OPT : engine ) );
+        }
+
+        /*
+         * Every setting has been checked; now the connection, the traces
+         * and the journal are opened, and let go of again if a later one
+         * cannot be.
+         */
+        TSQueue< Cart > line;
+        if ( server != null ) {
+            line = new RemoteTSQueue<>( parseAddress( server ), TimedCodec.CARTS );
+        }
+        else if ( route != null ) {
+            List< TSQueue< Cart > > lanes = new ArrayList<>();
+            for ( int i = 0; i < numClerks; ++i ) {
+                lanes.add( GroceryLine.newQueue( kind, 1, lanePolicy, capacity, maxAge ) );
+            }
+            line = new LaneRouter<>(
+                    lanes, routeRule,
+                    cart -> (long) cart.getCartSize() * Utilities.TIME_PER_CART_ITEM,
+                    (long) expressItems * Utilities.TIME_PER_CART_ITEM );
+        }
+        else {
+            line = GroceryLine.newQueue( kind, numClerks, lanePolicy, capacity, maxAge );
+        }
+        ArrivalSource source = null;
+        try {
+            if ( replay != null ) {
+                source = ArrivalTrace.replay( Path.of( replay ) );
+                if ( source.getCount() > Integer.MAX_VALUE ) {
+                    throw new IllegalArgumentException( "too many customers in " + replay );
+                }
+                this.arrivalsDescription = "Replaying " + source.getCount() +
+                                           " customers from " + replay + ".";
+                numCustomers = (int) source.getCount();
+            }
+            else {
+                source = new GeneratedArrivals( numCustomers, loads, delays, random );
+                this.arrivalsDescription = null;
+            }
+            if ( record != null ) {
+                source = ArrivalTrace.record( source, Path.of( record ) );
+            }
+            this.arrivals = source;
+            this.numCustomers = numCustomers;
+
+            /*
+             * Each clerk records into statistics of its own, which pass
+             * everything on to the statistics for the whole store.
+             */
+            if ( store.equals( GroceryLine.COLUMNAR_TIMINGS ) ) {
+                this.timings = new CartTimings( numCustomers );
+                this.statistics = new WaitStatistics( timings );
+            }
+            else {
+                this.timings = null;
+                this.statistics = new WaitStatistics();
+            }
+            this.clerkStatistics = new ArrayList<>();
+            for ( int i = 0; i < numClerks; ++i ) {
+                this.clerkStatistics.add( new WaitStatistics( statistics ) );
+            }
+
+            /*
+             * A journal left by a run that stopped part way gives back the
+             * times of the carts already checked out and the carts still in
+             * line. Clerks' views of lanes would go around the journal.
+             */
+            this.checkoutLine = line;
+            this.journal = journalDirectory == null ? null :
+                           new JournaledTSQueue<>( line, Path.of( journalDirectory ),
+                                                   TimedCodec.CARTS, statistics::record );
+        }
+        catch( RuntimeException e ) {
+            // The first failure is the one to report.
+            try {
+                if ( source != null ) {
+                    source.close();
+                }
+                if ( line instanceof RemoteTSQueue< Cart > remote ) {
+                    remote.disconnect();
+                }
+            }
+            catch( RuntimeException closing ) {
+                e.addSuppressed( closing );
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Describe the settings on standard output.
+     */
+    public void printSettings() {
+        if ( role.equals( GroceryLine.CLERKS_ROLE ) ) {
+            Utilities.println( "Checking out customers from other processes." );
+        }
+        else if ( arrivalsDescription == null ) {
+            Utilities.println("Generating " + numCustomers + " customers.");
+            Utilities.println("Average cart size is " + avgLoad + " (" + loads + ")");
+            Utilities.println("Average inter-customer arrival time is " + avgDelay +
+                              " (" + delays + ")");
+        }
+        else {
+            Utilities.println( arrivalsDescription );
+        }
+        if ( server != null ) {
+            Utilities.println( "Using the " + kind + " queue served at " + server + ", with " +
+                               ( role.equals( GroceryLine.CUSTOMERS_ROLE ) ? "no" :
+                                 String.valueOf( numClerks ) ) + " clerk(s) here." );
+        }
+        else if ( route != null ) {
+            Utilities.println( "Using a " + kind + " lane for each of " +
+                               numClerks + " clerk(s), routed by " + route + "." );
+        }
+        else {
+            Utilities.println( "Using a " + kind + " queue with " +
+                               numClerks + " clerk(s)." );
+        }
+        if ( capacity != TSQueue.UNBOUNDED ) {
+            Utilities.println( "The line holds at most " + capacity +
+                               " carts; customers wait " +
+                               ( patience < 0 ? "forever" : patience + " msec." ) +
+                               " for room." );
+        }
+        if ( autoscalePolicy != null ) {
+            Utilities.println( "Clerks come and go, " + numClerks + " to " + maxClerks +
+                               ", to keep " + autoscalePolicy + " near " +
+                               autoscaleTarget + "." );
+        }
+        if ( renege >= 0 ) {
+            Utilities.println( "Customers leave the line after waiting " +
+                               renege + " msec. in it." );
+        }
+        if ( journal != null ) {
+            Utilities.println( "Journaling the line in " + journalDirectory + "." );
+            if ( !journal.getRecoveredKeys().isEmpty() ) {
+                Utilities.println( "Picking up an earlier run: " +
+                                   journal.getRecoveredServiced() +
+                                   " carts were checked out, and " +
+                                   journal.getRecoveredUnfinished() +
+                                   " go back in line." );
+            }
+        }
+        if ( maxAge >= 0 ) {
+            Utilities.println( "Customers waiting over " + maxAge +
+                               " msec. go to the front of the line." );
+        }
+        if ( engine.equals( GroceryLine.EVENTS_ENGINE ) ) {
+            Utilities.println( "Running as a discrete-event simulation.\n" );
+        }
+        else if ( role.equals( GroceryLine.CLERKS_ROLE ) ) {
+            Utilities.println( "Running clerks only, until the line is closed.\n" );
+        }
+        else {
+            Utilities.println( "Running customers on " + customerMode + ".\n" );
+        }
+    }
+
+    /**
+     * Run the simulation until every customer has been checked out or
+     * has left.
+     *
+     * @throws InterruptedException if interrupted while waiting for a clerk
+     */
+    public void run() throws InterruptedException {
+        // Record the time that the simulation started.
+        long beginTime = System.nanoTime();
+
+        /*
+         * Each clerk serves its own lane if there are lanes, otherwise
+         * they all share the one checkout line. With live metrics,
+         * customers and clerks use the line through metered views, and
+         * the autoscaler samples it through metered views of its own.
+         */
+        QueueMetrics metrics =
+                metricsInterval == 0 ? null : new QueueMetrics( kind, checkoutLine );
+        QueueMetrics sampler =
+                autoscalePolicy == null ? null : new QueueMetrics( "autoscale", checkoutLine );
+        TSQueue< Cart > line = journal == null ? checkoutLine : journal;
+        TSQueue< Cart > customerLine = sampler == null ? line : sampler.meter( line );
+        customerLine = metrics == null ? customerLine : metrics.meter( customerLine );
+        List< TSQueue< Cart > > clerkLines = new ArrayList<>();
+        for ( int i = 0; i < numClerks; ++i ) {
+            TSQueue< Cart > clerkLine = GroceryLine.clerkView( line, i );
+            clerkLine = sampler == null ? clerkLine : sampler.meter( clerkLine );
+            clerkLines.add( metrics == null ? clerkLine : metrics.meter( clerkLine ) );
+        }
+        autoscaler = autoscalePolicy == null ? null :
+                     new ClerkAutoscaler( autoscalePolicy, autoscaleTarget, numClerks,
+                                          maxClerks, clerkLines.get( 0 ), sampler,
+                                          statistics, metrics );
+
+        if ( metrics != null ) {
+            metrics.start( metricsInterval );
+        }
+        try ( arrivals ) {
+            if ( engine.equals( GroceryLine.EVENTS_ENGINE ) ) {
+                EventSimulation simulation = new EventSimulation(
+                        customerLine, clerkLines, arrivals,
+                        capacity, patience, renege, statistics, clerkStatistics );
+                simulation.simulateCustomers();
+                simulatedTime = simulation.getElapsedTime();
+            }
+            else {
+                simulateWithThreads( customerLine, clerkLines, metrics );
+                simulatedTime = ( System.nanoTime() - beginTime ) / 1e6;
+            }
+        }
+        finally {
+            if ( metrics != null ) {
+                metrics.stop();
+            }
+        }
+
+        // Every cart is checked out, so there is nothing left to recover.
+        if ( journal != null ) {
+            journal.deleteJournal();
+        }
+        if ( checkoutLine instanceof RemoteTSQueue< Cart > remote ) {
+            remote.disconnect();
+        }
+
+        // Record the time that the simulation ended.
+        realTime = ( System.nanoTime() - beginTime ) / 1e6;
+    }
+
+    /**
+     * Show the results on standard output: the averages and the tail of
+     * the wait times, per routed lane or per clerk of CheckoutLanes, and
+     * the total time.
+     */
+    public void printResults() {
+        Utilities.println( System.lineSeparator() + "------------------" );
+        if ( role.equals( GroceryLine.CUSTOMERS_ROLE ) ) {
+            Utilities.println( "The carts were checked out by clerks in other processes." );
+        }
+        else {
+            statistics.print();
+        }
+        if ( timings != null ) {
+            Utilities.println( "---" );
+            timings.print();
+        }
+        if ( checkoutLine instanceof CheckoutLanes ||
+             checkoutLine instanceof LaneRouter ) {
+            Utilities.println( "---" );
+            WaitStatistics.printSummaryHeader();
+            // Clerks steal from each other's CheckoutLanes, so each row
+            // there is one clerk's carts, from whichever lanes.
+            boolean routed = checkoutLine instanceof LaneRouter;
+            for ( int i = 0; i < numClerks; ++i ) {
+                boolean express = checkoutLine instanceof LaneRouter< Cart > router &&
+                                  router.isExpress( i );
+                clerkStatistics.get( i ).printSummary(
+                        ( routed ? "lane " : "clerk " ) + i + ( express ? " express" : "" ),
+                        simulatedTime );
+            }
+            statistics.printSummary( routed ? "all lanes" : "all clerks", simulatedTime );
+        }
+        Utilities.println( "---" );
+        Utilities.printf( "Total simulation time was %.0f msec." +
+                          System.lineSeparator(), simulatedTime );
+        if ( engine.equals( GroceryLine.EVENTS_ENGINE ) ) {
+            Utilities.printf( "Real time taken was %.0f msec." +
+                              System.lineSeparator(), realTime );
+        }
+        else if ( checkoutLine instanceof ConditionTSQueue ) {
+            ConditionTSQueue< Cart > line = (ConditionTSQueue< Cart >) checkoutLine;
+            Utilities.printf( "Threads parked %d times on the line " +
+                              "(%d spurious wake-ups), for %.0f msec. in all." +
+                              System.lineSeparator(),
+                              line.getParks(), line.getSpuriousWakeups(),
+                              line.getParkedTime() );
+        }
+        if ( arrivalSkew != null ) {
+            Utilities.printf( "Customers got in line %.3f msec. late on average " +
+                              "(p50 %.3f, p99 %.3f, max %.3f msec.)." +
+                              System.lineSeparator(),
+                              arrivalSkew.getMean(),
+                              arrivalSkew.getValueAtPercentile( 50 ),
+                              arrivalSkew.getValueAtPercentile( 99 ),
+                              arrivalSkew.getMax() );
+        }
+        if ( autoscaler != null ) {
+            autoscaler.printTimeline();
+        }
+        Utilities.printf( "Throughput was %.2f carts/sec.", getThroughput() );
+    }
+
+    /** @return how many customers are simulated */
+    public int getNumCustomers() { return numCustomers; }
+
+    /** @return the mean number of groceries in each Cart */
+    public int getAvgLoad() { return avgLoad; }
+
+    /** @return the mean amount of time between Customer arrivals */
+    public double getAvgDelay() { return avgDelay; }
+
+    /** @return the kind of checkout line */
+    public String getKind() { return kind; }
+
+    /** @return how many clerks there are, or the fewest if they are autoscaled */
+    public int getNumClerks() { return numClerks; }
+
+    /** @return the statistics for the whole store, complete after {@link #run()} */
+    public WaitStatistics getStatistics() { return statistics; }
+
+    /** @return how much time passed in the simulation, in msec. */
+    public double getSimulatedTime() { return simulatedTime; }
+
+    /** @return how much real time the run took, in msec. */
+    public double getRealTime() { return realTime; }
+
+    /**
+     * @return the customers served per second of simulated time, or with
+     * clerks only, the carts they checked out
+     */
+    public double getThroughput() {
+        long served = role.equals( GroceryLine.CLERKS_ROLE ) ? statistics.getCount() :
+                      numCustomers;
+        return served * 1000.0 / Math.max( 1, simulatedTime );
+    }
+
+    /**
+     * Run the simulation in real time: customers on their own threads
+     * (see {@link CustomerPool}) and one thread per clerk. Once all
+     * customers are in line, the line is closed, and each clerk stops
+     * when it finds the line closed and empty. With autoscaling, the
+     * autoscaler starts and retires the clerks instead. On a Remote line,
+     * this process may run only the customers, or only the clerks, which
+     * then stop when the customers' processes have all closed the line.
+     *
+     * @param customerLine the queue customers put their Carts in
+     * @param clerkLines for each clerk, the queue it takes Carts from
+     * @param metrics the live metrics of the line, or null for none
+     * @throws InterruptedException if interrupted while joining a clerk
+     */
+    private void simulateWithThreads( TSQueue< Cart > customerLine,
+                                      List< TSQueue< Cart > > clerkLines,
+                                      QueueMetrics metrics )
+            throws InterruptedException {
+        CustomerPool customerPool = new CustomerPool(customerLine, arrivals, customerMode,
+                                                     patience, renege, statistics);
+        if ( journal != null ) {
+            customerPool.skip( journal.getRecoveredKeys() );
+        }
+        boolean customers = !role.equals( GroceryLine.CLERKS_ROLE );
+        boolean clerks = !role.equals( GroceryLine.CUSTOMERS_ROLE );
+        List< Thread > clerkThreads = new ArrayList<>();
+        for ( int i = 0; clerks && autoscaler == null && i < clerkLines.size(); ++i ) {
+            clerkThreads.add( new Thread(
+                    new Clerk( clerkLines.get( i ), clerkStatistics.get( i ), metrics ) ) );
+        }
+
+        clerkThreads.forEach( Thread::start );
+        if ( autoscaler != null ) {
+            autoscaler.start();
+        }
+        if ( customers ) {
+            customerPool.simulateCustomers();
+            arrivalSkew = customerPool.getArrivalSkew();
+            customerLine.close();
+        }
+        for ( Thread clerkThread : clerkThreads ) {
+            clerkThread.join();
+        }
+        if ( autoscaler != null ) {
+            autoscaler.finish();
+        }
+        customerPool.finish();
+    }
+
+    /**
+     * Find where a server listens.
+     *
+     * @param hostPort the host and port, separated by a colon
+     * @return the address
+     * @throws IllegalArgumentException if there is no port
+     */
+    private static InetSocketAddress parseAddress( String hostPort ) {
+        int colon = hostPort.lastIndexOf( ':' );
+        if ( colon < 0 ) {
+            throw new IllegalArgumentException( GroceryLine.SERVER_OPT + '=' + hostPort );
+        }
+        return new InetSocketAddress( hostPort.substring( 0, colon ),
+                                      Integer.parseInt( hostPort.substring( colon + 1 ) ) );
+    }
+}
@@ -0,0 +1,58 @@
+package edu.rit.cs.grocerystore;
+
+import java.util.SplittableRandom;
+
+/**
+ * The distribution of {@link Utilities#sinePDFDelay(java.util.Random, double)}:
+ * its density is the first half-cycle of a sine wave, from 0 to twice the
+ * mean, so the mean is also the most likely value.
+ * <p>
+ * Instead of computing an arc cosine for every sample, the inverse of the
+ * cumulative distribution is tabulated once, for all instances, and
+ * samples are interpolated from the table.
+ *
+ * @author RIT CS
+ */
+public class SineDistribution implements Distribution {
+
+    /** The number of intervals in the table (a power of 2) */
+    private static final int STEPS = 1 << 12;
+
+    /**
+     * The inverse of the cumulative distribution for a mean of 1/2, at
+     * STEPS+1 evenly spaced probabilities from 0 to 1
+     */
+    private static final double[] INVERSE = new double[ STEPS + 1 ];
+
+    static {
+        for ( int i = 0; i <= STEPS; ++i ) {
+            INVERSE[ i ] = Math.acos( 1.0 - 2.0 * i / STEPS ) / Math.PI;
+        }
+    }
+
+    /** The mean */
+    private final double mean;
+
+    /**
+     * Make a sine distribution.
+     *
+     * @param mean the mean, which is half the largest value
+     */
+    public SineDistribution( double mean ) {
+        this.mean = mean;
+    }
+
+    @Override
+    public double sample( SplittableRandom random ) {
+        double u = random.nextDouble() * STEPS;
+        int i = (int) u;
+        double low = INVERSE[ i ];
+        return 2.0 * mean * ( low + ( INVERSE[ i + 1 ] - low ) * ( u - i ) );
+    }
+
+    @Override
+    public double getMean() { return mean; }
+
+    @Override
+    public String toString() { return SINE; }
+}
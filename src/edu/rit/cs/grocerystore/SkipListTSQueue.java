@@ -0,0 +1,310 @@
+package edu.rit.cs.grocerystore;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A priority TSQueue that never takes a lock, so that many customers and
+ * clerks can use it at once. Values are kept in a concurrent skip list,
+ * smallest first by natural ordering; values that compare equal come out
+ * in the order they went in.
+ * <p>
+ * Optionally the queue also ages its values: once the oldest value has
+ * waited longer than a given time, it is handed out next regardless of
+ * its priority. That bounds how long a big cart can be passed over by a
+ * steady stream of small ones. For this the queue also keeps the values
+ * in arrival order, and a value is handed out by whichever list reaches
+ * it first.
+ * <p>
+ * A consumer that finds the queue empty spins briefly and then parks in a
+ * {@link ParkingLot}, as in {@link LockFreeTSQueue}.
+ *
+ * @param <E> the type of elements that will be in the queue (must be Comparable)
+ * @author RIT CS
+ */
+public class SkipListTSQueue< E extends TimedObject & Comparable< E > >
+        implements TSQueue< E > {
+
+    /** Means that values do not age */
+    public static final long NO_AGING = Long.MAX_VALUE;
+
+    /**
+     * A value in the queue, with its arrival number to break ties.
+     *
+     * @param <E> the type of the value
+     */
+    private static final class Entry< E extends Comparable< E > >
+            implements Comparable< Entry< E > > {
+        /** The value */
+        final E value;
+        /** Arrival order, unique within the queue */
+        final long seq;
+        /** 1 once a consumer has taken the value from either list */
+        volatile int claimed;
+
+        Entry( E value, long seq ) {
+            this.value = value;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo( Entry< E > other ) {
+            int result = value.compareTo( other.value );
+            return result != 0 ? result : Long.compare( seq, other.seq );
+        }
+    }
+
+    /** Atomic access to {@link Entry#claimed} */
+    @SuppressWarnings( "rawtypes" )
+    private static final AtomicIntegerFieldUpdater< Entry > CLAIMED =
+            AtomicIntegerFieldUpdater.newUpdater( Entry.class, "claimed" );
+
+    /** The values in priority order */
+    private final ConcurrentSkipListSet< Entry< E > > byPriority;
+    /** The values in arrival order, or null if values do not age */
+    private final ConcurrentLinkedQueue< Entry< E > > byArrival;
+    /** How long the oldest value may wait before it goes first */
+    private final long maxAgeNanos;
+    /** The next arrival number */
+    private final AtomicLong sequence;
+    /** The number of values enqueued and not yet claimed */
+    private final AtomicInteger size;
+    /** Where consumers wait while the queue is empty */
+    private final ParkingLot waiters;
+    /** Set once no more values may be added */
+    private volatile boolean closed;
+
+    /** Initialize an empty queue whose values do not age */
+    public SkipListTSQueue() {
+        this( NO_AGING );
+    }
+
+    /**
+     * Initialize an empty queue whose values age.
+     *
+     * @param maxAgeNanos how long, in nanoseconds of the values' clock,
+     *                    the oldest value may wait before it is handed
+     *                    out ahead of higher-priority values, or
+     *                    {@link #NO_AGING}
+     */
+    public SkipListTSQueue( long maxAgeNanos ) {
+        if ( maxAgeNanos < 0 ) {
+            throw new IllegalArgumentException( "max age: " + maxAgeNanos );
+        }
+        this.byPriority = new ConcurrentSkipListSet<>();
+        this.byArrival = maxAgeNanos == NO_AGING ? null : new ConcurrentLinkedQueue<>();
+        this.maxAgeNanos = maxAgeNanos;
+        this.sequence = new AtomicLong();
+        this.size = new AtomicInteger();
+        this.waiters = new ParkingLot();
+    }
+
+    /**
+     * Puts the value in the queue, and calls TimedObject.enterQueue() on
+     * the value before it becomes visible to consumers. Wakes up one
+     * parked consumer, if there is one.
+     *
+     * @param value the value to be enqueued
+     * @return the size of the queue after the value was added (a
+     * snapshot under contention)
+     */
+    @Override
+    public int enqueue( E value ) {
+        if ( closed ) {
+            throw new IllegalStateException( "queue is closed" );
+        }
+        value.enterQueue();
+        Entry< E > entry = new Entry<>( value, sequence.getAndIncrement() );
+        int newSize = size.incrementAndGet();
+        if ( byArrival != null ) {
+            byArrival.add( entry );
+        }
+        byPriority.add( entry );
+        waiters.signalOne();
+        return newSize;
+    }
+
+    /**
+     * Removes the value that should be served next and calls
+     * TimedObject.exitQueue() on it. If the queue is empty, the calling
+     * thread spins for a short time and then parks until a value arrives
+     * or the queue is closed.
+     *
+     * @return the oldest value if it has waited too long, otherwise the
+     * minimum value according to E's natural ordering; null if the queue
+     * is closed and empty
+     */
+    @Override
+    public E dequeue() {
+        int spins = 0;
+        E removed = tryDequeue();
+        while ( removed == null ) {
+            if ( closed ) {
+                // Nothing more is coming; take anything added before the close.
+                removed = tryDequeue();
+                if ( removed == null ) {
+                    return null;
+                }
+                break;
+            }
+            if ( spins < ParkingLot.SPIN_LIMIT ) {
+                ++spins;
+                Thread.onSpinWait();
+            }
+            else {
+                waiters.await( this::mustWait );
+            }
+            removed = tryDequeue();
+        }
+        if ( !isEmpty() ) {
+            waiters.signalOne();
+        }
+        removed.exitQueue();
+        return removed;
+    }
+
+    /**
+     * Removes up to max values, in the order dequeue() would, without
+     * blocking, and calls TimedObject.exitQueue() on each of them.
+     *
+     * @param sink where the removed values are added
+     * @param max the most values to remove
+     * @return the number of values removed
+     */
+    @Override
+    public int drainTo( Collection< ? super E > sink, int max ) {
+        int count = 0;
+        E removed;
+        while ( count < max && ( removed = tryDequeue() ) != null ) {
+            removed.exitQueue();
+            sink.add( removed );
+            ++count;
+        }
+        if ( count > 0 && !isEmpty() ) {
+            waiters.signalOne();
+        }
+        return count;
+    }
+
+    /**
+     * Removes up to max values, in the order dequeue() would, and calls
+     * TimedObject.exitQueue() on each of them. If the queue is empty,
+     * spins and then parks for up to the given time waiting for one.
+     *
+     * @param sink where the removed values are added
+     * @param max the most values to remove
+     * @param timeout how long to wait for the first value
+     * @param unit the unit of timeout
+     * @return the number of values removed, 0 if the time ran out or the
+     * queue is closed and empty
+     */
+    @Override
+    public int drainTo( Collection< ? super E > sink, int max,
+                        long timeout, TimeUnit unit ) {
+        long deadline = System.nanoTime() + unit.toNanos( timeout );
+        int spins = 0;
+        int count = drainTo( sink, max );
+        while ( count == 0 && max > 0 ) {
+            if ( closed ) {
+                return drainTo( sink, max );
+            }
+            long remaining = deadline - System.nanoTime();
+            if ( remaining <= 0 ) {
+                return 0;
+            }
+            if ( spins < ParkingLot.SPIN_LIMIT ) {
+                ++spins;
+                Thread.onSpinWait();
+            }
+            else {
+                waiters.awaitNanos( this::mustWait, remaining );
+            }
+            count = drainTo( sink, max );
+        }
+        return count;
+    }
+
+    /**
+     * Take the next value without blocking: the oldest one if it has
+     * waited too long, otherwise the smallest.
+     *
+     * @return the value, or null if the queue is empty
+     */
+    private E tryDequeue() {
+        if ( byArrival != null ) {
+            Entry< E > oldest;
+            while ( ( oldest = byArrival.peek() ) != null ) {
+                if ( oldest.claimed != 0 ) {
+                    // Already served by priority; drop it from this list.
+                    byArrival.remove( oldest );
+                }
+                else if ( oldest.value.getWaitingNanos() >= maxAgeNanos &&
+                          claim( oldest ) ) {
+                    byArrival.remove( oldest );
+                    byPriority.remove( oldest );
+                    return oldest.value;
+                }
+                else {
+                    break;
+                }
+            }
+        }
+        Entry< E > first;
+        while ( ( first = byPriority.pollFirst() ) != null ) {
+            if ( claim( first ) ) {
+                return first.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Make sure only one consumer gets an entry.
+     *
+     * @param entry an entry found in either list
+     * @return true if the caller now owns the entry's value
+     */
+    private boolean claim( Entry< E > entry ) {
+        if ( CLAIMED.compareAndSet( entry, 0, 1 ) ) {
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Closes the queue and wakes every parked consumer. Consumers take
+     * what is left and then get null.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        waiters.signalAll();
+    }
+
+    @Override
+    public boolean isClosed() { return closed; }
+
+    /**
+     * Does a consumer that found nothing to take have to wait?
+     *
+     * @return true if the queue is empty and not closed
+     */
+    private boolean mustWait() {
+        return isEmpty() && !closed;
+    }
+
+    /**
+     * Is there nothing for a consumer to take right now?
+     *
+     * @return true if every value enqueued has been claimed
+     */
+    private boolean isEmpty() {
+        return size.get() == 0;
+    }
+}
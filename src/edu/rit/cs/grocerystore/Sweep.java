@@ -0,0 +1,306 @@
+package edu.rit.cs.grocerystore;
+
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Run the simulation for every combination of several loads, arrival
+ * times, clerk counts and queue kinds, and write one row of results per
+ * combination as CSV or JSON. The runs are independent of each other, so
+ * they all go on a fork-join pool at once and use every processor.
+ * Runs use the discrete-event engine unless told otherwise, and nothing
+ * is logged.
+ *
+ * @author RIT CS
+ */
+public class Sweep {
+
+    /** Name of the option giving the file to write the results to */
+    public static final String OUT_OPT = "out";
+
+    /** Name of the option giving how many simulations run at once */
+    public static final String THREADS_OPT = "threads";
+
+    /** The columns of the results, in order */
+    private static final String[] COLUMNS = {
+            "kind", "clerks", "avg_load", "avg_delay", "customers", "served",
+            "rejected", "timed_out", "reneged", "simulated_msec", "real_msec",
+            "throughput", "mean_wait", "p50_wait", "p90_wait", "p99_wait", "p99_9_wait",
+            "max_wait"
+    };
+
+    /**
+     * Run the sweep.
+     *
+     * @param args Strings from the command line:
+     *             [0] How many customers to simulate in each run;
+     *             [1] The average grocery cart loads;
+     *             [2] The average times between customer arrivals;
+     *             [3] The numbers of clerks;
+     *             [4] The queue kinds, separated by commas;
+     *             [5...] optional name=value settings: out=file for where
+     *                 to write the results, as JSON if the name ends in
+     *                 .json and CSV otherwise (default CSV on standard
+     *                 output); threads=N for how many runs go on at once
+     *                 (default the number of processors); and any setting
+     *                 of {@link GroceryLine#main(String[])}, which applies
+     *                 to every run, except record=, journal=, metrics=,
+     *                 server= and role=; the Remote kind cannot be swept
+     *                 either.
+     *             Each of [1] to [3] is a list of numbers and ranges
+     *             separated by commas, where a range low:high:step gives
+     *             every number from low to high, step apart (the step
+     *             defaults to 1). The loads and clerks must be whole
+     *             numbers.
+     */
+    public static void main( String[] args ) {
+        try {
+            if ( args.length < 5 ) {
+                throw new IndexOutOfBoundsException( args.length );
+            }
+            int numCustomers = Integer.parseInt( args[ 0 ] );
+            List< Integer > loads = parseWholeList( args[ 1 ] );
+            List< Double > delays = parseList( args[ 2 ] );
+            List< Integer > clerks = parseWholeList( args[ 3 ] );
+            String[] kinds = args[ 4 ].split( "," );
+
+            // Take out the settings for the sweep; the rest are for the runs.
+            String out = null;
+            int threads = Runtime.getRuntime().availableProcessors();
+            List< String > runArgs = new ArrayList<>();
+            for ( int i = 5; i < args.length; ++i ) {
+                if ( args[ i ].startsWith( OUT_OPT + '=' ) ) {
+                    out = args[ i ].substring( OUT_OPT.length() + 1 );
+                }
+                else if ( args[ i ].startsWith( THREADS_OPT + '=' ) ) {
+                    threads = Integer.parseInt(
+                            args[ i ].substring( THREADS_OPT.length() + 1 ) );
+                }
+                else {
+                    runArgs.add( args[ i ] );
+                }
+            }
+            Map< String, String > options =
+                    GroceryLine.parseOptions( runArgs.toArray( new String[ 0 ] ), 0 );
+            /*
+             * Runs would write the same trace or journal at once, and the
+             * first to finish would delete the journal or close a shared
+             * remote line. Metrics snapshots would go into the results.
+             */
+            for ( String shared : new String[]{
+                    GroceryLine.RECORD_OPT, GroceryLine.JOURNAL_OPT, GroceryLine.SERVER_OPT,
+                    GroceryLine.ROLE_OPT, GroceryLine.METRICS_OPT } ) {
+                if ( options.containsKey( shared ) ) {
+                    throw new IllegalArgumentException( shared + " cannot be used in a sweep" );
+                }
+            }
+            if ( Arrays.asList( kinds ).contains( GroceryLine.REMOTE_Q ) ) {
+                throw new IllegalArgumentException(
+                        GroceryLine.REMOTE_Q + " cannot be used in a sweep" );
+            }
+            options.putIfAbsent( GroceryLine.ENGINE_OPT, GroceryLine.EVENTS_ENGINE );
+            EventLog.setVerbosity( EventLog.Verbosity.OFF );
+
+            // Set every run up first, so that bad settings show up at once.
+            List< Simulation > simulations = new ArrayList<>();
+            for ( String kind : kinds ) {
+                for ( int numClerks : clerks ) {
+                    options.put( GroceryLine.CLERKS_OPT, String.valueOf( numClerks ) );
+                    for ( int load : loads ) {
+                        for ( double delay : delays ) {
+                            simulations.add( new Simulation(
+                                    numCustomers, load, delay, kind, options ) );
+                        }
+                    }
+                }
+            }
+
+            long begin = System.nanoTime();
+            runAll( simulations, threads );
+            System.err.printf( "Ran %d simulations on %d threads in %.0f msec.%n",
+                               simulations.size(), threads,
+                               ( System.nanoTime() - begin ) / 1e6 );
+
+            boolean json = out != null && out.endsWith( ".json" );
+            if ( out == null ) {
+                PrintWriter writer = new PrintWriter( System.out );
+                write( writer, simulations, false );
+                writer.flush();
+            }
+            else {
+                try ( PrintWriter writer = new PrintWriter( out ) ) {
+                    write( writer, simulations, json );
+                }
+            }
+        }
+        catch( IndexOutOfBoundsException | IllegalArgumentException e ) {
+            System.err.println( e.getClass().getSimpleName() +
+                                ( e.getMessage() != null ? ": " + e.getMessage() : "" ) );
+            System.err.println(
+                    "Usage: java Sweep #custs avg-loads avg-inter-arrival-times " +
+                    "#clerks kind,... [" + OUT_OPT + "=file.csv/file.json] [" +
+                    THREADS_OPT + "=#threads] [GroceryLine settings...]" +
+                    System.lineSeparator() +
+                    "       where each list is like 5,10:30:5" );
+            System.exit( 1 );
+        }
+        catch( FileNotFoundException e ) {
+            System.err.println( "Cannot write results: " + e.getMessage() );
+            System.exit( 1 );
+        }
+    }
+
+    /**
+     * Parse a list of numbers and ranges, like 5,10:30:5.
+     *
+     * @param arg the list
+     * @return every number in the list, in order
+     * @throws IllegalArgumentException if the list is not well formed
+     */
+    private static List< Double > parseList( String arg ) {
+        List< Double > values = new ArrayList<>();
+        for ( String item : arg.split( "," ) ) {
+            String[] range = item.split( ":" );
+            if ( range.length == 1 ) {
+                values.add( Double.parseDouble( item ) );
+                continue;
+            }
+            if ( range.length > 3 ) {
+                throw new IllegalArgumentException( item );
+            }
+            double low = Double.parseDouble( range[ 0 ] );
+            double high = Double.parseDouble( range[ 1 ] );
+            double step = range.length == 3 ? Double.parseDouble( range[ 2 ] ) : 1;
+            if ( step <= 0 ) {
+                throw new IllegalArgumentException( item );
+            }
+            // Count steps rather than add them up, so rounding cannot skip high.
+            long count = (long) Math.floor( ( high - low ) / step + 1e-9 );
+            for ( long i = 0; i <= count; ++i ) {
+                values.add( low + i * step );
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Parse a list of numbers and ranges that must all be whole numbers.
+     *
+     * @param arg the list, as for {@link #parseList(String)}
+     * @return the numbers, in order
+     * @throws IllegalArgumentException if a number is not whole, or not
+     * a number
+     */
+    private static List< Integer > parseWholeList( String arg ) {
+        List< Integer > values = new ArrayList<>();
+        for ( double value : parseList( arg ) ) {
+            if ( value != Math.rint( value ) || Math.abs( value ) > Integer.MAX_VALUE ) {
+                throw new IllegalArgumentException( "not a whole number: " + value );
+            }
+            values.add( (int) value );
+        }
+        return values;
+    }
+
+    /**
+     * Run all the simulations on a fork-join pool and wait for them.
+     *
+     * @param simulations the simulations, not yet run
+     * @param threads how many may run at once
+     */
+    private static void runAll( List< Simulation > simulations, int threads ) {
+        ForkJoinPool pool = new ForkJoinPool( threads );
+        try {
+            List< Callable< Simulation > > tasks = new ArrayList<>();
+            for ( Simulation simulation : simulations ) {
+                tasks.add( () -> {
+                    simulation.run();
+                    return simulation;
+                } );
+            }
+            for ( Future< Simulation > done : pool.invokeAll( tasks ) ) {
+                done.get();
+            }
+        }
+        catch( InterruptedException | ExecutionException e ) {
+            throw new RuntimeException( e );
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Write one row of results per simulation.
+     *
+     * @param writer where to write
+     * @param simulations the simulations, all run
+     * @param json true for a JSON array of objects, false for CSV
+     */
+    private static void write( PrintWriter writer, List< Simulation > simulations,
+                               boolean json ) {
+        if ( json ) {
+            writer.println( "[" );
+        }
+        else {
+            writer.println( String.join( ",", COLUMNS ) );
+        }
+        for ( int row = 0; row < simulations.size(); ++row ) {
+            Object[] values = valuesOf( simulations.get( row ) );
+            StringBuilder line = new StringBuilder( json ? "  {" : "" );
+            for ( int i = 0; i < COLUMNS.length; ++i ) {
+                if ( i > 0 ) {
+                    line.append( json ? ", " : "," );
+                }
+                String value = values[ i ] instanceof Double d ?
+                               String.format( Locale.ROOT, "%.3f", d ) :
+                               String.valueOf( values[ i ] );
+                if ( json ) {
+                    line.append( '"' ).append( COLUMNS[ i ] ).append( "\": " );
+                    line.append( values[ i ] instanceof String ? '"' + value + '"' : value );
+                }
+                else {
+                    line.append( value );
+                }
+            }
+            if ( json ) {
+                line.append( row < simulations.size() - 1 ? "}," : "}" );
+            }
+            writer.println( line );
+        }
+        if ( json ) {
+            writer.println( "]" );
+        }
+    }
+
+    /**
+     * Get the results of a simulation, in the order of {@link #COLUMNS}.
+     *
+     * @param simulation a simulation that has been run
+     * @return its settings and results
+     */
+    private static Object[] valuesOf( Simulation simulation ) {
+        WaitStatistics statistics = simulation.getStatistics();
+        LatencyHistogram wait = statistics.getTotalWait();
+        return new Object[]{
+                simulation.getKind(), simulation.getNumClerks(),
+                simulation.getAvgLoad(), simulation.getAvgDelay(),
+                simulation.getNumCustomers(), statistics.getCount(),
+                statistics.getRejected(), statistics.getTimedOut(), statistics.getReneged(),
+                simulation.getSimulatedTime(), simulation.getRealTime(),
+                simulation.getThroughput(), wait.getMean(),
+                wait.getValueAtPercentile( 50 ), wait.getValueAtPercentile( 90 ),
+                wait.getValueAtPercentile( 99 ), wait.getValueAtPercentile( 99.9 ),
+                wait.getMax()
+        };
+    }
+}
@@ -2,6 +2,11 @@ package edu.rit.cs.grocerystore;
 
 import edu.rit.cs.grocerystore.TimedObject;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 /**
  * A queue interface with some special properties:
  * <ul>
@@ -21,6 +26,24 @@ import edu.rit.cs.grocerystore.TimedObject;
  *     call the appropriate methods in the {@link TimedObject} class to record
  *     the times of those events.
  * </li>
+ * <li>
+ *     A queue may have a limited capacity, in which case enqueue blocks
+ *     while it is full. The {@link #offer(TimedObject, long, TimeUnit)} and
+ *     {@link #poll(long, TimeUnit)} methods give up after a time instead
+ *     of blocking indefinitely.
+ * </li>
+ * <li>
+ *     Elements can also be added and removed in batches, so that the cost
+ *     of locking and waking is paid once per batch rather than once per
+ *     element. Each element is still timed individually.
+ * </li>
+ * <li>
+ *     A queue is closed once its producers are finished. After that,
+ *     consumers take what is left, and then {@link #dequeue()} returns
+ *     null instead of blocking. No sentinel values are needed, so any
+ *     number of consumers stop after one {@link #close()}, whatever
+ *     order the queue hands out values in.
+ * </li>
  * </ul>
  *
  * @param <E> the type of elements that will be in the queue
@@ -28,22 +51,150 @@ import edu.rit.cs.grocerystore.TimedObject;
  */
 public interface TSQueue< E extends TimedObject > {
 
+    /** The capacity of a queue that never fills up */
+    public static final int UNBOUNDED = Integer.MAX_VALUE;
+
     /**
      * Puts the value in the queue, and calls {@link TimedObject#enterQueue()}
      * on the value.
      *
+     * If the queue has a limited capacity, this method blocks while the
+     * queue is full.
+     *
      * @param value the value to be enqueued
      * @return the size of the queue, after the value was added
+     * @throws IllegalStateException if the queue is closed
      */
     public abstract int enqueue( E value );
 
+    /**
+     * Puts the value in the queue if there is room for it within the given
+     * time, and if so calls {@link TimedObject#enterQueue()} on the value.
+     * A timeout of 0 means to give up at once if the queue is full.
+     * The default implementation is for queues that are never full.
+     *
+     * @param value the value to be enqueued
+     * @param timeout how long to wait for room
+     * @param unit the unit of timeout
+     * @return the size of the queue after the value was added, or 0 if
+     * the value was not added because the queue stayed full
+     * @throws IllegalStateException if the queue is closed
+     */
+    public default int offer( E value, long timeout, TimeUnit unit ) {
+        return enqueue( value );
+    }
+
     /**
      * Removes a value from the queue and calls {@link TimedObject#exitQueue()}
      * on the value. This method is expected to block (wait) if the queue
-     * is empty, rather than throwing an exception or returning a null value.
-     * @return the value that was removed
+     * is empty, rather than throwing an exception, until a value arrives
+     * or the queue is closed.
+     * @return the value that was removed, or null if the queue is closed
+     * and empty
      */
     public abstract E dequeue();
 
+    /**
+     * Removes a value from the queue and calls {@link TimedObject#exitQueue()}
+     * on the value, waiting up to the given time if the queue is empty.
+     * The default implementation uses
+     * {@link #drainTo(Collection, int, long, TimeUnit)}.
+     *
+     * @param timeout how long to wait for a value
+     * @param unit the unit of timeout
+     * @return the value that was removed, or null if the time ran out or
+     * the queue is closed and empty
+     */
+    public default E poll( long timeout, TimeUnit unit ) {
+        List< E > removed = new ArrayList<>( 1 );
+        return drainTo( removed, 1, timeout, unit ) == 1 ? removed.get( 0 ) : null;
+    }
+
+    /**
+     * Puts all the values in the queue, in the collection's iteration
+     * order, and calls {@link TimedObject#enterQueue()} on each of them.
+     * The default implementation enqueues them one at a time.
+     *
+     * @param values the values to be enqueued
+     * @return the size of the queue, after the values were added
+     * @throws IllegalStateException if the queue is closed
+     */
+    public default int enqueueAll( Collection< ? extends E > values ) {
+        int size = 0;
+        for ( E value : values ) {
+            size = enqueue( value );
+        }
+        return size;
+    }
+
+    /**
+     * Removes as many values as are available, up to a maximum, adds them
+     * to the given collection in the order they would have been dequeued,
+     * and calls {@link TimedObject#exitQueue()} on each of them.
+     * This method does not block.
+     *
+     * @param sink where the removed values are added
+     * @param max the most values to remove
+     * @return the number of values removed, possibly 0
+     */
+    public abstract int drainTo( Collection< ? super E > sink, int max );
+
+    /**
+     * Like {@link #drainTo(Collection, int)}, but if the queue is empty,
+     * waits up to the given time for at least one value to arrive. It
+     * does not wait if the queue is closed.
+     *
+     * @param sink where the removed values are added
+     * @param max the most values to remove
+     * @param timeout how long to wait for the first value
+     * @param unit the unit of timeout
+     * @return the number of values removed, 0 if the time ran out or the
+     * queue is closed and empty
+     */
+    public abstract int drainTo( Collection< ? super E > sink, int max,
+                                 long timeout, TimeUnit unit );
+
+    /**
+     * Takes the value out of the queue wherever it is, as when a customer
+     * gives up waiting, and calls {@link TimedObject#exitQueue()} on it.
+     * Values are found by identity. Queues that cannot do this need not
+     * support it; the default implementation does not.
+     *
+     * @param value the value to be removed
+     * @return true if the value was removed, false if it was not in the
+     * queue, for example because it has already been dequeued
+     * @throws UnsupportedOperationException if the queue cannot remove
+     * values from the middle
+     */
+    public default boolean remove( E value ) {
+        throw new UnsupportedOperationException(
+                getClass().getSimpleName() + " cannot remove values" );
+    }
+
+    /**
+     * Tells the queue that a value it handed out has been serviced, after
+     * {@link TimedObject#servicingDone()} was called on it, so that queues
+     * that keep track of their values beyond the line itself, such as a
+     * {@link JournaledTSQueue}, know that it is finished with. The default
+     * implementation does nothing.
+     *
+     * @param value a value that was dequeued from this queue
+     */
+    public default void serviced( E value ) {}
+
+    /**
+     * Closes the queue: no more values may be put in it, and every
+     * consumer waiting for a value is woken. Values already in the queue
+     * can still be removed. Call this once all producers have finished;
+     * calling it again has no effect.
+     */
+    public abstract void close();
+
+    /**
+     * Has the queue been closed?
+     *
+     * @return true once {@link #close()} has been called
+     */
+    public abstract boolean isClosed();
 
 }
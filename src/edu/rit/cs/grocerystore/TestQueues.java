@@ -1,7 +1,26 @@
 package edu.rit.cs.grocerystore;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 /**
  * Do a test of the thread-safe queue implementations.
@@ -17,6 +36,20 @@ public class TestQueues {
 
     private static Random rand = new Random();
 
+    /** Writes test values, told apart by their numbers */
+    private static final TimedCodec< TimedInteger > CODEC = new TimedCodec<>() {
+        @Override
+        public long key( TimedInteger value ) { return value.get(); }
+
+        @Override
+        public int payload( TimedInteger value ) { return value.get(); }
+
+        @Override
+        public TimedInteger rebuild( long key, int payload, Clock clock ) {
+            return new TimedInteger( payload, clock );
+        }
+    };
+
     /**
      * Execute tests on the student's implementations of the queues.
      * @param args unused
@@ -24,6 +57,572 @@ public class TestQueues {
     public static void main( String[] args ) {
         fifo();
         prio();
+        lockFree();
+        ring();
+        skipList();
+        heap();
+        clock();
+        aging();
+        routing();
+        batches();
+        distributions();
+        closing();
+        timingWheel();
+        removal();
+        journal();
+        journalAppends();
+        remote();
+        patience();
+    }
+
+    /**
+     * Check that customers who could give up, but do not, change nothing
+     * in a discrete-event run: the same seeded customers, with a line of
+     * three, wait for room for ever and then for 100 seconds, which is
+     * longer than anyone waits; then, with no limit on the line, they wait
+     * in it for ever and for 100 seconds. You should see the same time and
+     * throughput in each pair, and none giving up.
+     */
+    private static void patience() {
+        System.out.println(
+                System.lineSeparator() + "Patience" + System.lineSeparator() );
+        for ( String patience : List.of( "-1", "100000" ) ) {
+            Simulation simulation = eventSimulation(
+                    GroceryLine.CAPACITY_OPT, "3", GroceryLine.PATIENCE_OPT, patience );
+            System.out.printf( "patience %s: %.0f msec., %.2f carts/sec., %d gave up%n",
+                               patience, simulation.getSimulatedTime(),
+                               simulation.getThroughput(),
+                               simulation.getStatistics().getTimedOut() );
+        }
+        for ( String renege : List.of( "-1", "100000" ) ) {
+            Simulation simulation = eventSimulation( GroceryLine.RENEGE_OPT, renege );
+            System.out.printf( "renege %s: %.0f msec., %.2f carts/sec., %d left the line%n",
+                               renege, simulation.getSimulatedTime(),
+                               simulation.getThroughput(),
+                               simulation.getStatistics().getReneged() );
+        }
+    }
+
+    /**
+     * Run 200 seeded customers through a FIFO line as a discrete-event
+     * simulation, without logging them.
+     *
+     * @param options optional settings, as name, value, name, value...
+     * @return the finished run
+     */
+    private static Simulation eventSimulation( String... options ) {
+        Map< String, String > settings = new HashMap<>();
+        settings.put( GroceryLine.ENGINE_OPT, GroceryLine.EVENTS_ENGINE );
+        settings.put( GroceryLine.SEED_OPT, "1" );
+        for ( int i = 0; i + 1 < options.length; i += 2 ) {
+            settings.put( options[ i ], options[ i + 1 ] );
+        }
+        EventLog.Verbosity verbosity = EventLog.getVerbosity();
+        EventLog.setVerbosity( EventLog.Verbosity.OFF );
+        try {
+            Simulation simulation = new Simulation( 200, 5, 5, GroceryLine.FIFO_Q, settings );
+            simulation.run();
+            return simulation;
+        }
+        catch( InterruptedException e ) {
+            throw new RuntimeException( e );
+        }
+        finally {
+            EventLog.setVerbosity( verbosity );
+        }
+    }
+
+    /**
+     * Run the usual producers and consumers on a FIFO line served over
+     * localhost, sharing one connection; the same expectations as
+     * {@link #fifo()}. Then, from a connection of its own, a consumer
+     * polls the empty line, and takes ten values another connection put
+     * in 100 msec. before, and the line is closed. You should see nothing
+     * polled after 100 msec., 0 to 9 taken in order after at least 100
+     * msec. in line, and the line closed for both.
+     */
+    private static void remote() {
+        System.out.println(
+                System.lineSeparator() + "Remote" + System.lineSeparator() );
+        CheckoutServer< TimedInteger > server = new CheckoutServer<>(
+                new FIFOTSQueue<>(), CODEC,
+                new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) );
+        server.start();
+        InetSocketAddress address =
+                new InetSocketAddress( InetAddress.getLoopbackAddress(), server.getPort() );
+        RemoteTSQueue< TimedInteger > shared = new RemoteTSQueue<>( address, CODEC );
+        go( shared );
+        // The producers' extra terminators are still in line.
+        shared.drainTo( new ArrayList<>(), 100 );
+
+        RemoteTSQueue< TimedInteger > consumer = new RemoteTSQueue<>( address, CODEC );
+        long start = System.nanoTime();
+        TimedInteger polled = consumer.poll( 100L, TimeUnit.MILLISECONDS );
+        long waited = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+        List< TimedInteger > in = new ArrayList<>();
+        for ( int i = 0; i < 10; ++i ) {
+            in.add( new TimedInteger( i ) );
+        }
+        shared.enqueueAll( in );
+        sleep( 100L );
+        List< TimedInteger > taken = new ArrayList<>();
+        consumer.drainTo( taken, 100 );
+        shared.close();
+        TimedInteger after = consumer.dequeue();
+        boolean refused;
+        try {
+            shared.enqueue( new TimedInteger( 10 ) );
+            refused = false;
+        }
+        catch( IllegalStateException e ) {
+            refused = true;
+        }
+        StringBuilder line = new StringBuilder(
+                "Polled " + polled + " after " + ( waited >= 100 ? "at least " : "only " ) +
+                "100 msec., took" );
+        taken.forEach( item -> line.append( ' ' ).append( item.get() ) );
+        line.append( ", in line at least 100 msec. " )
+            .append( taken.stream().allMatch( item -> item.getInQueueTime() >= 100 ) )
+            .append( ", closed " ).append( consumer.isClosed() )
+            .append( ", then took " ).append( after )
+            .append( ", refused after close " ).append( refused );
+        System.out.println( line );
+        shared.disconnect();
+        consumer.disconnect();
+        try {
+            server.stop();
+        }
+        catch( InterruptedException ie ) {}
+    }
+
+    /**
+     * Check that a journaled line comes back after a crash, simulated by
+     * closing the journal with values still in the queue, which leaves it
+     * as a crash would, without the journal still running. Of 0 to 9, 0 and
+     * 1 are serviced, 2 is being serviced and 5 leaves. After the first
+     * crash you should see serviced 0 1 and in line 2 3 4 6 7 8 9, with
+     * the times kept; then 2 is serviced, and after the second crash you
+     * should see serviced 0 1 2 and in line 3 4 6 7 8 9.
+     */
+    private static void journal() {
+        System.out.println(
+                System.lineSeparator() + "Journal" + System.lineSeparator() );
+        Path directory;
+        try {
+            directory = Files.createTempDirectory( "journal" );
+        }
+        catch( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+        ManualClock clock = new ManualClock();
+        JournaledTSQueue< TimedInteger > queue = new JournaledTSQueue<>(
+                new FIFOTSQueue<>(), directory, CODEC, item -> {} );
+        List< TimedInteger > in = new ArrayList<>();
+        for ( int i = 0; i < 10; ++i ) {
+            in.add( new TimedInteger( i, clock ) );
+        }
+        queue.enqueueAll( in );
+        for ( int i = 0; i < 3; ++i ) {
+            clock.advance( 1_000_000L );
+            TimedInteger item = queue.dequeue();
+            clock.advance( 500_000L );
+            if ( i < 2 ) {
+                item.servicingDone();
+                queue.serviced( item );
+            }
+        }
+        queue.remove( in.get( 5 ) );
+        queue.closeJournal();
+
+        for ( int crash = 1; crash <= 2; ++crash ) {
+            List< TimedInteger > serviced = new ArrayList<>();
+            queue = new JournaledTSQueue<>( new FIFOTSQueue<>(), directory, CODEC,
+                                            serviced::add );
+            StringBuilder line = new StringBuilder( "After crash " + crash + ": serviced" );
+            serviced.forEach( item -> line.append( ' ' ).append( item.get() ).append(
+                    String.format( " (%.1f+%.1f)", item.getInQueueTime(),
+                                   item.getServiceTime() ) ) );
+            List< TimedInteger > waiting = new ArrayList<>();
+            queue.drainTo( waiting, 100 );
+            line.append( ", in line" );
+            waiting.forEach( item -> line.append( ' ' ).append( item.get() ) );
+            System.out.println( line );
+            // Put them back, and service the first one.
+            queue.enqueueAll( waiting );
+            TimedInteger first = queue.dequeue();
+            first.servicingDone();
+            if ( crash == 1 ) {
+                queue.serviced( first );
+                queue.closeJournal();
+            }
+        }
+        queue.deleteJournal();
+        System.out.println( "Journal deleted: " + !Files.exists( directory ) );
+    }
+
+    /**
+     * Check that appends from several threads at once, enough to fill
+     * more than one segment, all come back, and that replay goes on past
+     * a record that was never finished, as a crash in the middle of an
+     * append leaves. You should see all 600000 appends replayed once each,
+     * and keys 0 and 2 around the hole.
+     */
+    private static void journalAppends() {
+        System.out.println(
+                System.lineSeparator() + "Journal appends" + System.lineSeparator() );
+        int threads = 4;
+        int each = 150_000;
+        Path directory;
+        Path holed;
+        try {
+            directory = Files.createTempDirectory( "journal" );
+            holed = Files.createTempDirectory( "journal" );
+        }
+        catch( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+        QueueJournal journal = new QueueJournal( directory );
+        List< Thread > appenders = new ArrayList<>();
+        for ( int t = 0; t < threads; ++t ) {
+            long first = (long) t * each;
+            Thread appender = new Thread( () -> {
+                for ( int i = 0; i < each; ++i ) {
+                    journal.append( 1, first + i, i, 0, 0 );
+                }
+            } );
+            appenders.add( appender );
+            appender.start();
+        }
+        for ( Thread appender : appenders ) {
+            try {
+                appender.join();
+            }
+            catch( InterruptedException ie ) {}
+        }
+        journal.close();
+        BitSet seen = new BitSet( threads * each );
+        AtomicInteger twice = new AtomicInteger();
+        long read = QueueJournal.replay( directory, ( kind, key, payload, start, end ) -> {
+            if ( seen.get( (int) key ) ) {
+                twice.incrementAndGet();
+            }
+            seen.set( (int) key );
+        } );
+        System.out.println( journal.getAppended() + " appended, " + read + " replayed, " +
+                            seen.cardinality() + " keys, " + twice + " twice" );
+        QueueJournal.delete( directory );
+
+        QueueJournal small = new QueueJournal( holed );
+        for ( int key = 0; key < 3; ++key ) {
+            small.append( 1, key, key, 0, 0 );
+        }
+        small.close();
+        try ( Stream< Path > files = Files.list( holed );
+              FileChannel segment = FileChannel.open( files.findFirst().orElseThrow(),
+                                                      StandardOpenOption.WRITE ) ) {
+            segment.write( ByteBuffer.allocate( QueueJournal.SHORT_RECORD_BYTES ),
+                           QueueJournal.HEADER_BYTES + QueueJournal.SHORT_RECORD_BYTES );
+        }
+        catch( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+        StringBuilder keys = new StringBuilder( "Around a hole, replayed keys" );
+        QueueJournal.replay( holed, ( kind, key, payload, start, end ) ->
+                keys.append( ' ' ).append( key ) );
+        System.out.println( keys );
+        QueueJournal.delete( holed );
+    }
+
+    /**
+     * Check that the timing wheel fires tasks in tick order and never
+     * early, with ticks spread over three of its wheels and time advanced
+     * by uneven steps. You should see all fired, in order, none early.
+     */
+    private static void timingWheel() {
+        System.out.println(
+                System.lineSeparator() + "Timing wheel" + System.lineSeparator() );
+        TimingWheel wheel = new TimingWheel();
+        SplittableRandom random = new SplittableRandom( 42 );
+        long[] now = { 0 };
+        List< Long > fired = new ArrayList<>();
+        boolean[] early = { false };
+        int count = 10_000;
+        for ( int i = 0; i < count; ++i ) {
+            long tick = random.nextLong( 1L << 20 );
+            wheel.schedule( tick, () -> {
+                early[ 0 ] |= tick > now[ 0 ];
+                fired.add( tick );
+            } );
+        }
+        while ( !wheel.isEmpty() ) {
+            now[ 0 ] += 1 + random.nextInt( 1000 );
+            wheel.advance( now[ 0 ] );
+        }
+        boolean inOrder = true;
+        for ( int i = 1; i < fired.size(); ++i ) {
+            inOrder &= fired.get( i - 1 ) <= fired.get( i );
+        }
+        System.out.println( "fired " + fired.size() + " of " + count +
+                            ", in order " + inOrder + ", none early " + !early[ 0 ] );
+    }
+
+    /**
+     * Check taking values out of the middle of a line. From 5 3 8 1 9 3 7,
+     * 8 and the first 3 leave, 9 becomes 0 and is moved, and then a value
+     * already gone is not found: you should see 0 1 3 5 7, found false.
+     * Then every value leaves a line of 20000 in random order. The Heap
+     * line should be faster than the Priority line, and the gap grows
+     * with the length of the line, since each removal from the Priority
+     * line searches the whole of it.
+     */
+    private static void removal() {
+        System.out.println(
+                System.lineSeparator() + "Removal" + System.lineSeparator() );
+        HeapTSQueue< TimedInteger > heap = new HeapTSQueue<>();
+        List< TimedInteger > in = new ArrayList<>();
+        for ( int value : new int[]{ 5, 3, 8, 1, 9, 3, 7 } ) {
+            in.add( new TimedInteger( value ) );
+        }
+        heap.enqueueAll( in );
+        heap.remove( in.get( 2 ) );
+        heap.remove( in.get( 1 ) );
+        in.get( 4 ).set( 0 );
+        heap.update( in.get( 4 ) );
+        List< TimedInteger > out = new ArrayList<>();
+        heap.drainTo( out, 100 );
+        StringBuilder values = new StringBuilder();
+        out.forEach( item -> values.append( ' ' ).append( item.get() ) );
+        System.out.println( "Heap:" + values + ", found " + heap.remove( in.get( 0 ) ) );
+
+        int count = 20_000;
+        List< TimedInteger > line = new ArrayList<>();
+        SplittableRandom random = new SplittableRandom( 42 );
+        for ( int i = 0; i < count; ++i ) {
+            line.add( new TimedInteger( random.nextInt( 100 ) ) );
+        }
+        List< TimedInteger > leaving = new ArrayList<>( line );
+        Collections.shuffle( leaving, new Random( 42 ) );
+        for ( String kind : List.of( GroceryLine.PRIO_Q, GroceryLine.HEAP_Q ) ) {
+            TSQueue< TimedInteger > queue =
+                    GroceryLine.newQueue( kind, 1, CheckoutLanes.Policy.SHORTEST );
+            queue.enqueueAll( line );
+            long start = System.nanoTime();
+            int removed = 0;
+            for ( TimedInteger item : leaving ) {
+                removed += queue.remove( item ) ? 1 : 0;
+            }
+            System.out.printf( "%s: %d of %d left in %.1f msec.%n", kind, removed, count,
+                               ( System.nanoTime() - start ) / 1e6 );
+        }
+    }
+
+    /**
+     * Check that closing a queue stops any number of consumers, whatever
+     * the kind of queue. Three consumers wait on an empty queue, ten
+     * values go in, and the queue is closed. Each line should show all
+     * ten taken, every consumer stopped, and a later enqueue refused.
+     */
+    private static void closing() {
+        System.out.println(
+                System.lineSeparator() + "Closing" + System.lineSeparator() );
+        for ( String kind : List.of( GroceryLine.FIFO_Q, GroceryLine.PRIO_Q,
+                                     GroceryLine.LOCKFREE_Q, GroceryLine.LANES_Q,
+                                     GroceryLine.SKIPLIST_Q, GroceryLine.RING_Q,
+                                     GroceryLine.HEAP_Q ) ) {
+            TSQueue< TimedInteger > queue =
+                    GroceryLine.newQueue( kind, 3, CheckoutLanes.Policy.ROUND_ROBIN );
+            AtomicInteger taken = new AtomicInteger();
+            List< Thread > consumers = new ArrayList<>();
+            for ( int i = 0; i < 3; ++i ) {
+                TSQueue< TimedInteger > line = GroceryLine.clerkView( queue, i );
+                consumers.add( new Thread( () -> {
+                    while ( line.dequeue() != null ) {
+                        taken.incrementAndGet();
+                    }
+                } ) );
+            }
+            consumers.forEach( Thread::start );
+            sleep( 50L );
+            for ( int i = 0; i < 10; ++i ) {
+                queue.enqueue( new TimedInteger( i ) );
+            }
+            queue.close();
+            boolean stopped = true;
+            for ( Thread consumer : consumers ) {
+                try {
+                    consumer.join( 1000L );
+                }
+                catch( InterruptedException ie ) {}
+                stopped &= !consumer.isAlive();
+            }
+            boolean refused;
+            try {
+                queue.enqueue( new TimedInteger( 10 ) );
+                refused = false;
+            }
+            catch( IllegalStateException e ) {
+                refused = true;
+            }
+            System.out.println( kind + ": took " + taken.get() + ", all stopped " +
+                                stopped + ", refused after close " + refused );
+        }
+    }
+
+    /**
+     * Check that every distribution has the mean it was given, and show
+     * how long sampling takes. Each line should show a mean close to 10.
+     * The empirical histogram is 1, 2 and 9 with weights 3, 1 and 1, so
+     * its values are scaled by 10/3. Erlang with 1000 phases should take
+     * no longer per sample than with 4.
+     */
+    private static void distributions() {
+        System.out.println(
+                System.lineSeparator() + "Distributions" + System.lineSeparator() );
+        final int samples = 1_000_000;
+        for ( Distribution distribution : List.of(
+                new SineDistribution( 10 ), new ExponentialDistribution( 10 ),
+                new ErlangDistribution( 4, 10 ), new ErlangDistribution( 1000, 10 ),
+                new LogNormalDistribution( 10, 1 ),
+                new EmpiricalDistribution( new double[]{ 1, 2, 9 },
+                                           new double[]{ 3, 1, 1 }, 10 ) ) ) {
+            SplittableRandom random = new SplittableRandom( 1 );
+            long begin = System.nanoTime();
+            double sum = 0;
+            for ( int i = 0; i < samples; ++i ) {
+                sum += distribution.sample( random );
+            }
+            long nanos = System.nanoTime() - begin;
+            System.out.printf( "%-14s mean %6.3f, %5.1f nsec. per sample%n",
+                               distribution, sum / samples, (double) nanos / samples );
+        }
+    }
+
+    /**
+     * Check the batch operations on every kind of queue. Each line should
+     * show 0 through 9 going in, a queue size of 10, and all ten coming
+     * back out (smallest first, so the same order, for Priority).
+     * The timed drain of the empty queue should give up and return 0.
+     */
+    private static void batches() {
+        System.out.println(
+                System.lineSeparator() + "Batches" + System.lineSeparator() );
+        List< TimedInteger > in = new ArrayList<>();
+        for ( int i = 0; i < 10; ++i ) {
+            in.add( new TimedInteger( i ) );
+        }
+        for ( String kind : List.of( GroceryLine.FIFO_Q, GroceryLine.PRIO_Q,
+                                     GroceryLine.LOCKFREE_Q, GroceryLine.LANES_Q,
+                                     GroceryLine.SKIPLIST_Q, GroceryLine.RING_Q,
+                                     GroceryLine.HEAP_Q ) ) {
+            TSQueue< TimedInteger > queue =
+                    GroceryLine.newQueue( kind, 1, CheckoutLanes.Policy.SHORTEST );
+            TSQueue< TimedInteger > clerkLine = GroceryLine.clerkView( queue, 0 );
+            int size = queue.enqueueAll( in );
+            List< TimedInteger > out = new ArrayList<>();
+            int first = clerkLine.drainTo( out, 4 );
+            int rest = clerkLine.drainTo( out, 100, 10, TimeUnit.MILLISECONDS );
+            int none = clerkLine.drainTo( out, 100, 10, TimeUnit.MILLISECONDS );
+            StringBuilder values = new StringBuilder();
+            out.forEach( item -> values.append( ' ' ).append( item.get() ) );
+            System.out.println( kind + ": size " + size + ", drained " +
+                                first + '+' + rest + '+' + none + ":" + values );
+        }
+    }
+
+    /**
+     * Check that queue times are recorded at full precision, using a
+     * manually advanced clock so the expected values are exact.
+     * You should see 1.5, 0.25 and 1.75 msec.
+     */
+    private static void clock() {
+        System.out.println(
+                System.lineSeparator() + "Clock" + System.lineSeparator() );
+        ManualClock clock = new ManualClock();
+        TSQueue< TimedInteger > queue = new FIFOTSQueue<>();
+        queue.enqueue( new TimedInteger( 1, clock ) );
+        clock.advance( 1_500_000L );
+        TimedInteger item = queue.dequeue();
+        clock.advance( 250_000L );
+        item.servicingDone();
+        System.out.println( "In queue " + item.getInQueueTime() +
+                            ", service " + item.getServiceTime() +
+                            ", total " + item.getTotalWaitTime() + " msec." );
+    }
+
+    /**
+     * Check tie-breaking and aging in the skip-list priority queue, using a
+     * manually advanced clock. You should see 9 1 1 3, because 9 has waited
+     * past the 1 msec. limit, and the two 1s in the order they went in.
+     */
+    private static void aging() {
+        System.out.println(
+                System.lineSeparator() + "Aging" + System.lineSeparator() );
+        ManualClock clock = new ManualClock();
+        TSQueue< TimedInteger > queue = new SkipListTSQueue<>( 1_000_000L );
+        queue.enqueue( new TimedInteger( 9, clock ) );
+        clock.advance( 2_000_000L );
+        TimedInteger first = new TimedInteger( 1, clock );
+        TimedInteger second = new TimedInteger( 1, clock );
+        queue.enqueue( new TimedInteger( 3, clock ) );
+        queue.enqueue( first );
+        queue.enqueue( second );
+        StringBuilder values = new StringBuilder();
+        List< TimedInteger > out = new ArrayList<>();
+        for ( int i = 0; i < 4; ++i ) {
+            out.add( queue.dequeue() );
+            values.append( ' ' ).append( out.get( i ).get() );
+        }
+        System.out.println( "Order:" + values + ", ties in arrival order: " +
+                            ( out.get( 1 ) == first && out.get( 2 ) == second ) );
+    }
+
+    /**
+     * Check express routing, with each value's work being the value itself
+     * and the express lane taking work up to 3. You should see 1 2 0 in
+     * the express lane and 5 7 in the other; 0 joins the express lane
+     * because it has less work waiting. Then a taker from the whole
+     * router polls it empty, waits for 4, which goes in the regular lane
+     * while it waits, and is stopped by closing: you should see null, 4
+     * and null.
+     */
+    private static void routing() {
+        System.out.println(
+                System.lineSeparator() + "Routing" + System.lineSeparator() );
+        LaneRouter< TimedInteger > router = new LaneRouter<>(
+                List.of( new FIFOTSQueue<>(), new FIFOTSQueue<>() ),
+                LaneRouter.Rule.EXPRESS, TimedInteger::get, 3 );
+        for ( int value : new int[]{ 5, 1, 7, 2, 0 } ) {
+            router.enqueue( new TimedInteger( value ) );
+        }
+        for ( int i = 0; i < router.numLanes(); ++i ) {
+            List< TimedInteger > out = new ArrayList<>();
+            router.lane( i ).drainTo( out, 10 );
+            StringBuilder values = new StringBuilder();
+            out.forEach( item -> values.append( ' ' ).append( item.get() ) );
+            System.out.println( "Lane " + i + ( router.isExpress( i ) ? " (express)" : "" ) +
+                                ":" + values );
+        }
+        TimedInteger polled = router.poll( 50L, TimeUnit.MILLISECONDS );
+        List< TimedInteger > taken = Collections.synchronizedList( new ArrayList<>() );
+        Thread taker = new Thread( () -> {
+            TimedInteger item = router.dequeue();
+            while ( item != null ) {
+                taken.add( item );
+                item = router.dequeue();
+            }
+        } );
+        taker.start();
+        sleep( 50L );
+        router.enqueue( new TimedInteger( 4 ) );
+        sleep( 50L );
+        router.close();
+        try {
+            taker.join( 1000L );
+        }
+        catch( InterruptedException ie ) {}
+        System.out.println( "Whole router: polled " + polled + ", took " +
+                            ( taken.isEmpty() ? "nothing" : taken.get( 0 ).get() ) +
+                            ", then " + ( taker.isAlive() ? "still waiting" : "null" ) );
     }
 
     /**
@@ -38,6 +637,25 @@ public class TestQueues {
         go( new FIFOTSQueue<>() );
     }
 
+    /**
+     * Same expectations as {@link #fifo()}, but for the lock-free queue.
+     */
+    private static void lockFree() {
+        System.out.println(
+                System.lineSeparator() + "LockFree" + System.lineSeparator() );
+        go( new LockFreeTSQueue<>() );
+    }
+
+    /**
+     * Same expectations as {@link #fifo()}, but for a ring of only four
+     * slots, so that producers fill it, wait for room, and wrap around.
+     */
+    private static void ring() {
+        System.out.println(
+                System.lineSeparator() + "Ring" + System.lineSeparator() );
+        go( new RingTSQueue<>( 4 ) );
+    }
+
     /**
      * For this test, you should see the smallest number in the queue
      * always being picked to come out. Variation will exist because the
@@ -51,6 +669,25 @@ public class TestQueues {
         go( new PriorityTSQueue<>() );
     }
 
+    /**
+     * Same expectations as {@link #prio()}, but for the lock-free
+     * skip-list priority queue.
+     */
+    private static void skipList() {
+        System.out.println(
+                System.lineSeparator() + "SkipList" + System.lineSeparator() );
+        go( new SkipListTSQueue<>() );
+    }
+
+    /**
+     * Same expectations as {@link #prio()}, but for the indexed heap.
+     */
+    private static void heap() {
+        System.out.println(
+                System.lineSeparator() + "Heap" + System.lineSeparator() );
+        go( new HeapTSQueue<>() );
+    }
+
     /**
      * Start up 2 consumer threads and 5 producer threads.
      * Each producer thread will put into the queue 4 random integer values plus
@@ -163,7 +800,9 @@ public class TestQueues {
 class TimedInteger extends TimedObject implements Comparable< TimedInteger > {
     private int d;
     public TimedInteger( int d ) { this.d = d; }
+    public TimedInteger( int d, Clock clock ) { super( clock ); this.d = d; }
     public int get() { return this.d; }
+    public void set( int d ) { this.d = d; }
     @Override
     public int compareTo( TimedInteger other ) {
         return Integer.compare( this.d, other.d );
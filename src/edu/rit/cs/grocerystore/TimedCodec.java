@@ -0,0 +1,54 @@
+package edu.rit.cs.grocerystore;
+
+/**
+ * How to write a queue's value as a few numbers, and make it again from
+ * them somewhere else: in a {@link JournaledTSQueue}'s journal after a
+ * restart, or in another process through a {@link RemoteTSQueue}. Only
+ * what a value holds is written; its times are not, since they only
+ * mean something to the clock they were read from.
+ *
+ * @param <E> the type of the values
+ * @author RIT CS
+ */
+public interface TimedCodec< E extends TimedObject > {
+
+    /** Carts, told apart by their customers' numbers */
+    TimedCodec< Cart > CARTS = new TimedCodec<>() {
+        @Override
+        public long key( Cart cart ) { return cart.getId(); }
+
+        @Override
+        public int payload( Cart cart ) { return cart.getCartSize(); }
+
+        @Override
+        public Cart rebuild( long key, int payload, Clock clock ) {
+            return new Cart( payload, (int) key, clock );
+        }
+    };
+
+    /**
+     * Tell a value apart from every other one.
+     *
+     * @param value the value
+     * @return its key
+     */
+    long key( E value );
+
+    /**
+     * What else is needed to make the value again?
+     *
+     * @param value the value
+     * @return what the value holds besides its key
+     */
+    int payload( E value );
+
+    /**
+     * Make a value again.
+     *
+     * @param key its key
+     * @param payload what it holds besides its key
+     * @param clock where its times are to be taken from
+     * @return the value
+     */
+    E rebuild( long key, int payload, Clock clock );
+}
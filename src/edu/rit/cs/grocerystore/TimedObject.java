@@ -9,21 +9,43 @@ package edu.rit.cs.grocerystore;
  *     <li>when did the item come out of the queue and start being serviced</li>
  *     <li>when was the item's servicing complete</li>
  * </ul>
+ * Times are read in nanoseconds from a {@link Clock}, which is the
+ * monotonic system timer unless a different one is given to the
+ * constructor. They are reported in msec., keeping the fraction.
  *
  * @author RIT CS
  */
 public abstract class TimedObject {
 
+    /** Nanoseconds per millisecond, for reporting times in msec. */
+    private static final double NANOS_PER_MSEC = 1_000_000.0;
+
+    private final Clock clock;
     private long enterTime;
     private long exitTime;
     private long finishedTime;
 
+    /**
+     * Create an object whose times are taken from the system timer.
+     */
+    protected TimedObject() {
+        this( Clock.MONOTONIC );
+    }
+
+    /**
+     * Create an object whose times are taken from the given clock.
+     * @param clock where the current time comes from
+     */
+    protected TimedObject( Clock clock ) {
+        this.clock = clock;
+    }
+
     /**
      * Indicates that this item has arrived at the queue for service.
      * Record the current time.
      */
     public void enterQueue() {
-        this.enterTime = System.currentTimeMillis();
+        this.enterTime = clock.nanoTime();
     }
 
     /**
@@ -31,7 +53,7 @@ public abstract class TimedObject {
      * Record the current time.
      */
     public void exitQueue() {
-        this.exitTime = System.currentTimeMillis();
+        this.exitTime = clock.nanoTime();
     }
 
     /**
@@ -39,30 +61,87 @@ public abstract class TimedObject {
      * Record the current time.
      */
     public void servicingDone() {
-        this.finishedTime = System.currentTimeMillis();
+        this.finishedTime = clock.nanoTime();
+    }
+
+    /**
+     * When did this item arrive at the queue?
+     * @return the enter-queue time, in nanoseconds from the clock's origin
+     */
+    public long getEnterNanos() {
+        return this.enterTime;
+    }
+
+    /**
+     * When did this item come out of the queue?
+     * @return the exit-queue time, in nanoseconds from the clock's origin
+     */
+    public long getExitNanos() {
+        return this.exitTime;
+    }
+
+    /**
+     * When was this item's servicing complete?
+     * @return the servicing-done time, in nanoseconds from the clock's origin
+     */
+    public long getFinishedNanos() {
+        return this.finishedTime;
+    }
+
+    /**
+     * How long has this item been in the queue so far? Only meaningful
+     * between enterQueue() and exitQueue().
+     * @return the current time minus the enter-queue time, in nanoseconds
+     */
+    public long getWaitingNanos() {
+        return clock.nanoTime() - this.enterTime;
     }
 
     /**
      * How long did this item have to wait?
-     * @return the exit-queue time minus the enter-queue time
+     * @return the exit-queue time minus the enter-queue time, in msec.
      */
     public double getInQueueTime() {
-        return ( this.exitTime - this.enterTime );
+        return getInQueueNanos() / NANOS_PER_MSEC;
     }
 
     /**
      * How long did it take for this item to be serviced?
-     * @return the servicing-done time minus the exit-queue time
+     * @return the servicing-done time minus the exit-queue time, in msec.
      */
     public double getServiceTime() {
-        return ( this.finishedTime - this.exitTime );
+        return getServiceNanos() / NANOS_PER_MSEC;
     }
 
     /**
      * How much time overall was this item in the system?
-     * @return the servicing-done time minus the enter-queue time
+     * @return the servicing-done time minus the enter-queue time, in msec.
      */
     public double getTotalWaitTime() {
-        return ( this.finishedTime - this.enterTime );
+        return getTotalWaitNanos() / NANOS_PER_MSEC;
+    }
+
+    /**
+     * How long did this item have to wait, at full precision?
+     * @return the exit-queue time minus the enter-queue time, in nanoseconds
+     */
+    public long getInQueueNanos() {
+        return this.exitTime - this.enterTime;
+    }
+
+    /**
+     * How long did it take for this item to be serviced, at full precision?
+     * @return the servicing-done time minus the exit-queue time, in nanoseconds
+     */
+    public long getServiceNanos() {
+        return this.finishedTime - this.exitTime;
+    }
+
+    /**
+     * How much time overall was this item in the system, at full precision?
+     * @return the servicing-done time minus the enter-queue time, in nanoseconds
+     */
+    public long getTotalWaitNanos() {
+        return this.finishedTime - this.enterTime;
     }
 }
@@ -0,0 +1,185 @@
+package edu.rit.cs.grocerystore;
+
+/**
+ * A hierarchical timing wheel, after Varghese and Lauck: tasks are
+ * filed by the tick at which they are due, in constant time, and fired
+ * in tick order as time advances.
+ * <p>
+ * There are {@value #LEVELS} wheels of {@value #SLOTS} slots each. A
+ * tick number is read as {@value #LEVELS} groups of {@value #SLOT_BITS}
+ * bits, and a task goes on the wheel of the highest group in which its
+ * tick differs from the current one, in the slot that group names.
+ * Whenever the current tick reaches a slot on a higher wheel, that
+ * slot's tasks cascade down to lower wheels, and the lowest wheel's
+ * slots are fired one tick at a time. Tasks due in the same tick fire
+ * in the order they were scheduled.
+ * <p>
+ * A wheel is not thread-safe; it belongs to one thread, such as an
+ * {@link ArrivalDispatcher}.
+ *
+ * @author RIT CS
+ */
+class TimingWheel {
+
+    /** log2 of the number of slots in each wheel */
+    static final int SLOT_BITS = 8;
+
+    /** The number of slots in each wheel */
+    static final int SLOTS = 1 << SLOT_BITS;
+
+    /** The number of wheels, enough for 2^40 ticks ahead */
+    static final int LEVELS = 5;
+
+    /** For picking a slot out of a tick number */
+    private static final int MASK = SLOTS - 1;
+
+    /**
+     * A task waiting in a slot, linked to the next one in the same slot.
+     */
+    private static final class Entry {
+        /** The tick at which the task is due */
+        final long tick;
+        /** What to run */
+        final Runnable task;
+        /** The next entry in the slot, or null */
+        Entry next;
+
+        Entry( long tick, Runnable task ) {
+            this.tick = tick;
+            this.task = task;
+        }
+    }
+
+    /** The first entry in each slot of each wheel, or null */
+    private final Entry[][] heads;
+    /** The last entry in each slot of each wheel, or null */
+    private final Entry[][] tails;
+    /** The next tick to fire; every earlier one has been fired */
+    private long current;
+    /** The number of tasks waiting */
+    private int size;
+
+    /** Create an empty wheel whose current tick is 0 */
+    TimingWheel() {
+        this.heads = new Entry[ LEVELS ][ SLOTS ];
+        this.tails = new Entry[ LEVELS ][ SLOTS ];
+    }
+
+    /**
+     * File a task to run at a given tick. A tick that has already gone
+     * by fires with the current one.
+     *
+     * @param tick when the task is due
+     * @param task what to run
+     * @throws IllegalArgumentException if the tick is 2^40 or more
+     * ticks ahead
+     */
+    void schedule( long tick, Runnable task ) {
+        place( new Entry( tick, task ) );
+        ++size;
+    }
+
+    /**
+     * Fire, in tick order, every task due at or before the given tick.
+     *
+     * @param tick the tick that has now been reached
+     */
+    void advance( long tick ) {
+        while ( current <= tick ) {
+            if ( size == 0 ) {
+                // Nothing to cascade or fire; jump straight there.
+                current = tick + 1;
+                return;
+            }
+            for ( int level = LEVELS - 1; level > 0; --level ) {
+                if ( ( current & ( ( 1L << ( SLOT_BITS * level ) ) - 1 ) ) == 0 ) {
+                    cascade( level, (int) ( current >>> ( SLOT_BITS * level ) ) & MASK );
+                }
+            }
+            int slot = (int) current & MASK;
+            Entry entry = heads[ 0 ][ slot ];
+            heads[ 0 ][ slot ] = null;
+            tails[ 0 ][ slot ] = null;
+            ++current;
+            while ( entry != null ) {
+                --size;
+                entry.task.run();
+                entry = entry.next;
+            }
+        }
+    }
+
+    /**
+     * When must {@link #advance(long)} next be called? This is the first
+     * tick with a task on the lowest wheel, or if there is none before the
+     * lowest wheel comes round, the tick at which higher wheels cascade.
+     *
+     * @return the tick, or Long.MAX_VALUE if no tasks are waiting
+     */
+    long nextTick() {
+        if ( size == 0 ) {
+            return Long.MAX_VALUE;
+        }
+        long end = current | MASK;
+        for ( long tick = current; tick <= end; ++tick ) {
+            if ( heads[ 0 ][ (int) tick & MASK ] != null ) {
+                return tick;
+            }
+        }
+        return end + 1;
+    }
+
+    /**
+     * Are no tasks waiting?
+     *
+     * @return true if every task scheduled has been fired
+     */
+    boolean isEmpty() { return size == 0; }
+
+    /**
+     * Move every entry in a slot of a higher wheel down to where it
+     * belongs now.
+     *
+     * @param level the wheel
+     * @param slot the slot
+     */
+    private void cascade( int level, int slot ) {
+        Entry entry = heads[ level ][ slot ];
+        heads[ level ][ slot ] = null;
+        tails[ level ][ slot ] = null;
+        while ( entry != null ) {
+            Entry next = entry.next;
+            entry.next = null;
+            place( entry );
+            entry = next;
+        }
+    }
+
+    /**
+     * Add an entry to the end of the slot it belongs in, given the
+     * current tick.
+     *
+     * @param entry the entry, not in any slot
+     */
+    private void place( Entry entry ) {
+        long tick = Math.max( entry.tick, current );
+        if ( ( tick >>> ( SLOT_BITS * LEVELS ) ) != ( current >>> ( SLOT_BITS * LEVELS ) ) ) {
+            throw new IllegalArgumentException(
+                    "tick " + entry.tick + " is too far past " + current );
+        }
+        int level = 0;
+        while ( level < LEVELS - 1 &&
+                ( tick >>> ( SLOT_BITS * ( level + 1 ) ) ) !=
+                ( current >>> ( SLOT_BITS * ( level + 1 ) ) ) ) {
+            ++level;
+        }
+        int slot = (int) ( tick >>> ( SLOT_BITS * level ) ) & MASK;
+        if ( heads[ level ][ slot ] == null ) {
+            heads[ level ][ slot ] = entry;
+        }
+        else {
+            tails[ level ][ slot ].next = entry;
+        }
+        tails[ level ][ slot ] = entry;
+    }
+}
@@ -24,12 +24,6 @@ public class Utilities {
                                                                     / Math.PI;
     }
 
-    /**
-     * A special "sentinel" cart sent through the checkout line after all
-     * the "real" carts. When the Clerk's run() method sees it, it terminates.
-     */
-    public static final Cart NO_MORE_CARTS = new Cart();
-
     /**
      * The factor relating a grocery item to how long it takes to check it out
      */
@@ -0,0 +1,51 @@
+package edu.rit.cs.grocerystore;
+
+/**
+ * A clock that only moves when it is told to. The discrete-event engine
+ * advances it to the time of each event as the event is processed.
+ * It starts at time 0.
+ *
+ * @author RIT CS
+ */
+public class VirtualClock implements Clock {
+
+    /** The current virtual time, in msec. */
+    private double now;
+
+    /** Create a clock that reads 0 */
+    public VirtualClock() {
+        this.now = 0;
+    }
+
+    /**
+     * Move the clock forward.
+     *
+     * @param time the new current time, in msec.
+     * @throws IllegalArgumentException if time is earlier than now
+     */
+    public void advanceTo( double time ) {
+        if ( time < now ) {
+            throw new IllegalArgumentException( time + " < " + now );
+        }
+        this.now = time;
+    }
+
+    /**
+     * What is the exact virtual time?
+     *
+     * @return the current time in msec., including any fraction
+     */
+    public double now() {
+        return now;
+    }
+
+    /**
+     * What time is it?
+     *
+     * @return the current virtual time in nanoseconds
+     */
+    @Override
+    public long nanoTime() {
+        return Math.round( now * 1_000_000 );
+    }
+}
@@ -0,0 +1,234 @@
+package edu.rit.cs.grocerystore;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The queue wait, service and total wait times of every item serviced
+ * during a run, kept as three {@link LatencyHistogram}s. An item is
+ * recorded when its servicing is done, so nothing needs to hold on to
+ * the items themselves. Also counted are the items that never got
+ * serviced because the queue was full.
+ * <p>
+ * Statistics for part of the run, such as one checkout lane, can pass
+ * everything they record on to the statistics for the whole run.
+ *
+ * @author RIT CS
+ */
+public class WaitStatistics {
+
+    /** The percentiles shown by {@link #print()} */
+    static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+    /** The column headings for {@link #PERCENTILES} */
+    static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "p99.9" };
+
+    /** Time from enterQueue() to exitQueue() */
+    private final LatencyHistogram queueWait;
+    /** Time from exitQueue() to servicingDone() */
+    private final LatencyHistogram service;
+    /** Time from enterQueue() to servicingDone() */
+    private final LatencyHistogram totalWait;
+    /** Items turned away at once because the queue was full */
+    private final LongAdder rejected;
+    /** Items that gave up after waiting for room in the queue */
+    private final LongAdder timedOut;
+    /** Items taken out of the queue after waiting in it too long */
+    private final LongAdder reneged;
+    /** Statistics that also get everything recorded here, or null */
+    private final WaitStatistics total;
+    /** Where the exact times of numbered carts are also kept, or null */
+    private final CartTimings timings;
+
+    /** Create empty statistics */
+    public WaitStatistics() {
+        this( null, null );
+    }
+
+    /**
+     * Create empty statistics for part of a run.
+     *
+     * @param total the statistics that also get everything recorded
+     *              here, or null
+     */
+    public WaitStatistics( WaitStatistics total ) {
+        this( total, null );
+    }
+
+    /**
+     * Create empty statistics for a whole run that also keep the exact
+     * times of every numbered Cart.
+     *
+     * @param timings where the carts' times are copied
+     */
+    public WaitStatistics( CartTimings timings ) {
+        this( null, timings );
+    }
+
+    /**
+     * Create empty statistics.
+     *
+     * @param total the statistics that also get everything recorded
+     *              here, or null
+     * @param timings where the times of numbered carts are copied, or null
+     */
+    private WaitStatistics( WaitStatistics total, CartTimings timings ) {
+        this.total = total;
+        this.timings = timings;
+        this.queueWait = new LatencyHistogram();
+        this.service = new LatencyHistogram();
+        this.totalWait = new LatencyHistogram();
+        this.rejected = new LongAdder();
+        this.timedOut = new LongAdder();
+        this.reneged = new LongAdder();
+    }
+
+    /**
+     * Count an item that was turned away because the queue was full.
+     */
+    public void recordRejected() {
+        rejected.increment();
+        if ( total != null ) {
+            total.recordRejected();
+        }
+    }
+
+    /**
+     * Count an item that gave up waiting for room in the queue.
+     */
+    public void recordTimedOut() {
+        timedOut.increment();
+        if ( total != null ) {
+            total.recordTimedOut();
+        }
+    }
+
+    /**
+     * Count an item that left the queue after waiting in it too long.
+     */
+    public void recordReneged() {
+        reneged.increment();
+        if ( total != null ) {
+            total.recordReneged();
+        }
+    }
+
+    /** @return the number of items turned away because the queue was full */
+    public long getRejected() { return rejected.sum(); }
+
+    /** @return the number of items that gave up waiting for room */
+    public long getTimedOut() { return timedOut.sum(); }
+
+    /** @return the number of items that left the queue after waiting too long */
+    public long getReneged() { return reneged.sum(); }
+
+    /**
+     * Add an item's times. Call this after its servicingDone().
+     *
+     * @param item the item whose servicing just finished
+     */
+    public void record( TimedObject item ) {
+        queueWait.record( item.getInQueueNanos() );
+        service.record( item.getServiceNanos() );
+        totalWait.record( item.getTotalWaitNanos() );
+        if ( timings != null && item instanceof Cart cart && cart.getId() >= 0 ) {
+            timings.record( cart );
+        }
+        if ( total != null ) {
+            total.record( item );
+        }
+    }
+
+    /**
+     * How many items have been recorded?
+     *
+     * @return the number of calls to {@link #record(TimedObject)}
+     */
+    public long getCount() { return totalWait.getCount(); }
+
+    /** @return the distribution of queue wait times */
+    public LatencyHistogram getQueueWait() { return queueWait; }
+
+    /** @return the distribution of service times */
+    public LatencyHistogram getService() { return service; }
+
+    /** @return the distribution of total wait times */
+    public LatencyHistogram getTotalWait() { return totalWait; }
+
+    /**
+     * Print the averages and a table of percentiles, in msec.
+     */
+    public void print() {
+        String format =
+                "Average %10s time was %10.3f msec." +
+                System.lineSeparator();
+        Utilities.printf( format, "queue wait", queueWait.getMean() );
+        Utilities.printf( format, "service", service.getMean() );
+        Utilities.printf( format, "total wait", totalWait.getMean() );
+        Utilities.println( "---" );
+        StringBuilder header = new StringBuilder( String.format( "%-12s", "msec." ) );
+        for ( String name : PERCENTILE_NAMES ) {
+            header.append( String.format( "%11s", name ) );
+        }
+        header.append( String.format( "%11s", "max" ) );
+        Utilities.println( header.toString() );
+        printRow( "queue wait", queueWait );
+        printRow( "service", service );
+        printRow( "total wait", totalWait );
+        if ( rejected.sum() > 0 || timedOut.sum() > 0 ) {
+            Utilities.println( "---" );
+            Utilities.printf( "%d turned away at a full line, %d gave up " +
+                              "waiting to get in line." + System.lineSeparator(),
+                              rejected.sum(), timedOut.sum() );
+        }
+        if ( reneged.sum() > 0 ) {
+            Utilities.printf( "%d left the line after waiting in it too long." +
+                              System.lineSeparator(), reneged.sum() );
+        }
+    }
+
+    /**
+     * Print the column headings for {@link #printSummary(String, double)}.
+     */
+    public static void printSummaryHeader() {
+        StringBuilder header = new StringBuilder(
+                String.format( "%-16s%8s%11s", "total wait", "carts", "per sec." ) );
+        for ( String name : PERCENTILE_NAMES ) {
+            header.append( String.format( "%11s", name ) );
+        }
+        header.append( String.format( "%11s", "max" ) );
+        Utilities.println( header.toString() );
+    }
+
+    /**
+     * Print, on one line, how many items were recorded, how many that is
+     * per second, and the percentiles of their total wait times in msec.
+     *
+     * @param name what part of the run these statistics are for
+     * @param elapsedTime how long the run took, in msec.
+     */
+    public void printSummary( String name, double elapsedTime ) {
+        StringBuilder row = new StringBuilder( String.format(
+                "%-16s%8d%11.2f", name, getCount(),
+                getCount() * 1000.0 / Math.max( 1, elapsedTime ) ) );
+        for ( double p : PERCENTILES ) {
+            row.append( String.format( "%11.3f", totalWait.getValueAtPercentile( p ) ) );
+        }
+        row.append( String.format( "%11.3f", totalWait.getMax() ) );
+        Utilities.println( row.toString() );
+    }
+
+    /**
+     * Print one histogram's percentiles on a line.
+     *
+     * @param name what the histogram measures
+     * @param histogram the histogram
+     */
+    private static void printRow( String name, LatencyHistogram histogram ) {
+        StringBuilder row = new StringBuilder( String.format( "%-12s", name ) );
+        for ( double p : PERCENTILES ) {
+            row.append( String.format( "%11.3f", histogram.getValueAtPercentile( p ) ) );
+        }
+        row.append( String.format( "%11.3f", histogram.getMax() ) );
+        Utilities.println( row.toString() );
+    }
+}